@@ -0,0 +1,68 @@
+#!/bin/bash -e
+
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# This script compares the time that it takes to generate the SDK with the
+# native executable built by the 'native' profile and with the JVM, both
+# with the CDI container and with the static wiring. It should be executed
+# from the directory of the generator, after building the native executable:
+#
+#   mvn -Pnative package
+#   ./benchmark-native.sh ../sdk/target/model.jar 5
+#
+# The first argument is the model, and the second the number of times that
+# each variant is executed.
+
+model="$1"
+runs="${2:-5}"
+version="4.3.0"
+
+if [ -z "${model}" ]; then
+  echo "Usage: $0 MODEL [RUNS]"
+  exit 1
+fi
+
+native="target/ruby-sdk-generator"
+if [ ! -x "${native}" ]; then
+  echo "The native executable '${native}' doesn't exist, build it with 'mvn -Pnative package'."
+  exit 1
+fi
+
+# Calculate the class path for the JVM variants:
+mvn -q dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+classpath="target/classes:$(cat target/classpath.txt)"
+
+# Runs the given command the requested number of times, and prints the
+# average wall clock time in milliseconds:
+function measure() {
+  local name="$1"
+  shift
+  local total=0
+  for i in $(seq "${runs}"); do
+    local out="$(mktemp -d)"
+    local start="$(date +%s%N)"
+    "$@" --model="${model}" --out="${out}" --version="${version}" > /dev/null
+    local end="$(date +%s%N)"
+    total=$((total + (end - start) / 1000000))
+    rm -rf "${out}"
+  done
+  printf "%-10s %8d ms\n" "${name}" $((total / runs))
+}
+
+measure "weld" java -cp "${classpath}" org.ovirt.api.metamodel.tool.Main org.ovirt.sdk.ruby.Tool
+measure "static" java -cp "${classpath}" org.ovirt.sdk.ruby.Tool
+measure "native" "${native}"
@@ -0,0 +1,413 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.ovirt.api.metamodel.concepts.EnumType;
+import org.ovirt.api.metamodel.concepts.EnumValue;
+import org.ovirt.api.metamodel.concepts.ListType;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.PrimitiveType;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+import org.ovirt.api.metamodel.tool.Names;
+import org.ovirt.api.metamodel.tool.SchemaNames;
+
+/**
+ * This class is responsible for generating the scripts that measure the time used by the readers and writers of each
+ * type. The scripts are generated only when the {@code --benchmarks} option is used, and they are written to the
+ * directory given in that option, not to the directory of the SDK.
+ */
+public class BenchmarksGenerator implements RubyGenerator {
+    // The number of items of the lists included in the fixtures:
+    private static final int LIST_SIZE = 2;
+
+    // The name of the file containing the code shared by all the benchmarks:
+    private static final String HELPER_FILE = "helper";
+
+    // The name of the file that runs all the benchmarks:
+    private static final String ALL_FILE = "all";
+
+    // The name of the directory containing the benchmark of each type:
+    private static final String TYPES_DIR = "types";
+
+    // The directory were the output will be generated:
+    protected File out;
+
+    // Reference to the objects used to generate the code:
+    @Inject private Names names;
+    @Inject private SchemaNames schemaNames;
+    @Inject private RubyNames rubyNames;
+
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
+    // The buffer used to generate the Ruby code:
+    private RubyBuffer buffer;
+
+    // Reference to the precomputed lists of types, services and members:
+    @Inject private ModelIndex modelIndex;
+
+    // Reference to the object that creates the buffers:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
+    public void setOut(File newOut) {
+        out = newOut;
+    }
+
+    public void generate(Model model) {
+        // Do nothing unless the benchmarks have been explicitly requested:
+        File dir = generatorOptions.getBenchmarksDir();
+        if (dir == null) {
+            return;
+        }
+
+        // Get the struct types, as there will be one benchmark for each of them:
+        List<StructType> types = modelIndex.getStructTypes();
+
+        // Generate the files:
+        generateHelper();
+        write(dir, HELPER_FILE);
+        for (StructType type : types) {
+            generateBenchmark(type);
+            write(dir, getBenchmarkFileName(type));
+        }
+        generateAll(types);
+        write(dir, ALL_FILE);
+    }
+
+    private void write(File dir, String fileName) {
+        try {
+            buffer.setFileName(fileName);
+            buffer.write(dir);
+        }
+        catch (IOException exception) {
+            throw new IllegalStateException("Error writing benchmark file \"" + fileName + "\"", exception);
+        }
+    }
+
+    private String getBenchmarkFileName(StructType type) {
+        return TYPES_DIR + "/" + rubyNames.getFileStyleName(type.getName());
+    }
+
+    private void generateHelper() {
+        buffer = bufferProvider.get();
+        buffer.addRequire("json");
+        buffer.addRequire(rubyNames.getModulePath());
+
+        // Begin module:
+        String moduleName = rubyNames.getModuleName();
+        buffer.beginModule(moduleName);
+        buffer.addComment();
+        buffer.addComment("This module contains the code used by the generated benchmarks of the readers and writers.");
+        buffer.addComment("Each benchmark registers the reader, the writer and the fixture of one type, and then the");
+        buffer.addComment("`main` method measures them and writes the results to the standard output, in JSON format.");
+        buffer.addComment();
+        buffer.addComment("The number of iterations and the number of objects of the documents used to measure the");
+        buffer.addComment("methods that read and write lists can be changed with the `BENCHMARK_ITERATIONS` and");
+        buffer.addComment("`BENCHMARK_LIST_SIZE` environment variables.");
+        buffer.addComment();
+        buffer.addComment("@api private");
+        buffer.addComment();
+        buffer.beginBlock("module Benchmarks");
+        buffer.addLine("ITERATIONS = Integer(ENV['BENCHMARK_ITERATIONS'] || 1000)");
+        buffer.addLine("LIST_SIZE = Integer(ENV['BENCHMARK_LIST_SIZE'] || 10)");
+        buffer.addLine();
+        buffer.addLine("@benchmarks = []");
+        buffer.addLine();
+
+        // Method to register a benchmark:
+        buffer.addComment();
+        buffer.addComment("Registers the benchmark of one type.");
+        buffer.addComment();
+        buffer.addComment("@param type [String] The name of the type, for example `Vm`.");
+        buffer.addComment("@param reader [Class] The reader of the type, for example `VmReader`.");
+        buffer.addComment("@param writer [Class] The writer of the type, for example `VmWriter`.");
+        buffer.addComment("@param plural [String] The tag used for lists of the type, for example `vms`.");
+        buffer.addComment("@param fixture [String] The XML document containing one object of the type.");
+        buffer.addComment();
+        buffer.beginBlock("def self.register(type, reader, writer, plural, fixture)");
+        buffer.addLine(  "many = \"<#{plural}>#{fixture * LIST_SIZE}</#{plural}>\"");
+        buffer.addLine(  "@benchmarks << { type: type, reader: reader, writer: writer, one: fixture, many: many }");
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Methods to read and write one document:
+        buffer.addComment();
+        buffer.addComment("Reads a document using the given method of a reader.");
+        buffer.addComment();
+        buffer.beginBlock("def self.read(reader, method, xml)");
+        buffer.addLine(  "cursor = XmlReader.new(xml)");
+        buffer.beginBlock(  "begin");
+        buffer.addLine(    "reader.send(method, cursor)");
+        buffer.addClause(  "ensure");
+        buffer.addLine(    "cursor.close");
+        buffer.endBlock();
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.addComment();
+        buffer.addComment("Writes an object or list using the given method of a writer, and returns the XML text.");
+        buffer.addComment();
+        buffer.beginBlock("def self.write(writer, method, value)");
+        buffer.addLine(  "cursor = XmlWriter.new(nil, false)");
+        buffer.beginBlock(  "begin");
+        buffer.addLine(    "writer.send(method, value, cursor)");
+        buffer.addLine(    "cursor.string");
+        buffer.addClause(  "ensure");
+        buffer.addLine(    "cursor.close");
+        buffer.endBlock();
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Method to measure one operation:
+        buffer.addComment();
+        buffer.addComment("Runs the given block once to warm up, and then the configured number of iterations,");
+        buffer.addComment("measuring the time.");
+        buffer.addComment();
+        buffer.addComment("@return [Hash] The result of the measurement.");
+        buffer.addComment();
+        buffer.beginBlock("def self.measure(type, operation, bytes)");
+        buffer.addLine(  "yield");
+        buffer.addLine(  "GC.start");
+        buffer.addLine(  "started = Process.clock_gettime(Process::CLOCK_MONOTONIC)");
+        buffer.addLine(  "ITERATIONS.times { yield }");
+        buffer.addLine(  "seconds = Process.clock_gettime(Process::CLOCK_MONOTONIC) - started");
+        buffer.addLine(  "rate = seconds > 0 ? ITERATIONS / seconds : nil");
+        buffer.addLine(
+            "{ type: type, operation: operation, iterations: ITERATIONS, bytes: bytes, seconds: seconds, rate: rate }"
+        );
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Method to run the benchmark of one type:
+        buffer.addComment();
+        buffer.addComment("Runs the four operations of the benchmark of one type.");
+        buffer.addComment();
+        buffer.addComment("@return [Array<Hash>] The results of the measurements.");
+        buffer.addComment();
+        buffer.beginBlock("def self.run(benchmark)");
+        buffer.addLine(  "type = benchmark[:type]");
+        buffer.addLine(  "reader = benchmark[:reader]");
+        buffer.addLine(  "writer = benchmark[:writer]");
+        buffer.addLine(  "one = benchmark[:one]");
+        buffer.addLine(  "many = benchmark[:many]");
+        buffer.addLine(  "object = read(reader, :read_one, one)");
+        buffer.addLine(  "list = read(reader, :read_many, many)");
+        buffer.addLine(  "one_written = write(writer, :write_one, object).bytesize");
+        buffer.addLine(  "many_written = write(writer, :write_many, list).bytesize");
+        buffer.addLine(  "[");
+        buffer.addLine(    "measure(type, 'read_one', one.bytesize) { read(reader, :read_one, one) },");
+        buffer.addLine(    "measure(type, 'read_many', many.bytesize) { read(reader, :read_many, many) },");
+        buffer.addLine(    "measure(type, 'write_one', one_written) { write(writer, :write_one, object) },");
+        buffer.addLine(    "measure(type, 'write_many', many_written) { write(writer, :write_many, list) }");
+        buffer.addLine(  "]");
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Method to run the benchmarks and write the results:
+        buffer.addComment();
+        buffer.addComment("Runs the registered benchmarks and writes the results to the standard output, in JSON");
+        buffer.addComment("format.");
+        buffer.addComment();
+        buffer.addComment("@param types [Array<String>] The names of the types to measure. If empty all the");
+        buffer.addComment("  registered types will be measured.");
+        buffer.addComment();
+        buffer.beginBlock("def self.main(types = [])");
+        buffer.addLine(  "selected = @benchmarks");
+        buffer.beginBlock(  "unless types.empty?");
+        buffer.addLine(    "selected = selected.select { |benchmark| types.include?(benchmark[:type]) }");
+        buffer.endBlock();
+        buffer.addLine(  "results = selected.flat_map { |benchmark| run(benchmark) }");
+        buffer.addLine(  "puts JSON.pretty_generate(results)");
+        buffer.endBlock();
+        buffer.endBlock();
+
+        // End module:
+        buffer.endModule(moduleName);
+    }
+
+    private void generateBenchmark(StructType type) {
+        buffer = bufferProvider.get();
+        buffer.addLine("require_relative '../%1$s'", HELPER_FILE);
+        buffer.addLine();
+
+        // Register the benchmark:
+        String moduleName = rubyNames.getModuleName();
+        buffer.beginModule(moduleName);
+        buffer.addLine("Benchmarks.register(");
+        buffer.addLine(  "'%1$s',", rubyNames.getTypeName(type).getClassName());
+        buffer.addLine(  "%1$s,", rubyNames.getReaderName(type).getClassName());
+        buffer.addLine(  "%1$s,", rubyNames.getWriterName(type).getClassName());
+        buffer.addLine(  "'%1$s',", modelIndex.getPluralTag(type.getName()));
+        buffer.addLine(  "'%1$s'", generateFixture(type));
+        buffer.addLine(")");
+        buffer.endModule(moduleName);
+        buffer.addLine();
+
+        // Run it when the file is executed directly:
+        buffer.addLine("%1$s::Benchmarks.main if $PROGRAM_NAME == __FILE__", moduleName);
+    }
+
+    private void generateAll(List<StructType> types) {
+        buffer = bufferProvider.get();
+        buffer.addLine("require_relative '%1$s'", HELPER_FILE);
+        types.forEach(type -> buffer.addLine("require_relative '%1$s'", getBenchmarkFileName(type)));
+        buffer.addLine();
+        buffer.addLine("%1$s::Benchmarks.main(ARGV)", rubyNames.getModuleName());
+    }
+
+    /**
+     * Generates an XML document containing one object of the given type, with all the attributes and links populated.
+     * Nested objects contain only the members that aren't objects or lists of objects, and links contain only the
+     * identifier, so that the size of the fixtures doesn't grow exponentially.
+     */
+    private String generateFixture(StructType type) {
+        StringBuilder xml = new StringBuilder();
+        generateObject(xml, modelIndex.getTag(type.getName()), type, false);
+        return xml.toString();
+    }
+
+    private void generateObject(StringBuilder xml, String tag, StructType type, boolean nested) {
+        // Start tag and the members that are represented as XML attributes:
+        xml.append("<").append(tag);
+        xml.append(" href=\"/").append(modelIndex.getPluralTag(type.getName())).append("/123\"");
+        modelIndex.getAttributes(type).stream()
+            .filter(x -> schemaNames.isRepresentedAsAttribute(x.getName()))
+            .forEach(x -> generateMemberAsAttribute(xml, x));
+        modelIndex.getLinks(type).stream()
+            .filter(x -> schemaNames.isRepresentedAsAttribute(x.getName()))
+            .forEach(x -> generateMemberAsAttribute(xml, x));
+        xml.append(">");
+
+        // Members that are represented as inner elements:
+        modelIndex.getAttributes(type).stream()
+            .filter(x -> !schemaNames.isRepresentedAsAttribute(x.getName()))
+            .forEach(x -> generateAttributeAsElement(xml, x, nested));
+        if (!nested) {
+            modelIndex.getLinks(type).stream()
+                .filter(x -> !schemaNames.isRepresentedAsAttribute(x.getName()))
+                .forEach(x -> generateLinkAsElement(xml, x));
+        }
+
+        // End tag:
+        xml.append("</").append(tag).append(">");
+    }
+
+    private void generateMemberAsAttribute(StringBuilder xml, StructMember member) {
+        String value = getSampleValue(member.getType());
+        if (value != null) {
+            xml.append(" ").append(modelIndex.getTag(member.getName())).append("=\"").append(value);
+            xml.append("\"");
+        }
+    }
+
+    private void generateAttributeAsElement(StringBuilder xml, StructMember member, boolean nested) {
+        Name name = member.getName();
+        Type type = member.getType();
+        String tag = modelIndex.getTag(name);
+        if (type instanceof PrimitiveType || type instanceof EnumType) {
+            generateValue(xml, tag, type);
+        }
+        else if (type instanceof StructType && !nested) {
+            generateObject(xml, tag, (StructType) type, true);
+        }
+        else if (type instanceof ListType) {
+            Type elementType = ((ListType) type).getElementType();
+            if (elementType instanceof PrimitiveType || elementType instanceof EnumType) {
+                String elementTag = schemaNames.getSchemaTagName(names.getSingular(name));
+                xml.append("<").append(tag).append(">");
+                for (int i = 0; i < LIST_SIZE; i++) {
+                    generateValue(xml, elementTag, elementType);
+                }
+                xml.append("</").append(tag).append(">");
+            }
+            else if (elementType instanceof StructType && !nested) {
+                String elementTag = modelIndex.getTag(elementType.getName());
+                xml.append("<").append(tag).append(">");
+                for (int i = 0; i < LIST_SIZE; i++) {
+                    generateObject(xml, elementTag, (StructType) elementType, true);
+                }
+                xml.append("</").append(tag).append(">");
+            }
+        }
+    }
+
+    private void generateLinkAsElement(StringBuilder xml, StructMember member) {
+        Type type = member.getType();
+        String tag = modelIndex.getTag(member.getName());
+        if (type instanceof StructType) {
+            generateReference(xml, tag, type);
+        }
+        else if (type instanceof ListType) {
+            Type elementType = ((ListType) type).getElementType();
+            String elementTag = modelIndex.getTag(elementType.getName());
+            xml.append("<").append(tag).append(">");
+            for (int i = 0; i < LIST_SIZE; i++) {
+                generateReference(xml, elementTag, elementType);
+            }
+            xml.append("</").append(tag).append(">");
+        }
+    }
+
+    private void generateReference(StringBuilder xml, String tag, Type type) {
+        String plural = modelIndex.getPluralTag(type.getName());
+        xml.append("<").append(tag).append(" href=\"/").append(plural).append("/123\" id=\"123\"/>");
+    }
+
+    private void generateValue(StringBuilder xml, String tag, Type type) {
+        String value = getSampleValue(type);
+        if (value != null) {
+            xml.append("<").append(tag).append(">").append(value).append("</").append(tag).append(">");
+        }
+    }
+
+    private String getSampleValue(Type type) {
+        if (type instanceof EnumType) {
+            return ((EnumType) type).values()
+                .sorted()
+                .findFirst()
+                .map(EnumValue::getName)
+                .map(name -> names.getLowerJoined(name, "_"))
+                .orElse(null);
+        }
+        Model model = type.getModel();
+        if (type == model.getStringType()) {
+            return "123";
+        }
+        if (type == model.getBooleanType()) {
+            return "true";
+        }
+        if (type == model.getIntegerType()) {
+            return "123";
+        }
+        if (type == model.getDecimalType()) {
+            return "1.5";
+        }
+        if (type == model.getDateType()) {
+            return "2017-01-01T00:00:00.000+00:00";
+        }
+        return null;
+    }
+}
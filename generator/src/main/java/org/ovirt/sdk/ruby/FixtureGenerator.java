@@ -0,0 +1,439 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.ovirt.api.metamodel.concepts.EnumType;
+import org.ovirt.api.metamodel.concepts.EnumValue;
+import org.ovirt.api.metamodel.concepts.Link;
+import org.ovirt.api.metamodel.concepts.ListType;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.PrimitiveType;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+import org.ovirt.api.metamodel.tool.Names;
+import org.ovirt.api.metamodel.tool.SchemaNames;
+
+/**
+ * This class generates large synthetic documents containing collections of objects of the types of the model, in XML
+ * or JSON format. The documents are written to the output file while they are generated, so the memory used doesn't
+ * depend on the number of objects.
+ */
+@ApplicationScoped
+public class FixtureGenerator {
+    // The first date used for the values of date attributes, and the range of seconds added to it:
+    private static final long DATE_BASE = 1483228800L;
+    private static final int DATE_RANGE = 365 * 24 * 3600;
+
+    // The characters used to generate strings:
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    // Reference to the objects used to calculate names:
+    @Inject private Names names;
+    @Inject private SchemaNames schemaNames;
+
+    // The number of objects of the collection:
+    private int count = 10000;
+
+    // The maximum depth of nested objects and lists of objects, zero means that nested objects aren't generated:
+    private int depth = 1;
+
+    // The number of items of the lists:
+    private int listSize = 2;
+
+    // The probability that an optional member is omitted:
+    private double nullRatio;
+
+    // The maximum length of generated strings:
+    private int stringLength = 16;
+
+    // The seed of the random numbers generator, so that the same options always produce the same document:
+    private long seed;
+
+    // The random numbers generator used for the current document:
+    private Random random;
+
+    // The format used for the current document:
+    private Format format;
+
+    // The members of each type, calculated only once as the same types are used for many objects:
+    private Map<StructType, Members> membersCache = new HashMap<>();
+
+    // The values of each enum type:
+    private Map<EnumType, List<String>> valuesCache = new HashMap<>();
+
+    // The members of a type, separated according to how they are represented in XML:
+    private static class Members {
+        List<StructMember> attributes = new ArrayList<>();
+        List<StructMember> elements = new ArrayList<>();
+    }
+
+    public void setCount(int newCount) {
+        count = newCount;
+    }
+
+    public void setDepth(int newDepth) {
+        depth = newDepth;
+    }
+
+    public void setListSize(int newListSize) {
+        listSize = newListSize;
+    }
+
+    public void setNullRatio(double newNullRatio) {
+        nullRatio = newNullRatio;
+    }
+
+    public void setStringLength(int newStringLength) {
+        stringLength = newStringLength;
+    }
+
+    public void setSeed(long newSeed) {
+        seed = newSeed;
+    }
+
+    /**
+     * Finds the type of the objects of a collection, using the name of the XML element of the collection, or of
+     * the objects. For example, {@code vms} and {@code vm} both return the {@code Vm} type.
+     *
+     * @param model the model containing the types
+     * @param tag the name of the XML element of the collection or of the objects
+     * @return the type, or {@code null} if there is no such type
+     */
+    public StructType findType(Model model, String tag) {
+        return model.types()
+            .filter(StructType.class::isInstance)
+            .map(StructType.class::cast)
+            .filter(type -> {
+                Name name = type.getName();
+                return tag.equals(schemaNames.getSchemaTagName(name)) ||
+                    tag.equals(schemaNames.getSchemaTagName(names.getPlural(name)));
+            })
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Generates a document containing a collection of objects of the given type and writes it to the given file.
+     *
+     * @param type the type of the objects of the collection
+     * @param file the file where the document will be written
+     * @param json {@code true} to generate JSON, {@code false} to generate XML
+     */
+    public void generate(StructType type, File file, boolean json) throws IOException {
+        System.out.println("Writing file \"" + file.getAbsolutePath() + "\".");
+        random = new Random(seed);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+            format = json? new JsonFormat(out): new XmlFormat(out);
+            String singular = schemaNames.getSchemaTagName(type.getName());
+            String plural = schemaNames.getSchemaTagName(names.getPlural(type.getName()));
+            format.startDocument(plural, singular);
+            for (int i = 0; i < count; i++) {
+                generateObject(singular, type, 0, true);
+            }
+            format.endDocument();
+        }
+        catch (XMLStreamException exception) {
+            throw new IOException("Error writing fixture file \"" + file.getAbsolutePath() + "\"", exception);
+        }
+        finally {
+            format = null;
+        }
+    }
+
+    private void generateObject(String tag, StructType type, int level, boolean item) throws XMLStreamException {
+        // Start the object, and write the members that are represented as XML attributes, as they need to be written
+        // before any nested element. The identifier is always present, and it is also used to build the reference:
+        String id = uuid();
+        format.startObject(tag, item);
+        format.attribute("href", "/" + schemaNames.getSchemaTagName(names.getPlural(type.getName())) + "/" + id);
+        Members members = getMembers(type);
+        for (StructMember member : members.attributes) {
+            String attribute = schemaNames.getSchemaTagName(member.getName());
+            String value = attribute.equals("id")? id: generateValue(member.getType());
+            if (value != null) {
+                format.attribute(attribute, value);
+            }
+        }
+
+        // Write the rest of the members, skipping some of them according to the null ratio:
+        for (StructMember member : members.elements) {
+            if (random.nextDouble() >= nullRatio) {
+                generateMember(member, level);
+            }
+        }
+        format.endObject();
+    }
+
+    private void generateMember(StructMember member, int level) throws XMLStreamException {
+        Name name = member.getName();
+        Type type = member.getType();
+        String tag = schemaNames.getSchemaTagName(name);
+        boolean link = member instanceof Link;
+        if (type instanceof PrimitiveType || type instanceof EnumType) {
+            String value = generateValue(type);
+            if (value != null) {
+                format.element(tag, value, false);
+            }
+        }
+        else if (type instanceof StructType) {
+            if (link) {
+                generateReference(tag, type, false);
+            }
+            else if (level < depth) {
+                generateObject(tag, (StructType) type, level + 1, false);
+            }
+        }
+        else if (type instanceof ListType) {
+            Type elementType = ((ListType) type).getElementType();
+            if (elementType instanceof PrimitiveType || elementType instanceof EnumType) {
+                format.startList(tag, schemaNames.getSchemaTagName(names.getSingular(name)));
+                for (int i = 0; i < listSize; i++) {
+                    String value = generateValue(elementType);
+                    if (value != null) {
+                        format.element(schemaNames.getSchemaTagName(names.getSingular(name)), value, true);
+                    }
+                }
+                format.endList();
+            }
+            else if (elementType instanceof StructType && (link || level < depth)) {
+                String elementTag = schemaNames.getSchemaTagName(elementType.getName());
+                format.startList(tag, elementTag);
+                for (int i = 0; i < listSize; i++) {
+                    if (link) {
+                        generateReference(elementTag, elementType, true);
+                    }
+                    else {
+                        generateObject(elementTag, (StructType) elementType, level + 1, true);
+                    }
+                }
+                format.endList();
+            }
+        }
+    }
+
+    private void generateReference(String tag, Type type, boolean item) throws XMLStreamException {
+        String id = uuid();
+        format.startObject(tag, item);
+        format.attribute("href", "/" + schemaNames.getSchemaTagName(names.getPlural(type.getName())) + "/" + id);
+        format.attribute("id", id);
+        format.endObject();
+    }
+
+    private Members getMembers(StructType type) {
+        return membersCache.computeIfAbsent(type, key -> {
+            List<StructMember> all = new ArrayList<>();
+            key.attributes().sorted().forEach(all::add);
+            key.links().sorted().forEach(all::add);
+            Members members = new Members();
+            for (StructMember member : all) {
+                if (schemaNames.isRepresentedAsAttribute(member.getName())) {
+                    members.attributes.add(member);
+                }
+                else {
+                    members.elements.add(member);
+                }
+            }
+            return members;
+        });
+    }
+
+    private String generateValue(Type type) {
+        if (type instanceof EnumType) {
+            List<String> values = valuesCache.computeIfAbsent((EnumType) type, key -> key.values()
+                .sorted()
+                .map(EnumValue::getName)
+                .map(name -> names.getLowerJoined(name, "_"))
+                .collect(toList())
+            );
+            return values.isEmpty()? null: values.get(random.nextInt(values.size()));
+        }
+        Model model = type.getModel();
+        if (type == model.getStringType()) {
+            int length = 1 + random.nextInt(stringLength);
+            StringBuilder buffer = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                buffer.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            return buffer.toString();
+        }
+        if (type == model.getBooleanType()) {
+            return String.valueOf(random.nextBoolean());
+        }
+        if (type == model.getIntegerType()) {
+            return String.valueOf(random.nextInt(1000000));
+        }
+        if (type == model.getDecimalType()) {
+            return String.format(Locale.ROOT, "%.2f", random.nextDouble() * 1000);
+        }
+        if (type == model.getDateType()) {
+            Instant instant = Instant.ofEpochSecond(DATE_BASE + random.nextInt(DATE_RANGE));
+            return DateTimeFormatter.ISO_INSTANT.format(instant);
+        }
+        return null;
+    }
+
+    private String uuid() {
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    /**
+     * The operations needed to write a document, implemented for each of the supported formats.
+     */
+    private interface Format {
+        void startDocument(String tag, String itemTag) throws XMLStreamException;
+        void endDocument() throws XMLStreamException;
+        void startObject(String tag, boolean item) throws XMLStreamException;
+        void endObject() throws XMLStreamException;
+        void attribute(String name, String value) throws XMLStreamException;
+        void element(String tag, String value, boolean item) throws XMLStreamException;
+        void startList(String tag, String itemTag) throws XMLStreamException;
+        void endList() throws XMLStreamException;
+    }
+
+    /**
+     * Writes documents in the XML format used by the API, where lists are elements containing one element per item.
+     */
+    private static class XmlFormat implements Format {
+        private XMLStreamWriter writer;
+
+        XmlFormat(OutputStream out) throws XMLStreamException {
+            writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        }
+
+        public void startDocument(String tag, String itemTag) throws XMLStreamException {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement(tag);
+        }
+
+        public void endDocument() throws XMLStreamException {
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        }
+
+        public void startObject(String tag, boolean item) throws XMLStreamException {
+            writer.writeStartElement(tag);
+        }
+
+        public void endObject() throws XMLStreamException {
+            writer.writeEndElement();
+        }
+
+        public void attribute(String name, String value) throws XMLStreamException {
+            writer.writeAttribute(name, value);
+        }
+
+        public void element(String tag, String value, boolean item) throws XMLStreamException {
+            writer.writeStartElement(tag);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+
+        public void startList(String tag, String itemTag) throws XMLStreamException {
+            writer.writeStartElement(tag);
+        }
+
+        public void endList() throws XMLStreamException {
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Writes documents in the JSON format used by the API, where lists are objects containing one array named like
+     * the items, and all the values are strings. The document itself is an object containing only the array.
+     */
+    private static class JsonFormat implements Format {
+        private JsonGenerator generator;
+
+        JsonFormat(OutputStream out) {
+            generator = Json.createGenerator(out);
+        }
+
+        public void startDocument(String tag, String itemTag) {
+            generator.writeStartObject();
+            generator.writeStartArray(itemTag);
+        }
+
+        public void endDocument() {
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.close();
+        }
+
+        public void startObject(String tag, boolean item) {
+            if (item) {
+                generator.writeStartObject();
+            }
+            else {
+                generator.writeStartObject(tag);
+            }
+        }
+
+        public void endObject() {
+            generator.writeEnd();
+        }
+
+        public void attribute(String name, String value) {
+            generator.write(name, value);
+        }
+
+        public void element(String tag, String value, boolean item) {
+            if (item) {
+                generator.write(value);
+            }
+            else {
+                generator.write(tag, value);
+            }
+        }
+
+        public void startList(String tag, String itemTag) {
+            generator.writeStartObject(tag);
+            generator.writeStartArray(itemTag);
+        }
+
+        public void endList() {
+            generator.writeEnd();
+            generator.writeEnd();
+        }
+    }
+}
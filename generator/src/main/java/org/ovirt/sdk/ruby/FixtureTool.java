@@ -0,0 +1,234 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.ovirt.api.metamodel.analyzer.ModelAnalyzer;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+
+/**
+ * This tool generates large synthetic XML or JSON documents containing collections of objects, to be used in load
+ * tests of the SDK without a real server. For example, to generate a document containing two hundred thousand virtual
+ * machines:
+ *
+ * <pre>
+ * java org.ovirt.api.metamodel.tool.Main org.ovirt.sdk.ruby.FixtureTool \
+ * --model=model.jar \
+ * --type=vms \
+ * --count=200000 \
+ * --out=vms.xml
+ * </pre>
+ */
+@ApplicationScoped
+public class FixtureTool {
+    // The names of the command line options:
+    private static final String MODEL_OPTION = "model";
+    private static final String TYPE_OPTION = "type";
+    private static final String OUT_OPTION = "out";
+    private static final String FORMAT_OPTION = "format";
+    private static final String COUNT_OPTION = "count";
+    private static final String DEPTH_OPTION = "depth";
+    private static final String LIST_SIZE_OPTION = "list-size";
+    private static final String NULL_RATIO_OPTION = "null-ratio";
+    private static final String STRING_LENGTH_OPTION = "string-length";
+    private static final String SEED_OPTION = "seed";
+
+    // The supported formats:
+    private static final String XML_FORMAT = "xml";
+    private static final String JSON_FORMAT = "json";
+
+    // Reference to the object that generates the documents:
+    @Inject private FixtureGenerator fixtureGenerator;
+
+    // Reference to the object used to add built-in types to the model:
+    @Inject private BuiltinTypes builtinTypes;
+
+    public void run(String[] args) throws Exception {
+        // Create the command line options:
+        Options options = new Options();
+        options.addOption(Option.builder()
+            .longOpt(MODEL_OPTION)
+            .desc("The directory or .jar file containing the source model files.")
+            .type(File.class)
+            .required(true)
+            .hasArg(true)
+            .argName("DIRECTORY|JAR")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(TYPE_OPTION)
+            .desc("The name of the collection, or of the type of its objects, for example \"vms\" or \"vm\".")
+            .required(true)
+            .hasArg(true)
+            .argName("NAME")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(OUT_OPTION)
+            .desc("The file where the document will be written.")
+            .type(File.class)
+            .required(true)
+            .hasArg(true)
+            .argName("FILE")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(FORMAT_OPTION)
+            .desc(
+                "The format of the document, \"xml\" or \"json\". The default is to use the extension of the output " +
+                "file, or \"xml\" if it isn't \".json\"."
+            )
+            .required(false)
+            .hasArg(true)
+            .argName("FORMAT")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(COUNT_OPTION)
+            .desc("The number of objects of the collection. The default is 10000.")
+            .type(Number.class)
+            .required(false)
+            .hasArg(true)
+            .argName("COUNT")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(DEPTH_OPTION)
+            .desc(
+                "The maximum depth of the nested objects. Zero means that nested objects will not be generated, " +
+                "only references to other objects. The default is 1."
+            )
+            .type(Number.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DEPTH")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(LIST_SIZE_OPTION)
+            .desc("The number of items of nested lists. The default is 2.")
+            .type(Number.class)
+            .required(false)
+            .hasArg(true)
+            .argName("SIZE")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(NULL_RATIO_OPTION)
+            .desc("The probability, between 0 and 1, that an optional member is omitted. The default is 0.")
+            .type(Number.class)
+            .required(false)
+            .hasArg(true)
+            .argName("RATIO")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(STRING_LENGTH_OPTION)
+            .desc("The maximum length of the generated strings. The default is 16.")
+            .type(Number.class)
+            .required(false)
+            .hasArg(true)
+            .argName("LENGTH")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(SEED_OPTION)
+            .desc("The seed for the random values, the same seed always generates the same document. The default is 0.")
+            .type(Number.class)
+            .required(false)
+            .hasArg(true)
+            .argName("SEED")
+            .build()
+        );
+
+        // Parse the command line:
+        CommandLineParser parser = new DefaultParser();
+        CommandLine line = null;
+        try {
+            line = parser.parse(options, args);
+        }
+        catch (ParseException exception) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.setSyntaxPrefix("Usage: ");
+            formatter.printHelp("fixture-tool [OPTIONS]", options);
+            System.exit(1);
+        }
+
+        // Extract the values of the options:
+        File modelFile = (File) line.getParsedOptionValue(MODEL_OPTION);
+        File outFile = (File) line.getParsedOptionValue(OUT_OPTION);
+        String typeName = line.getOptionValue(TYPE_OPTION);
+        String format = line.getOptionValue(FORMAT_OPTION);
+        if (format == null) {
+            format = outFile.getName().endsWith("." + JSON_FORMAT)? JSON_FORMAT: XML_FORMAT;
+        }
+        if (!format.equals(XML_FORMAT) && !format.equals(JSON_FORMAT)) {
+            throw new IllegalArgumentException("The format must be \"xml\" or \"json\", but it is \"" + format + "\"");
+        }
+        if (line.hasOption(COUNT_OPTION)) {
+            fixtureGenerator.setCount(((Number) line.getParsedOptionValue(COUNT_OPTION)).intValue());
+        }
+        if (line.hasOption(DEPTH_OPTION)) {
+            fixtureGenerator.setDepth(((Number) line.getParsedOptionValue(DEPTH_OPTION)).intValue());
+        }
+        if (line.hasOption(LIST_SIZE_OPTION)) {
+            fixtureGenerator.setListSize(((Number) line.getParsedOptionValue(LIST_SIZE_OPTION)).intValue());
+        }
+        if (line.hasOption(NULL_RATIO_OPTION)) {
+            fixtureGenerator.setNullRatio(((Number) line.getParsedOptionValue(NULL_RATIO_OPTION)).doubleValue());
+        }
+        if (line.hasOption(STRING_LENGTH_OPTION)) {
+            fixtureGenerator.setStringLength(((Number) line.getParsedOptionValue(STRING_LENGTH_OPTION)).intValue());
+        }
+        if (line.hasOption(SEED_OPTION)) {
+            fixtureGenerator.setSeed(((Number) line.getParsedOptionValue(SEED_OPTION)).longValue());
+        }
+
+        // Analyze the model files and add the built-in types:
+        Model model = new Model();
+        ModelAnalyzer modelAnalyzer = new ModelAnalyzer();
+        modelAnalyzer.setModel(model);
+        modelAnalyzer.analyzeSource(modelFile);
+        builtinTypes.addBuiltinTypes(model);
+
+        // Find the type:
+        StructType type = fixtureGenerator.findType(model, typeName);
+        if (type == null) {
+            throw new IllegalArgumentException("Can't find a type for collection \"" + typeName + "\"");
+        }
+
+        // Generate the document:
+        File outDir = outFile.getAbsoluteFile().getParentFile();
+        if (outDir != null) {
+            FileUtils.forceMkdir(outDir);
+        }
+        fixtureGenerator.generate(type, outFile, format.equals(JSON_FORMAT));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * This class contains the options, usually given in the command line, that change the code produced by the
+ * generators.
+ */
+@ApplicationScoped
+public class GeneratorOptions {
+    // Indicates if the generated readers and writers should report statistics:
+    private boolean instrument;
+
+    // The directory where the benchmarks will be generated, if any:
+    private File benchmarksDir;
+
+    // The directory where the stub server will be generated, if any:
+    private File stubDir;
+
+    // Indicates if files whose content hasn't changed should be left untouched:
+    private boolean keepUnchanged;
+
+    // The directory where the documented source code will be generated, if any:
+    private File docsDir;
+
+    // Indicates if the source code should be generated without comments, empty lines or indentation:
+    private boolean minify;
+
+    /**
+     * Indicates if the generated readers and writers should report the number of objects and skipped elements to the
+     * statistics registry.
+     */
+    public boolean isInstrument() {
+        return instrument;
+    }
+
+    /**
+     * Sets the flag that indicates if the generated readers and writers should report statistics.
+     */
+    public void setInstrument(boolean newInstrument) {
+        instrument = newInstrument;
+    }
+
+    /**
+     * Returns the directory where the benchmarks of the readers and writers should be generated, or {@code null} if
+     * they shouldn't be generated.
+     */
+    public File getBenchmarksDir() {
+        return benchmarksDir;
+    }
+
+    /**
+     * Sets the directory where the benchmarks of the readers and writers should be generated.
+     */
+    public void setBenchmarksDir(File newBenchmarksDir) {
+        benchmarksDir = newBenchmarksDir;
+    }
+
+    /**
+     * Returns the directory where the stub server should be generated, or {@code null} if it shouldn't be generated.
+     */
+    public File getStubDir() {
+        return stubDir;
+    }
+
+    /**
+     * Sets the directory where the stub server should be generated.
+     */
+    public void setStubDir(File newStubDir) {
+        stubDir = newStubDir;
+    }
+
+    /**
+     * Indicates if generated files whose content is the same than the content of the existing file should be left
+     * untouched instead of being written again, so that their modification time only changes when they really
+     * change.
+     */
+    public boolean isKeepUnchanged() {
+        return keepUnchanged;
+    }
+
+    /**
+     * Sets the flag that indicates if generated files whose content hasn't changed should be left untouched.
+     */
+    public void setKeepUnchanged(boolean newKeepUnchanged) {
+        keepUnchanged = newKeepUnchanged;
+    }
+
+    /**
+     * Returns the directory where the source code including the documentation comments should be generated, or
+     * {@code null} if the documentation comments should be part of the regular source code.
+     */
+    public File getDocsDir() {
+        return docsDir;
+    }
+
+    /**
+     * Sets the directory where the source code including the documentation comments should be generated. When this
+     * is set the regular source code is generated without comments.
+     */
+    public void setDocsDir(File newDocsDir) {
+        docsDir = newDocsDir;
+    }
+
+    /**
+     * Indicates if the source code should be generated without comments, empty lines or indentation.
+     */
+    public boolean isMinify() {
+        return minify;
+    }
+
+    /**
+     * Sets the flag that indicates if the source code should be generated without comments, empty lines or
+     * indentation.
+     */
+    public void setMinify(boolean newMinify) {
+        minify = newMinify;
+    }
+}
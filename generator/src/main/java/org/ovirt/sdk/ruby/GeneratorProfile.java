@@ -0,0 +1,210 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.enterprise.context.ApplicationScoped;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+import javax.json.JsonWriterFactory;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * This class collects the time and memory used by the different phases of the generation of the code, and the size of
+ * the generated files, when the {@code --profile} option is used.
+ */
+@ApplicationScoped
+public class GeneratorProfile {
+    /**
+     * A piece of work whose time and memory will be measured.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    // The measurements of a phase:
+    private static class Phase {
+        String name;
+        long nanos;
+        long allocated;
+    }
+
+    // The measurements of a generated file:
+    private static class FileStats {
+        String name;
+        long lines;
+        long bytes;
+    }
+
+    // Indicates if profiling is enabled:
+    private boolean enabled;
+
+    // The number of milliseconds since the virtual machine was started till the generator started to run, this includes
+    // the bootstrap of the CDI container:
+    private long startup;
+
+    // The measured phases and the generated files, in the order they were added. The lists are synchronized because
+    // multiple models may be analyzed simultaneously:
+    private List<Phase> phases = Collections.synchronizedList(new ArrayList<>());
+    private List<FileStats> files = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Indicates if profiling is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables profiling. When it is enabled the time since the virtual machine was started is recorded as
+     * the startup time, so this should be called as soon as possible.
+     */
+    public void setEnabled(boolean newEnabled) {
+        enabled = newEnabled;
+        if (enabled) {
+            startup = ManagementFactory.getRuntimeMXBean().getUptime();
+        }
+    }
+
+    /**
+     * Runs the given task, and if profiling is enabled records the time and the memory allocated by the current thread
+     * while running it.
+     *
+     * @param name the name of the phase, for example {@code analysis}
+     * @param task the task to run
+     */
+    public void measure(String name, Task task) throws Exception {
+        if (!enabled) {
+            task.run();
+            return;
+        }
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        try {
+            task.run();
+        }
+        finally {
+            Phase phase = new Phase();
+            phase.name = name;
+            phase.nanos = System.nanoTime() - start;
+            phase.allocated = allocatedBefore >= 0? getAllocatedBytes() - allocatedBefore: -1;
+            phases.add(phase);
+        }
+    }
+
+    /**
+     * Records the size of a generated file, if profiling is enabled.
+     *
+     * @param name the name of the file
+     * @param lines the number of lines of the file
+     * @param bytes the number of bytes of the file
+     */
+    public void addFile(String name, long lines, long bytes) {
+        if (!enabled) {
+            return;
+        }
+        FileStats file = new FileStats();
+        file.name = name;
+        file.lines = lines;
+        file.bytes = bytes;
+        files.add(file);
+    }
+
+    /**
+     * Writes the human readable report.
+     */
+    public void writeText(PrintStream out) {
+        out.println("Profile:");
+        out.printf("  %-40s %10d ms%n", "startup (JVM and CDI bootstrap)", startup);
+        for (Phase phase : phases) {
+            String allocated = phase.allocated >= 0? String.format("%10.1f MiB", phase.allocated / 1048576.0): "";
+            out.printf("  %-40s %10d ms %s%n", phase.name, phase.nanos / 1000000, allocated);
+        }
+        long totalLines = 0;
+        long totalBytes = 0;
+        out.println("Files:");
+        for (FileStats file : files) {
+            out.printf("  %-40s %10d lines %12d bytes%n", file.name, file.lines, file.bytes);
+            totalLines += file.lines;
+            totalBytes += file.bytes;
+        }
+        out.printf("  %-40s %10d lines %12d bytes%n", "total", totalLines, totalBytes);
+    }
+
+    /**
+     * Writes the report in JSON format to the given file.
+     */
+    public void writeJson(File file) throws IOException {
+        JsonArrayBuilder phasesBuilder = Json.createArrayBuilder();
+        for (Phase phase : phases) {
+            JsonObjectBuilder phaseBuilder = Json.createObjectBuilder()
+                .add("name", phase.name)
+                .add("millis", phase.nanos / 1000000.0);
+            if (phase.allocated >= 0) {
+                phaseBuilder.add("allocated", phase.allocated);
+            }
+            phasesBuilder.add(phaseBuilder);
+        }
+        JsonArrayBuilder filesBuilder = Json.createArrayBuilder();
+        for (FileStats stats : files) {
+            filesBuilder.add(Json.createObjectBuilder()
+                .add("name", stats.name)
+                .add("lines", stats.lines)
+                .add("bytes", stats.bytes)
+            );
+        }
+        JsonObjectBuilder reportBuilder = Json.createObjectBuilder()
+            .add("startup", startup)
+            .add("phases", phasesBuilder)
+            .add("files", filesBuilder);
+        Map<String, Object> config = new HashMap<>();
+        config.put(JsonGenerator.PRETTY_PRINTING, true);
+        JsonWriterFactory factory = Json.createWriterFactory(Collections.unmodifiableMap(config));
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            try (JsonWriter writer = factory.createWriter(out)) {
+                writer.writeObject(reportBuilder.build());
+            }
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.apache.commons.io.FileUtils;
+import org.ovirt.api.metamodel.analyzer.ModelAnalyzer;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+
+/**
+ * This class keeps in a directory the models that have already been analyzed, so that the generator doesn't need to
+ * analyze the source files of the model again if they haven't changed. Each model is stored in a compressed file
+ * whose name is calculated from a digest of the source files of the model and of the versions of the generator and
+ * of the metamodel concepts, analyzer and tool, as all of them take part in building the model.
+ */
+@ApplicationScoped
+public class ModelCache {
+    /**
+     * The piece of work that creates the model when it isn't available in the cache.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        Model load() throws Exception;
+    }
+
+    // The prefix and suffix of the names of the files of the cache:
+    private static final String PREFIX = "model-";
+    private static final String SUFFIX = ".ser.gz";
+
+    // The directory where the analyzed models are stored, or null if the cache is disabled:
+    private File dir;
+
+    // Reference to the object that measures the time and memory used:
+    @Inject private GeneratorProfile profile;
+
+    /**
+     * Returns the directory where the analyzed models are stored, or {@code null} if the cache is disabled.
+     */
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Sets the directory where the analyzed models are stored. If it is {@code null} the cache is disabled.
+     */
+    public void setDir(File newDir) {
+        dir = newDir;
+    }
+
+    /**
+     * Returns the model corresponding to the given source files. If the cache is enabled and it contains that model
+     * then it is loaded from the cache, otherwise it is created using the given loader and then it is added to the
+     * cache.
+     *
+     * @param source the directory or .jar file containing the source files of the model
+     * @param loader the object that creates the model if it isn't in the cache
+     */
+    public Model get(File source, Loader loader) throws Exception {
+        if (dir == null) {
+            return loader.load();
+        }
+        File file = new File(dir, PREFIX + digest(source) + SUFFIX);
+        Model[] model = new Model[1];
+        if (file.exists()) {
+            profile.measure("model cache read", () -> model[0] = read(file));
+            if (model[0] != null) {
+                return model[0];
+            }
+        }
+        model[0] = loader.load();
+        profile.measure("model cache write", () -> write(model[0], file));
+        return model[0];
+    }
+
+    private Model read(File file) {
+        // If the file can't be read, for example because it was written by an incompatible version of the metamodel
+        // that wasn't detected by the digest, then the model is analyzed again and the file is replaced:
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            try (ObjectInputStream objects = new ObjectInputStream(in)) {
+                return (Model) objects.readObject();
+            }
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException exception) {
+            return null;
+        }
+    }
+
+    private void write(Model model, File file) throws IOException {
+        // Write to a temporary file and then rename it, so that other generators running simultaneously never see
+        // an incomplete file:
+        FileUtils.forceMkdir(dir);
+        File tmp = File.createTempFile(PREFIX, ".tmp", dir);
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                try (ObjectOutputStream objects = new ObjectOutputStream(out)) {
+                    objects.writeObject(model);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Calculates the digest that identifies the given model source files.
+     *
+     * @param source the directory or .jar file containing the source files of the model
+     * @return the hexadecimal representation of the digest
+     */
+    public String digest(File source) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        update(digest, version(ModelCache.class));
+        update(digest, version(Model.class));
+        update(digest, version(ModelAnalyzer.class));
+        update(digest, version(BuiltinTypes.class));
+        if (source.isDirectory()) {
+            // The names of the files are part of the digest, sorted so that the result doesn't depend on the order
+            // returned by the file system:
+            Collection<File> files = FileUtils.listFiles(source, null, true);
+            List<File> sorted = new ArrayList<>(files);
+            sorted.sort(null);
+            for (File file : sorted) {
+                update(digest, source.toPath().relativize(file.toPath()).toString());
+                update(digest, file);
+            }
+        }
+        else {
+            update(digest, source);
+        }
+        StringBuilder buffer = new StringBuilder();
+        for (byte b : digest.digest()) {
+            buffer.append(String.format("%02x", b));
+        }
+        return buffer.toString();
+    }
+
+    private static String version(Class<?> clazz) {
+        // When running from a build directory instead of from a .jar file there is no version, so the location of the
+        // classes and their modification time are used instead:
+        String version = clazz.getPackage().getImplementationVersion();
+        if (version == null) {
+            File location = new File(clazz.getProtectionDomain().getCodeSource().getLocation().getPath());
+            version = location.getPath() + "@" + location.lastModified();
+        }
+        return version;
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, File file) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+    }
+}
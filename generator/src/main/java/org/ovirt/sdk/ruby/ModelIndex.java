@@ -0,0 +1,310 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.ovirt.api.metamodel.concepts.Attribute;
+import org.ovirt.api.metamodel.concepts.EnumType;
+import org.ovirt.api.metamodel.concepts.Link;
+import org.ovirt.api.metamodel.concepts.Locator;
+import org.ovirt.api.metamodel.concepts.Method;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+import org.ovirt.api.metamodel.tool.Names;
+import org.ovirt.api.metamodel.tool.SchemaNames;
+
+/**
+ * This class contains the lists of types, services and members that the generators need, sorted and restricted to
+ * the subset of the model that should be generated. It is calculated once, before running the generators, so that
+ * they don't need to filter and sort the model again and again. Once calculated it isn't modified, so it can be used
+ * by multiple generators simultaneously.
+ */
+@ApplicationScoped
+public class ModelIndex {
+    // Reference to the objects used to calculate names:
+    @Inject private Names names;
+    @Inject private SchemaNames schemaNames;
+
+    // Reference to the subset of the model that should be generated:
+    @Inject private ModelSubset modelSubset;
+
+    // The types and services sorted by name:
+    private List<StructType> structTypes = Collections.emptyList();
+    private List<EnumType> enumTypes = Collections.emptyList();
+    private List<Service> services = Collections.emptyList();
+
+    // The types and services sorted so that bases are before extensions:
+    private List<StructType> structTypesInInheritanceOrder = Collections.emptyList();
+    private List<Service> servicesInInheritanceOrder = Collections.emptyList();
+
+    // The members of the types, including the inherited ones, sorted by name:
+    private Map<StructType, List<Attribute>> attributes = Collections.emptyMap();
+    private Map<StructType, List<Link>> links = Collections.emptyMap();
+    private Map<StructType, List<StructMember>> members = Collections.emptyMap();
+
+    // The members declared by the types, excluding the inherited ones, sorted by name:
+    private Map<StructType, List<Attribute>> declaredAttributes = Collections.emptyMap();
+    private Map<StructType, List<Link>> declaredLinks = Collections.emptyMap();
+
+    // The types that are the base of other types:
+    private Set<StructType> bases = Collections.emptySet();
+
+    // The types that extend each type, directly or indirectly, sorted by name:
+    private Map<StructType, List<StructType>> extensions = Collections.emptyMap();
+
+    // The methods and the locators of the services, sorted by name:
+    private Map<Service, List<Method>> methods = Collections.emptyMap();
+    private Map<Service, List<Locator>> locators = Collections.emptyMap();
+
+    // The XML tags corresponding to the names of types and members:
+    private Map<Name, String> tags = Collections.emptyMap();
+    private Map<Name, String> pluralTags = Collections.emptyMap();
+
+    /**
+     * Calculates the index for the given model. The subset of the model needs to be calculated before this.
+     */
+    public void compute(Model model) {
+        // Types and services:
+        structTypes = unmodifiableList(model.types()
+            .filter(modelSubset::contains)
+            .filter(StructType.class::isInstance)
+            .map(StructType.class::cast)
+            .sorted()
+            .collect(toList()));
+        enumTypes = unmodifiableList(model.types()
+            .filter(modelSubset::contains)
+            .filter(EnumType.class::isInstance)
+            .map(EnumType.class::cast)
+            .sorted()
+            .collect(toList()));
+        services = unmodifiableList(model.services()
+            .filter(modelSubset::contains)
+            .sorted()
+            .collect(toList()));
+        structTypesInInheritanceOrder = inheritanceOrder(structTypes, type -> (StructType) type.getBase());
+        servicesInInheritanceOrder = inheritanceOrder(services, Service::getBase);
+
+        // Members of the types, and their tags. This is done for all the types of the model, not only for the ones
+        // in the subset, because types like 'Action' are in the subset but the types of their members may not be:
+        attributes = new HashMap<>();
+        links = new HashMap<>();
+        members = new HashMap<>();
+        declaredAttributes = new HashMap<>();
+        declaredLinks = new HashMap<>();
+        tags = new HashMap<>();
+        pluralTags = new HashMap<>();
+        List<StructType> allStructTypes = model.types()
+            .filter(StructType.class::isInstance)
+            .map(StructType.class::cast)
+            .collect(toList());
+        for (StructType type : allStructTypes) {
+            List<Attribute> typeAttributes = type.attributes().sorted().collect(toList());
+            List<Link> typeLinks = type.links().sorted().collect(toList());
+            List<StructMember> typeMembers = new ArrayList<>(typeAttributes.size() + typeLinks.size());
+            typeMembers.addAll(type.getAttributes());
+            typeMembers.addAll(type.getLinks());
+            Collections.sort(typeMembers);
+            attributes.put(type, unmodifiableList(typeAttributes));
+            links.put(type, unmodifiableList(typeLinks));
+            members.put(type, unmodifiableList(typeMembers));
+            declaredAttributes.put(type, unmodifiableList(type.declaredAttributes().sorted().collect(toList())));
+            declaredLinks.put(type, unmodifiableList(type.declaredLinks().sorted().collect(toList())));
+            Name typeName = type.getName();
+            tags.computeIfAbsent(typeName, schemaNames::getSchemaTagName);
+            pluralTags.computeIfAbsent(typeName, x -> schemaNames.getSchemaTagName(names.getPlural(x)));
+            typeMembers.forEach(member -> tags.computeIfAbsent(member.getName(), schemaNames::getSchemaTagName));
+        }
+
+        // The types of the subset that are extended by other types of the subset:
+        bases = new HashSet<>();
+        extensions = new HashMap<>();
+        for (StructType type : structTypes) {
+            if (type.getBase() instanceof StructType) {
+                bases.add((StructType) type.getBase());
+            }
+            for (Type base = type.getBase(); base instanceof StructType; base = ((StructType) base).getBase()) {
+                extensions.computeIfAbsent((StructType) base, x -> new ArrayList<>()).add(type);
+            }
+        }
+
+        // Methods and locators of the services:
+        methods = new HashMap<>();
+        locators = new HashMap<>();
+        for (Service service : services) {
+            methods.put(service, unmodifiableList(service.methods().sorted().collect(toList())));
+            locators.put(service, unmodifiableList(service.locators()
+                .filter(modelSubset::contains)
+                .sorted()
+                .collect(toList())));
+        }
+    }
+
+    /**
+     * Returns the struct types, sorted by name.
+     */
+    public List<StructType> getStructTypes() {
+        return structTypes;
+    }
+
+    /**
+     * Returns the enum types, sorted by name.
+     */
+    public List<EnumType> getEnumTypes() {
+        return enumTypes;
+    }
+
+    /**
+     * Returns the services, sorted by name.
+     */
+    public List<Service> getServices() {
+        return services;
+    }
+
+    /**
+     * Returns the struct types sorted so that base types are before the types that extend them, and by name
+     * otherwise.
+     */
+    public List<StructType> getStructTypesInInheritanceOrder() {
+        return structTypesInInheritanceOrder;
+    }
+
+    /**
+     * Returns the services sorted so that base services are before the services that extend them, and by name
+     * otherwise.
+     */
+    public List<Service> getServicesInInheritanceOrder() {
+        return servicesInInheritanceOrder;
+    }
+
+    /**
+     * Returns the attributes of the given type, including the inherited ones, sorted by name.
+     */
+    public List<Attribute> getAttributes(StructType type) {
+        return attributes.get(type);
+    }
+
+    /**
+     * Returns the links of the given type, including the inherited ones, sorted by name.
+     */
+    public List<Link> getLinks(StructType type) {
+        return links.get(type);
+    }
+
+    /**
+     * Returns the attributes and links of the given type, including the inherited ones, sorted by name.
+     */
+    public List<StructMember> getMembers(StructType type) {
+        return members.get(type);
+    }
+
+    /**
+     * Returns the attributes declared by the given type, excluding the inherited ones, sorted by name.
+     */
+    public List<Attribute> getDeclaredAttributes(StructType type) {
+        return declaredAttributes.get(type);
+    }
+
+    /**
+     * Returns the links declared by the given type, excluding the inherited ones, sorted by name.
+     */
+    public List<Link> getDeclaredLinks(StructType type) {
+        return declaredLinks.get(type);
+    }
+
+    /**
+     * Checks if the given type is the base of other types.
+     */
+    public boolean isBase(StructType type) {
+        return bases.contains(type);
+    }
+
+    /**
+     * Returns the types of the subset that extend the given type, directly or indirectly, sorted by name.
+     */
+    public List<StructType> getExtensions(StructType type) {
+        return extensions.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * Returns the methods of the given service, sorted by name.
+     */
+    public List<Method> getMethods(Service service) {
+        return methods.get(service);
+    }
+
+    /**
+     * Returns the locators of the given service that return services of the subset, sorted by name.
+     */
+    public List<Locator> getLocators(Service service) {
+        return locators.get(service);
+    }
+
+    /**
+     * Returns the XML tag corresponding to the given name of a type or member.
+     */
+    public String getTag(Name name) {
+        String tag = tags.get(name);
+        return tag != null? tag: schemaNames.getSchemaTagName(name);
+    }
+
+    /**
+     * Returns the XML tag corresponding to the plural of the given name of a type or member.
+     */
+    public String getPluralTag(Name name) {
+        String tag = pluralTags.get(name);
+        return tag != null? tag: schemaNames.getSchemaTagName(names.getPlural(name));
+    }
+
+    private static <T> List<T> inheritanceOrder(List<T> items, Function<T, T> base) {
+        // Take the items sorted by name, and move to the end the ones whose base hasn't been added yet, till all
+        // have been added. The set is used only to speed up the checks, the order is given by the list:
+        Deque<T> pending = new ArrayDeque<>(items);
+        List<T> sorted = new ArrayList<>(items.size());
+        Set<T> added = new HashSet<>();
+        while (!pending.isEmpty()) {
+            T current = pending.removeFirst();
+            T currentBase = base.apply(current);
+            if (currentBase == null || added.contains(currentBase)) {
+                sorted.add(current);
+                added.add(current);
+            }
+            else {
+                pending.addLast(current);
+            }
+        }
+        return unmodifiableList(sorted);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.ovirt.api.metamodel.concepts.ListType;
+import org.ovirt.api.metamodel.concepts.Locator;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+
+/**
+ * This class calculates the subset of the model that the generators should use when only some services and types are
+ * requested with the {@code --include} option. Each include is a path of a service, relative to the root service, for
+ * example {@code vms/vm/nics}, or the name of a type, for example {@code storage_domain}. The subset contains the
+ * services that are in the path to the included services, the included services and all the services that they can
+ * locate, and the types used by the methods of those services, including the types of their attributes and links and
+ * their base types. If there are no includes the subset is the complete model.
+ */
+@ApplicationScoped
+public class ModelSubset {
+    // The names of the types that are always in the subset, because the runtime uses them directly. Only the types
+    // themselves are added, not the types of their members, as the action members that are actually sent are the
+    // parameters of the methods, and those are already part of the subset:
+    private static final String[] RUNTIME_TYPES = { "action", "fault" };
+
+    // The services and types requested:
+    private List<String> includes = new ArrayList<>();
+
+    // The services and types of the subset, or null if it is the complete model:
+    private Set<Service> services;
+    private Set<Type> types;
+
+    /**
+     * Returns the paths of the services and the names of the types requested.
+     */
+    public List<String> getIncludes() {
+        return new ArrayList<>(includes);
+    }
+
+    /**
+     * Sets the paths of the services and the names of the types requested. If the list is empty the subset will be the
+     * complete model.
+     */
+    public void setIncludes(List<String> newIncludes) {
+        includes = new ArrayList<>(newIncludes);
+    }
+
+    /**
+     * Calculates the subset of the given model corresponding to the current includes. This needs to be called before
+     * running the generators, and again each time that the model changes.
+     *
+     * @throws IllegalArgumentException if any of the includes doesn't correspond to a service or type of the model
+     */
+    public void compute(Model model) {
+        if (includes.isEmpty()) {
+            services = null;
+            types = null;
+            return;
+        }
+        services = new HashSet<>();
+        types = new HashSet<>();
+        Deque<Service> pendingServices = new ArrayDeque<>();
+        Deque<Type> pendingTypes = new ArrayDeque<>();
+
+        // The root service is always included, as it is the entry point for the rest:
+        Service root = model.getRoot();
+        addServiceTypes(root, pendingTypes);
+
+        // Resolve the includes. The services in the path to an included service are added, so that it can be
+        // reached, but the rest of the services that they locate aren't:
+        for (String include : includes) {
+            List<Service> path = findPath(root, include);
+            if (path != null) {
+                for (Service service : path) {
+                    if (services.add(service)) {
+                        addServiceTypes(service, pendingTypes);
+                    }
+                }
+                pendingServices.add(path.get(path.size() - 1));
+                continue;
+            }
+            Optional<Type> type = findType(model, include);
+            if (type.isPresent()) {
+                pendingTypes.add(type.get());
+                continue;
+            }
+            throw new IllegalArgumentException(
+                "The include \"" + include + "\" doesn't correspond to any service path or type of the model"
+            );
+        }
+
+        // Add the services that the included services can locate, transitively:
+        Set<Service> visited = new HashSet<>();
+        while (!pendingServices.isEmpty()) {
+            Service service = pendingServices.removeFirst();
+            if (!visited.add(service)) {
+                continue;
+            }
+            services.add(service);
+            addServiceTypes(service, pendingTypes);
+            service.locators().map(Locator::getService).forEach(pendingServices::add);
+        }
+
+        // Add the types used by the types already added, transitively:
+        while (!pendingTypes.isEmpty()) {
+            Type type = pendingTypes.removeFirst();
+            if (!types.add(type)) {
+                continue;
+            }
+            if (type instanceof ListType) {
+                pendingTypes.add(((ListType) type).getElementType());
+            }
+            else if (type instanceof StructType) {
+                StructType struct = (StructType) type;
+                if (struct.getBase() != null) {
+                    pendingTypes.add(struct.getBase());
+                }
+                struct.getMembers().stream().map(StructMember::getType).forEach(pendingTypes::add);
+            }
+        }
+
+        // Add the types that the runtime uses directly:
+        for (String name : RUNTIME_TYPES) {
+            findType(model, name).ifPresent(this::addBaseTypes);
+        }
+    }
+
+    /**
+     * Checks if the given type is part of the subset.
+     */
+    public boolean contains(Type type) {
+        return types == null || types.contains(type);
+    }
+
+    /**
+     * Checks if the given service is part of the subset.
+     */
+    public boolean contains(Service service) {
+        return services == null || services.contains(service);
+    }
+
+    /**
+     * Checks if the given locator is part of the subset, which is the case when the service that it returns is part of
+     * the subset.
+     */
+    public boolean contains(Locator locator) {
+        return contains(locator.getService());
+    }
+
+    private void addServiceTypes(Service service, Deque<Type> pendingTypes) {
+        // The base services need to be added as well, as the generated classes extend them:
+        for (Service current = service; current != null; current = current.getBase()) {
+            services.add(current);
+            current.methods()
+                .flatMap(method -> method.getParameters().stream())
+                .forEach(parameter -> pendingTypes.add(parameter.getType()));
+        }
+    }
+
+    private void addBaseTypes(Type type) {
+        // Add the type and its bases, but not the types of its members:
+        Type current = type;
+        while (current != null) {
+            types.add(current);
+            current = current instanceof StructType? ((StructType) current).getBase(): null;
+        }
+    }
+
+    private List<Service> findPath(Service root, String path) {
+        // Each segment of the path is the name of a locator, but segments that don't match the name of any locator
+        // are assumed to be identifiers, and are resolved with the locator that has parameters, like the generated
+        // 'service' methods do:
+        List<Service> result = new ArrayList<>();
+        Service current = root;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            String normalized = normalize(segment);
+            Optional<Locator> locator = current.locators()
+                .filter(x -> normalize(x.getName()).equals(normalized))
+                .findFirst();
+            if (!locator.isPresent()) {
+                locator = current.locators().filter(x -> !x.getParameters().isEmpty()).findFirst();
+            }
+            if (!locator.isPresent()) {
+                return null;
+            }
+            current = locator.get().getService();
+            result.add(current);
+        }
+        return result.isEmpty()? null: result;
+    }
+
+    private Optional<Type> findType(Model model, String name) {
+        String normalized = normalize(name);
+        return model.types()
+            .filter(type -> type.getName() != null && normalize(type.getName()).equals(normalized))
+            .findFirst();
+    }
+
+    private static String normalize(Name name) {
+        return name.words().map(String::toLowerCase).collect(joining());
+    }
+
+    private static String normalize(String text) {
+        return text.replaceAll("[_\\-]", "").toLowerCase();
+    }
+}
@@ -16,14 +16,16 @@ limitations under the License.
 
 package org.ovirt.sdk.ruby;
 
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.EnumType;
 import org.ovirt.api.metamodel.concepts.Link;
@@ -34,8 +36,6 @@ import org.ovirt.api.metamodel.concepts.PrimitiveType;
 import org.ovirt.api.metamodel.concepts.StructMember;
 import org.ovirt.api.metamodel.concepts.StructType;
 import org.ovirt.api.metamodel.concepts.Type;
-import org.ovirt.api.metamodel.tool.Names;
-import org.ovirt.api.metamodel.tool.SchemaNames;
 
 /**
  * This class is responsible for generating the classes that create instances of model types from XML documents.
@@ -45,13 +45,23 @@ public class ReadersGenerator implements RubyGenerator {
     protected File out;
 
     // Reference to the objects used to generate the code:
-    @Inject private Names names;
-    @Inject private SchemaNames schemaNames;
     @Inject private RubyNames rubyNames;
 
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
     // The buffer used to generate the Ruby code:
     @Inject private RubyBuffer buffer;
 
+    // Reference to the precomputed lists of types, services and members:
+    @Inject private ModelIndex modelIndex;
+
+    // Reference to the object that creates the buffers:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
+    // Reference to the frequencies of the elements, used to sort the branches that read them:
+    @Inject private TagProfile tagProfile;
+
     public void setOut(File newOut) {
         out = newOut;
     }
@@ -59,7 +69,7 @@ public class ReadersGenerator implements RubyGenerator {
     public void generate(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/readers";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Generate the source:
@@ -67,7 +77,7 @@ public class ReadersGenerator implements RubyGenerator {
 
         // Write the file:
         try {
-            buffer.write(out);
+            buffer.write(out, generatorOptions.getDocsDir());
         }
         catch (IOException exception) {
             throw new IllegalStateException("Error writing readers file \"" + fileName + "\"", exception);
@@ -81,25 +91,17 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Generate a reader for each struct type:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(this::generateReader);
+        modelIndex.getStructTypes().forEach(this::generateReader);
 
         // Generate code to register the readers:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(type -> {
-                Name typeName = type.getName();
-                String singularTag = schemaNames.getSchemaTagName(typeName);
-                String pluralTag = schemaNames.getSchemaTagName(names.getPlural(typeName));
-                String className = rubyNames.getReaderName(type).getClassName();
-                buffer.addLine("Reader.register('%1$s', %2$s.method(:read_one))", singularTag, className);
-                buffer.addLine("Reader.register('%1$s', %2$s.method(:read_many))", pluralTag, className);
-            });
+        modelIndex.getStructTypes().forEach(type -> {
+            Name typeName = type.getName();
+            String singularTag = modelIndex.getTag(typeName);
+            String pluralTag = modelIndex.getPluralTag(typeName);
+            String className = rubyNames.getReaderName(type).getClassName();
+            buffer.addLine("Reader.register('%1$s', %2$s.method(:read_one))", singularTag, className);
+            buffer.addLine("Reader.register('%1$s', %2$s.method(:read_many))", pluralTag, className);
+        });
 
         // End module:
         buffer.endModule(moduleName);
@@ -111,16 +113,19 @@ public class ReadersGenerator implements RubyGenerator {
         RubyName typeName = rubyNames.getTypeName(type);
         RubyName readerName = rubyNames.getReaderName(type);
         RubyName baseName = rubyNames.getBaseReaderName();
-        buffer.addLine("class %1$s < %2$s", readerName.getClassName(), baseName.getClassName());
+        buffer.beginBlock("class %1$s < %2$s", readerName.getClassName(), baseName.getClassName());
         buffer.addLine();
 
         // Generate the method that reads one instance:
-        buffer.addLine("def self.read_one(reader)");
+        buffer.beginBlock("def self.read_one(reader)");
         buffer.addLine(  "# Do nothing if there aren't more tags:");
         buffer.addLine(  "return nil unless reader.forward");
         buffer.addLine();
         buffer.addLine(  "# Create the object:");
         buffer.addLine(  "object = %s.new", typeName.getClassName());
+        if (generatorOptions.isInstrument()) {
+            buffer.addLine("Reader.stats.count_object(%s)", typeName.getClassName());
+        }
         buffer.addLine();
         buffer.addLine(  "# Process the attributes:");
         buffer.addLine(  "object.href = reader.get_attribute('href')");
@@ -138,12 +143,12 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine(  "reader.read");
         buffer.addLine();
         buffer.addLine(  "return object");
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
         buffer.addLine();
 
         // Generate the method that reads many instances:
-        buffer.addLine("def self.read_many(reader)");
+        buffer.beginBlock("def self.read_many(reader)");
         buffer.addLine(  "# Do nothing if there aren't more tags:");
         buffer.addLine(  "list = %1$s.new", rubyNames.getBaseListName().getClassName());
         buffer.addLine(  "return list unless reader.forward");
@@ -157,55 +162,72 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine(  "return list if empty");
         buffer.addLine();
         buffer.addLine(  "# Process the inner elements:");
-        buffer.addLine(  "while reader.forward do");
+        buffer.beginBlock(  "while reader.forward do");
         buffer.addLine(    "list << read_one(reader)");
-        buffer.addLine(  "end");
+        buffer.endBlock();
         buffer.addLine();
         buffer.addLine(  "# Discard the end tag:");
         buffer.addLine(  "reader.read");
         buffer.addLine();
         buffer.addLine(  "return list");
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
 
         // Generate the method that reads links to lists:
-        List<Link> listLinks = type.links()
+        List<Link> listLinks = modelIndex.getLinks(type).stream()
             .filter(link -> link.getType() instanceof ListType)
-            .sorted()
             .collect(toList());
         if (!listLinks.isEmpty()) {
-            buffer.addLine("def self.read_link(reader, object)");
+            buffer.beginBlock("def self.read_link(reader, object)");
             buffer.addLine(  "# Process the attributes:");
             buffer.addLine(  "rel = reader.get_attribute('rel')");
             buffer.addLine(  "href = reader.get_attribute('href')");
-            buffer.addLine(  "if rel && href");
+            buffer.beginBlock(  "if rel && href");
             buffer.addLine(    "list = %1$s.new", rubyNames.getBaseListName().getClassName());
             buffer.addLine(    "list.href = href");
-            buffer.addLine(    "case rel");
+            buffer.beginBlock(    "case rel");
             listLinks.forEach(link -> {
                 Name name = link.getName();
                 String property = rubyNames.getMemberStyleName(name);
                 String rel = name.words().map(String::toLowerCase).collect(joining());
-                buffer.addLine("when '%1$s'", rel);
+                buffer.addClause("when '%1$s'", rel);
                 buffer.addLine(  "object.%1$s = list", property);
             });
-            buffer.addLine(    "end");
-            buffer.addLine(  "end");
+            buffer.endBlock();
+            buffer.endBlock();
             buffer.addLine();
             buffer.addLine(  "# Discard the rest of the element:");
             buffer.addLine(  "reader.next_element");
-            buffer.addLine("end");
+            buffer.endBlock();
             buffer.addLine();
         }
 
+        // Generate the methods that the readers of the types that extend this one use to read the inherited members:
+        if (modelIndex.isBase(type)) {
+            generateInheritedRead(type);
+        }
+
         // End class:
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
     private void generateAttributesRead(StructType type) {
-        type.attributes().sorted().forEach(this::generateAttributeRead);
-        type.links().sorted().forEach(this::generateAttributeRead);
+        // Types that are extended by other types have a method to read the attributes, and types that extend other
+        // types use the method of their base to read the inherited attributes:
+        StructType base = (StructType) type.getBase();
+        if (modelIndex.isBase(type)) {
+            buffer.addLine("read_attributes(reader, object)");
+        }
+        else if (base != null) {
+            buffer.addLine("%1$s.read_attributes(reader, object)", rubyNames.getReaderName(base).getClassName());
+            modelIndex.getDeclaredAttributes(type).forEach(this::generateAttributeRead);
+            modelIndex.getDeclaredLinks(type).forEach(this::generateAttributeRead);
+        }
+        else {
+            modelIndex.getAttributes(type).forEach(this::generateAttributeRead);
+            modelIndex.getLinks(type).forEach(this::generateAttributeRead);
+        }
     }
 
     private void generateAttributeRead(StructMember member) {
@@ -213,45 +235,128 @@ public class ReadersGenerator implements RubyGenerator {
         Type type = member.getType();
         if (type instanceof PrimitiveType || type instanceof EnumType) {
             String property = rubyNames.getMemberStyleName(name);
-            String tag = schemaNames.getSchemaTagName(name);
+            String tag = modelIndex.getTag(name);
             buffer.addLine("value = reader.get_attribute('%s')", tag);
             buffer.addLine("object.%1$s = value if not value.nil?", property);
         }
     }
 
     private void generateElementsRead(StructType type) {
-        long attributesCount = type.attributes().count();
-        long linksCount = type.links().count();
-        long listLinksCount = type.links()
+        long attributesCount = modelIndex.getAttributes(type).size();
+        long linksCount = modelIndex.getLinks(type).size();
+        long listLinksCount = modelIndex.getLinks(type).stream()
             .filter(link -> link.getType() instanceof ListType)
             .count();
         long membersCount = attributesCount + linksCount;
         if (membersCount > 0) {
-            buffer.addLine("while reader.forward do");
-            buffer.addLine(  "case reader.node_name");
-            type.attributes().sorted().forEach(this::generateElementRead);
-            type.links().sorted().forEach(this::generateElementRead);
-            if (listLinksCount > 0) {
-                buffer.addLine("when 'link'");
-                buffer.addLine(  "read_link(reader, object)");
+            // Types that extend other types only have branches for the members that they declare, the rest of the
+            // elements are read by the method of their base. The branch for the links to lists is always here, as
+            // the 'read_link' method handles the inherited links as well:
+            String className = rubyNames.getTypeName(type).getClassName();
+            StructType base = (StructType) type.getBase();
+            List<StructMember> members = new ArrayList<>();
+            if (base != null) {
+                members.addAll(modelIndex.getDeclaredAttributes(type));
+                members.addAll(modelIndex.getDeclaredLinks(type));
             }
-            buffer.addLine(  "else");
-            buffer.addLine(    "reader.next_element");
-            buffer.addLine(  "end");
-            buffer.addLine("end");
+            else {
+                members.addAll(modelIndex.getAttributes(type));
+                members.addAll(modelIndex.getLinks(type));
+            }
+            buffer.beginBlock("while reader.forward do");
+            if (generatorOptions.isInstrument()) {
+                buffer.addLine("Reader.stats.count_element(%1$s, reader.node_name)", className);
+            }
+            generateElementsCase(singletonList(className), members, listLinksCount > 0, () -> {
+                if (base != null) {
+                    RubyName baseReaderName = rubyNames.getReaderName(base);
+                    buffer.addLine("%1$s.read_inner_element(reader, object)", baseReaderName.getClassName());
+                }
+                else {
+                    if (generatorOptions.isInstrument()) {
+                        buffer.addLine("Reader.stats.count_skipped(%1$s, reader.node_name)", className);
+                    }
+                    buffer.addLine("reader.next_element");
+                }
+            });
+            buffer.endBlock();
         }
         else {
             buffer.addLine("reader.next_element");
         }
     }
 
+    private void generateInheritedRead(StructType type) {
+        // These methods read all the members of the type, including the ones that it inherits, instead of calling the
+        // methods of its own base, so that the readers of the types that extend it need only one call to read any
+        // inherited member, regardless of how deep the hierarchy is.
+
+        // Generate the method that reads the attributes:
+        buffer.beginBlock("def self.read_attributes(reader, object)");
+        modelIndex.getAttributes(type).forEach(this::generateAttributeRead);
+        modelIndex.getLinks(type).forEach(this::generateAttributeRead);
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Generate the method that reads one element. It doesn't need a branch for the links to lists, because the
+        // types that extend this one handle them in their own 'read_link' method. It is used to read objects of the
+        // types that extend this one, so the branches are sorted using the counts of all of them:
+        List<String> types = new ArrayList<>();
+        types.add(rubyNames.getTypeName(type).getClassName());
+        modelIndex.getExtensions(type).forEach(x -> types.add(rubyNames.getTypeName(x).getClassName()));
+        List<StructMember> members = new ArrayList<>(modelIndex.getAttributes(type));
+        members.addAll(modelIndex.getLinks(type));
+        buffer.beginBlock("def self.read_inner_element(reader, object)");
+        generateElementsCase(types, members, false, () -> {
+            if (generatorOptions.isInstrument()) {
+                buffer.addLine("Reader.stats.count_skipped(object.class, reader.node_name)");
+            }
+            buffer.addLine("reader.next_element");
+        });
+        buffer.endBlock();
+        buffer.addLine();
+    }
+
+    private void generateElementsCase(List<String> types, List<StructMember> members, boolean link, Runnable other) {
+        // A 'case' needs at least one branch, so when there are none only the code for other elements is generated:
+        if (members.isEmpty() && !link) {
+            other.run();
+            return;
+        }
+
+        // The branches are sorted by name, unless there is a tag profile, then the branches for the most frequent
+        // elements go first, as the 'case' checks them in order:
+        List<StructMember> sorted = tagProfile.sort(types, members, member -> modelIndex.getTag(member.getName()));
+        long linkCount = tagProfile.getCount(types, "link");
+        boolean linkDone = !link;
+        buffer.beginBlock("case reader.node_name");
+        for (StructMember member : sorted) {
+            if (!linkDone && tagProfile.getCount(types, modelIndex.getTag(member.getName())) < linkCount) {
+                generateLinkRead();
+                linkDone = true;
+            }
+            generateElementRead(member);
+        }
+        if (!linkDone) {
+            generateLinkRead();
+        }
+        buffer.addClause("else");
+        other.run();
+        buffer.endBlock();
+    }
+
+    private void generateLinkRead() {
+        buffer.addClause("when 'link'");
+        buffer.addLine(  "read_link(reader, object)");
+    }
+
     private void generateElementRead(StructMember member) {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String tag = schemaNames.getSchemaTagName(name);
+        String tag = modelIndex.getTag(name);
         String variable = String.format("object.%1$s", property);
-        buffer.addLine("when '%1$s'", tag);
+        buffer.addClause("when '%1$s'", tag);
         if (type instanceof PrimitiveType) {
             generateReadPrimitive(member, variable);
         }
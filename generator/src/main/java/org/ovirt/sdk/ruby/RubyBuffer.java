@@ -19,8 +19,7 @@ package org.ovirt.sdk.ruby;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -40,13 +39,16 @@ import org.ovirt.api.metamodel.concepts.Parameter;
 /**
  * This class is a buffer intended to simplify generation of Ruby source code. It stores the name of the module, the
  * list of requires and the rest of the source separately, so that requires can be added on demand while generating the
- * rest of the source.
+ * rest of the source. The rest of the source is stored as a {@link RubyCode} model, and printed by the
+ * {@link RubyPrinter} in one pass, with or without comments and indentation.
  */
 @Dependent
 public class RubyBuffer {
     // Reference to the object used to generate Ruby names:
     @Inject private RubyNames rubyNames;
     @Inject private YardDoc yardDoc;
+    @Inject private GeneratorProfile profile;
+    @Inject private GeneratorOptions generatorOptions;
 
     // The name of the file:
     private String fileName;
@@ -57,11 +59,12 @@ public class RubyBuffer {
     // The stack of module names:
     private Deque<String> moduleStack = new ArrayDeque<>();
 
-    // The lines of the body of the class:
-    private List<String> lines = new ArrayList<>();
+    // The model of the body of the file, and the stack of blocks that haven't been closed yet:
+    private RubyCode.Block root = new RubyCode.Block(null);
+    private Deque<RubyCode.Block> blocks = new ArrayDeque<>();
 
-    // The current indentation level:
-    private int level;
+    // The list where the next line will be added, the body of the innermost block or clause that is open:
+    private List<RubyCode.Node> current = root.getBody();
 
     /**
      * Sets the file name.
@@ -70,6 +73,15 @@ public class RubyBuffer {
         fileName = newFileName;
     }
 
+    /**
+     * Adds a file to the set of things that will be required at the beginning of the generated source.
+     *
+     * @param name the name of the file, without the {@code require} keyword and without quotes
+     */
+    public void addRequire(String name) {
+        requires.add(name);
+    }
+
     /**
      * Begins the given module name, which may be separated with {@code ::}, and writes the corresponding {@code module}
      * statements.
@@ -77,7 +89,7 @@ public class RubyBuffer {
     public void beginModule(String moduleName) {
         Arrays.stream(moduleName.split("::")).forEach(x -> {
             moduleStack.push(x);
-            addLine("module %1$s", x);
+            beginBlock("module %1$s", x);
         });
     }
 
@@ -87,7 +99,7 @@ public class RubyBuffer {
      */
     public void endModule(String moduleName) {
         Arrays.stream(moduleName.split("::")).forEach(x -> {
-            addLine("end");
+            endBlock();
             moduleStack.pop();
         });
     }
@@ -107,55 +119,164 @@ public class RubyBuffer {
     }
 
     /**
-     * Adds a line to the file without taking into account new line characters.
+     * Adds a line to the file without taking into account new line characters. The line is added to the model as
+     * a statement, or as the begin, clause or end of a block, according to how it starts and ends. Generators should
+     * use the {@link #beginBlock}, {@link #addClause} and {@link #endBlock} methods instead when they know that the
+     * line begins or ends a block, this is only needed for lines like {@code do |x|} or {@code [}.
      */
     private void addLineNoSplit(String line) {
-        // Check of the line is the begin or end of a block:
-        boolean isBegin =
-            line.endsWith("(") ||
-            line.endsWith("[") ||
-            line.endsWith("|") ||
-            line.equals("begin") ||
-            line.equals("else") ||
-            line.equals("ensure") ||
-            line.startsWith("case ") ||
-            line.startsWith("class ") ||
-            line.startsWith("def ") ||
-            line.startsWith("if ") ||
-            line.startsWith("loop ") ||
-            line.startsWith("module ") ||
-            line.startsWith("unless ") ||
-            line.startsWith("when ") ||
-            line.startsWith("while ");
-        boolean isEnd =
-            line.equals(")") ||
-            line.equals("else") ||
-            line.equals("else") ||
-            line.equals("end") ||
-            line.equals("ensure") ||
-            line.startsWith("]") ||
-            line.startsWith("when ");
-
-        // Decrease the indentation if the line is the end of a block:
-        if (isEnd) {
-            if (level > 0) {
-                level--;
+        // Lines that start with the comment character are comments, even if they were added with this method, so
+        // that they are removed when the code is printed without comments. The space that usually follows the comment
+        // character isn't part of the text, as the printer adds it:
+        String trimmed = line.trim();
+        if (trimmed.startsWith("#") && !trimmed.startsWith("#{")) {
+            String text = trimmed.substring(1);
+            if (text.startsWith(" ")) {
+                text = text.substring(1);
             }
+            addCommentNoSplit(text);
+            return;
+        }
+
+        // Check if the line is the begin or end of a block:
+        boolean isBegin = false;
+        boolean isEnd = false;
+        if (!line.isEmpty()) {
+            char last = line.charAt(line.length() - 1);
+            isBegin = last == '(' || last == '[' || last == '|';
+            switch (line.charAt(0)) {
+            case ')':
+                isEnd = line.equals(")");
+                break;
+            case ']':
+                isEnd = true;
+                break;
+            case 'b':
+                isBegin |= line.equals("begin");
+                break;
+            case 'c':
+                isBegin |= line.startsWith("case ") || line.startsWith("class ");
+                break;
+            case 'd':
+                isBegin |= line.startsWith("def ");
+                break;
+            case 'e':
+                isEnd = line.equals("else") || line.equals("end") || line.equals("ensure");
+                isBegin |= isEnd && !line.equals("end");
+                break;
+            case 'i':
+                isBegin |= line.startsWith("if ");
+                break;
+            case 'l':
+                isBegin |= line.startsWith("loop ");
+                break;
+            case 'm':
+                isBegin |= line.startsWith("module ");
+                break;
+            case 'u':
+                isBegin |= line.startsWith("unless ");
+                break;
+            case 'w':
+                isEnd = line.startsWith("when ");
+                isBegin |= isEnd || line.startsWith("while ");
+                break;
+            default:
+                break;
+            }
+        }
+
+        // Add the line to the model:
+        if (isBegin && isEnd) {
+            addClauseNoFormat(line);
+        }
+        else if (isBegin) {
+            beginBlockNoFormat(line);
+        }
+        else if (isEnd) {
+            endBlockNoFormat(line);
+        }
+        else {
+            current.add(new RubyCode.Statement(line));
+        }
+    }
+
+    /**
+     * Begins a block, for example a {@code def} or an {@code if}. The lines added after this will be indented one
+     * level more, till the corresponding {@link #endBlock()}. The given {@code args} are formatted using the provided
+     * {@code format} using the {@link String#format(String, Object...)} method.
+     */
+    public void beginBlock(String format, Object ... args) {
+        beginBlockNoFormat(format(format, args));
+    }
+
+    /**
+     * Adds a clause, for example an {@code else} or a {@code when}, to the innermost block that is open. The given
+     * {@code args} are formatted using the provided {@code format} using the {@link String#format(String, Object...)}
+     * method.
+     */
+    public void addClause(String format, Object ... args) {
+        addClauseNoFormat(format(format, args));
+    }
+
+    /**
+     * Ends the innermost block that is open, adding an {@code end} line.
+     */
+    public void endBlock() {
+        endBlockNoFormat("end");
+    }
+
+    /**
+     * Ends the innermost block that is open, adding the given line instead of {@code end}, for example
+     * {@code ].freeze}. The given {@code args} are formatted using the provided {@code format} using the
+     * {@link String#format(String, Object...)} method.
+     */
+    public void endBlock(String format, Object ... args) {
+        endBlockNoFormat(format(format, args));
+    }
+
+    private void beginBlockNoFormat(String header) {
+        RubyCode.Block block = new RubyCode.Block(header);
+        current.add(block);
+        blocks.push(block);
+        current = block.getBody();
+    }
+
+    private void addClauseNoFormat(String header) {
+        // A clause outside of any block is like the begin of a block:
+        if (blocks.isEmpty()) {
+            beginBlockNoFormat(header);
+            return;
         }
+        RubyCode.Block clause = new RubyCode.Block(header);
+        blocks.peek().getClauses().add(clause);
+        current = clause.getBody();
+    }
 
-        // Indent the line and add it to the list:
-        StringBuilder buffer = new StringBuilder(level * 2 + line.length());
-        for (int i = 0; i < level; i++) {
-            buffer.append("  ");
+    private void endBlockNoFormat(String footer) {
+        // An end outside of any block is just a statement:
+        if (blocks.isEmpty()) {
+            current.add(new RubyCode.Statement(footer));
+            return;
+        }
+        blocks.pop().setFooter(footer);
+        if (blocks.isEmpty()) {
+            current = root.getBody();
         }
-        buffer.append(line);
-        line = buffer.toString();
-        lines.add(line);
+        else {
+            RubyCode.Block block = blocks.peek();
+            List<RubyCode.Block> clauses = block.getClauses();
+            current = clauses.isEmpty()? block.getBody(): clauses.get(clauses.size() - 1).getBody();
+        }
+    }
 
-        // Increase the indentation if the line is the begin of a block:
-        if (isBegin) {
-            level++;
+    private static String format(String format, Object ... args) {
+        if (args.length == 0) {
+            return format;
         }
+        StringBuilder buffer = new StringBuilder();
+        Formatter formatter = new Formatter(buffer);
+        formatter.format(format, args);
+        return buffer.toString();
     }
 
     /**
@@ -195,14 +316,7 @@ public class RubyBuffer {
      * Adds a comment to the file without taking into account new line characters.
      */
     private void addCommentNoSplit(String line) {
-        StringBuilder buffer = new StringBuilder(2 + level * 2 + line.length());
-        for (int i = 0; i < level; i++) {
-            buffer.append("  ");
-        }
-        buffer.append("# ");
-        buffer.append(line);
-        line = buffer.toString();
-        lines.add(line);
+        current.add(new RubyCode.Comment(line));
     }
 
     /**
@@ -326,6 +440,14 @@ public class RubyBuffer {
      * Generates the complete source code of the class.
      */
     public String toString() {
+        return render(RubyPrinter.Mode.PRETTY);
+    }
+
+    /**
+     * Generates the source code of the class, printing the body in the given mode. The license header is always
+     * preserved.
+     */
+    private String render(RubyPrinter.Mode mode) {
         StringBuilder buffer = new StringBuilder();
 
         // License:
@@ -357,10 +479,7 @@ public class RubyBuffer {
         buffer.append("\n");
 
         // Body:
-        for (String line : lines) {
-            buffer.append(line);
-            buffer.append("\n");
-        }
+        new RubyPrinter(mode).print(root, buffer);
 
         return buffer.toString();
     }
@@ -373,6 +492,43 @@ public class RubyBuffer {
      * @throws IOException if something fails while creating or writing the file
      */
     public void write(File dir) throws IOException {
+        write(dir, null);
+    }
+
+    /**
+     * Creates a {@code .rb} source file and writes the source. If a documentation directory is given then the source
+     * is written without comments, and the complete source, including the documentation comments, is written to a
+     * file with the same name inside the documentation directory. The required intermediate directories will be
+     * created if they don't exist.
+     *
+     * @param dir the base directory for the source code
+     * @param docsDir the base directory for the documented source code, or {@code null} if the source code should
+     *     contain the comments
+     * @throws IOException if something fails while creating or writing the files
+     */
+    public void write(File dir, File docsDir) throws IOException {
+        RubyPrinter.Mode mode = RubyPrinter.Mode.PRETTY;
+        if (generatorOptions.isMinify()) {
+            mode = RubyPrinter.Mode.MINIFIED;
+        }
+        else if (docsDir != null) {
+            mode = RubyPrinter.Mode.NO_COMMENTS;
+        }
+        String text = render(mode);
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        writeFile(dir, data);
+        if (docsDir != null) {
+            writeFile(docsDir, render(RubyPrinter.Mode.PRETTY).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Report the size of the file:
+        if (profile.isEnabled()) {
+            long count = text.chars().filter(c -> c == '\n').count();
+            profile.addFile(fileName + ".rb", count, data.length);
+        }
+    }
+
+    private void writeFile(File dir, byte[] data) throws IOException {
         // Calculate the complete fille name:
         File file = new File(dir, fileName.replace('/', File.separatorChar) + ".rb");
 
@@ -380,10 +536,23 @@ public class RubyBuffer {
         File parent = file.getParentFile();
         FileUtils.forceMkdir(parent);
 
-        // Write the file:
-        System.out.println("Writing file \"" + file.getAbsolutePath() + "\".");
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
-            writer.write(toString());
+        // Write the file, unless it already exists with the same content and it was requested to keep unchanged
+        // files untouched:
+        if (generatorOptions.isKeepUnchanged() && isUnchanged(file, data)) {
+            System.out.println("File \"" + file.getAbsolutePath() + "\" hasn't changed.");
+        }
+        else {
+            System.out.println("Writing file \"" + file.getAbsolutePath() + "\".");
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(data);
+            }
+        }
+    }
+
+    private static boolean isUnchanged(File file, byte[] data) throws IOException {
+        if (!file.isFile() || file.length() != data.length) {
+            return false;
         }
+        return Arrays.equals(FileUtils.readFileToByteArray(file), data);
     }
 }
@@ -0,0 +1,102 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class contains the classes of the simple model of Ruby source code built by the {@link RubyBuffer} class and
+ * printed by the {@link RubyPrinter} class. The model doesn't understand the Ruby syntax, it only knows which lines
+ * are statements, which are comments, and which begin and end blocks, so that the printer can decide how to indent
+ * them without having to analyze their text.
+ */
+public class RubyCode {
+    /**
+     * The base class for the elements of the model.
+     */
+    public abstract static class Node {
+    }
+
+    /**
+     * A line of code that doesn't begin or end a block. Empty statements are printed as empty lines.
+     */
+    public static class Statement extends Node {
+        private final String text;
+
+        public Statement(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * A line of comment. The text doesn't include the {@code #} character.
+     */
+    public static class Comment extends Node {
+        private final String text;
+
+        public Comment(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * A block of code, for example a {@code def} and its body. The header is printed with the indentation of the
+     * block and the body with one more level. The clauses, for example {@code else} or {@code when}, are also blocks,
+     * without clauses or footer of their own, and their headers are printed with the indentation of the block that
+     * contains them. The footer, usually {@code end}, is printed with the indentation of the block, and it is
+     * {@code null} while the block hasn't been closed.
+     */
+    public static class Block extends Node {
+        private final String header;
+        private final List<Node> body = new ArrayList<>();
+        private final List<Block> clauses = new ArrayList<>();
+        private String footer;
+
+        public Block(String header) {
+            this.header = header;
+        }
+
+        public String getHeader() {
+            return header;
+        }
+
+        public List<Node> getBody() {
+            return body;
+        }
+
+        public List<Block> getClauses() {
+            return clauses;
+        }
+
+        public String getFooter() {
+            return footer;
+        }
+
+        public void setFooter(String newFooter) {
+            footer = newFooter;
+        }
+    }
+}
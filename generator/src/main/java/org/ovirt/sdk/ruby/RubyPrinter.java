@@ -0,0 +1,130 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class prints the model of Ruby source code built by the {@link RubyBuffer} class, in one pass, calculating the
+ * indentation from the structure of the model.
+ */
+public class RubyPrinter {
+    /**
+     * The ways to print the code.
+     */
+    public enum Mode {
+        /**
+         * Prints all the lines, including comments and empty lines, indented with two spaces per level.
+         */
+        PRETTY,
+
+        /**
+         * Like {@link #PRETTY}, but without comments and without consecutive empty lines.
+         */
+        NO_COMMENTS,
+
+        /**
+         * Prints only the code, without comments, empty lines or indentation.
+         */
+        MINIFIED
+    }
+
+    // The selected mode:
+    private final Mode mode;
+
+    // The indentation strings for each level, created on demand:
+    private final List<String> indents = new ArrayList<>();
+
+    // The buffer where the code is printed, and the flag that indicates if the last line printed was empty:
+    private StringBuilder out;
+    private boolean blank;
+
+    public RubyPrinter(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Prints the body of the given block to the given buffer.
+     */
+    public void print(RubyCode.Block root, StringBuilder buffer) {
+        out = buffer;
+        blank = true;
+        printNodes(root.getBody(), 0);
+    }
+
+    private void printNodes(List<RubyCode.Node> nodes, int level) {
+        for (RubyCode.Node node : nodes) {
+            if (node instanceof RubyCode.Block) {
+                printBlock((RubyCode.Block) node, level);
+            }
+            else if (node instanceof RubyCode.Comment) {
+                printComment(((RubyCode.Comment) node).getText(), level);
+            }
+            else {
+                printLine(((RubyCode.Statement) node).getText(), level);
+            }
+        }
+    }
+
+    private void printBlock(RubyCode.Block block, int level) {
+        printLine(block.getHeader(), level);
+        printNodes(block.getBody(), level + 1);
+        for (RubyCode.Block clause : block.getClauses()) {
+            printLine(clause.getHeader(), level);
+            printNodes(clause.getBody(), level + 1);
+        }
+        if (block.getFooter() != null) {
+            printLine(block.getFooter(), level);
+        }
+    }
+
+    private void printComment(String text, int level) {
+        if (mode == Mode.PRETTY) {
+            out.append(indent(level));
+            out.append("# ");
+            out.append(text);
+            out.append('\n');
+        }
+    }
+
+    private void printLine(String text, int level) {
+        // Empty lines are always printed in pretty mode, even with indentation. In the other modes consecutive empty
+        // lines are collapsed, or removed completely:
+        boolean empty = text.trim().isEmpty();
+        if (empty && mode != Mode.PRETTY && (blank || mode == Mode.MINIFIED)) {
+            return;
+        }
+        blank = empty;
+        if (mode != Mode.MINIFIED) {
+            out.append(indent(level));
+        }
+        out.append(text);
+        out.append('\n');
+    }
+
+    private String indent(int level) {
+        while (indents.size() <= level) {
+            StringBuilder buffer = new StringBuilder(indents.size() * 2);
+            for (int i = 0; i < indents.size(); i++) {
+                buffer.append("  ");
+            }
+            indents.add(buffer.toString());
+        }
+        return indents.get(level);
+    }
+}
@@ -17,17 +17,14 @@ limitations under the License.
 package org.ovirt.sdk.ruby;
 
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
-import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.EnumType;
 import org.ovirt.api.metamodel.concepts.ListType;
@@ -63,9 +60,18 @@ public class ServicesGenerator implements RubyGenerator {
     @Inject private RubyNames rubyNames;
     @Inject private SchemaNames schemaNames;
 
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
     // The buffer used to generate the Ruby code:
     private RubyBuffer buffer;
 
+    // Reference to the precomputed lists of types, services and members:
+    @Inject private ModelIndex modelIndex;
+
+    // Reference to the object that creates the buffers:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
     /**
      * Set the directory were the output will be generated.
      */
@@ -76,7 +82,7 @@ public class ServicesGenerator implements RubyGenerator {
     public void generate(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/services";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Generate the source:
@@ -84,7 +90,7 @@ public class ServicesGenerator implements RubyGenerator {
 
         // Write the file:
         try {
-            buffer.write(out);
+            buffer.write(out, generatorOptions.getDocsDir());
         }
         catch (IOException exception) {
             throw new IllegalStateException("Error writing services file \"" + fileName + "\"", exception);
@@ -101,27 +107,13 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addLine();
 
         // The declarations of the services need to appear in inheritance order, otherwise some symbols won't be
-        // defined and that will produce errors. To order them correctly we need first to sort them by name, and
-        // then sort again so that bases are before extensions.
-        Deque<Service> pending = model.services()
-            .sorted()
-            .collect(toCollection(ArrayDeque::new));
-        Deque<Service> sorted = new ArrayDeque<>(pending.size());
-        while (!pending.isEmpty()) {
-            Service current = pending.removeFirst();
-            Service base = current.getBase();
-            if (base == null || sorted.contains(base)) {
-                sorted.addLast(current);
-            }
-            else {
-                pending.addLast(current);
-            }
-        }
+        // defined and that will produce errors:
+        List<Service> sorted = modelIndex.getServicesInInheritanceOrder();
 
         // Generate the forward declarations using the order calculated in the previous step:
         sorted.forEach(x -> {
             generateClassDeclaration(x);
-            buffer.addLine("end");
+            buffer.endBlock();
             buffer.addLine();
         });
 
@@ -140,20 +132,16 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Generate the service methods:
-        service.methods()
-            .sorted()
-            .forEach(this::generateMethod);
+        modelIndex.getMethods(service).forEach(this::generateMethod);
 
         // Generate the locator methods:
-        service.locators()
-            .sorted()
-            .forEach(this::generateLocator);
+        modelIndex.getLocators(service).forEach(this::generateLocator);
 
         // Generate the path locator:
         generatePathLocator(service);
 
         // End class:
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -186,7 +174,7 @@ public class ServicesGenerator implements RubyGenerator {
         // Generate the parameter specs:
         Name methodName = getFullName(method);
         String specConstant = rubyNames.getConstantStyleName(methodName);
-        generateParameterSpecs(specConstant, secondaryParameters);
+        generateParameterSpecs(specConstant, methodName, secondaryParameters);
 
         // Document the method:
         Type primaryParameterType = primaryParameter.getType();
@@ -225,9 +213,9 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
 
         // Generate the method declaration:
-        buffer.addLine("def %1$s(%2$s, opts = {})", rubyNames.getMemberStyleName(methodName), argName);
+        buffer.beginBlock("def %1$s(%2$s, opts = {})", rubyNames.getMemberStyleName(methodName), argName);
         buffer.addLine(  "internal_add(%1$s, %2$s, %3$s, opts)", argName, argType.getClassName(), specConstant);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -249,7 +237,7 @@ public class ServicesGenerator implements RubyGenerator {
         // Generate the parameter specs:
         Name methodName = getFullName(method);
         String specConstant = rubyNames.getConstantStyleName(methodName);
-        generateParameterSpecs(specConstant, inputParameters);
+        generateParameterSpecs(specConstant, methodName, inputParameters);
 
         // Document the method:
         String actionName = rubyNames.getMemberStyleName(methodName);
@@ -277,9 +265,9 @@ public class ServicesGenerator implements RubyGenerator {
         Name deepestBaseName = deepestBase.getName();
         String actionPath = getPath(deepestBaseName);
         String resultArg = resultName != null? ":" + resultName: "nil";
-        buffer.addLine("def %1$s(opts = {})", actionName);
+        buffer.beginBlock("def %1$s(opts = {})", actionName);
         buffer.addLine(  "internal_action(:%1$s, %2$s, %3$s, opts)", actionPath, resultArg, specConstant);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -302,7 +290,7 @@ public class ServicesGenerator implements RubyGenerator {
         // Generate the parameters spec:
         Name methodName = getFullName(method);
         String specConstant = rubyNames.getConstantStyleName(methodName);
-        generateParameterSpecs(specConstant, inParameters);
+        generateParameterSpecs(specConstant, methodName, inParameters);
 
         // Document the method:
         buffer.addComment();
@@ -329,9 +317,9 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
 
         // Generate the method declaration:
-        buffer.addLine("def %1$s(opts = {})", rubyNames.getMemberStyleName(methodName));
+        buffer.beginBlock("def %1$s(opts = {})", rubyNames.getMemberStyleName(methodName));
         buffer.addLine(  "internal_get(%1$s, opts)", specConstant);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -344,7 +332,7 @@ public class ServicesGenerator implements RubyGenerator {
         // Generate the parameters spec:
         Name methodName = getFullName(method);
         String specConstant = rubyNames.getConstantStyleName(methodName);
-        generateParameterSpecs(specConstant, secondaryParameters);
+        generateParameterSpecs(specConstant, methodName, secondaryParameters);
 
         // Document the method:
         Type primaryParameterType = primaryParameter.getType();
@@ -382,9 +370,9 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
 
         // Generate the method declaration:
-        buffer.addLine("def %1$s(%2$s, opts = {})", rubyNames.getMemberStyleName(methodName), argName);
+        buffer.beginBlock("def %1$s(%2$s, opts = {})", rubyNames.getMemberStyleName(methodName), argName);
         buffer.addLine(  "internal_update(%1$s, %2$s, %3$s, opts)", argName, argType.getClassName(), specConstant);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -398,7 +386,7 @@ public class ServicesGenerator implements RubyGenerator {
         // Generate the parameters spec:
         Name methodName = getFullName(method);
         String specConstant = rubyNames.getConstantStyleName(methodName);
-        generateParameterSpecs(specConstant, inParameters);
+        generateParameterSpecs(specConstant, methodName, inParameters);
 
         // Document the method:
         String methodDoc = method.getDoc();
@@ -418,19 +406,23 @@ public class ServicesGenerator implements RubyGenerator {
         documentBuiltinParameters();
 
         // Generate the method declaration:
-        buffer.addLine("def %1$s(opts = {})", rubyNames.getMemberStyleName(methodName));
+        buffer.beginBlock("def %1$s(opts = {})", rubyNames.getMemberStyleName(methodName));
         buffer.addLine(  "internal_remove(%1$s, opts)", specConstant);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
-    private void generateParameterSpecs(String constant, List<Parameter> parameters) {
+    private void generateParameterSpecs(String constant, Name method, List<Parameter> parameters) {
         buffer.addLine("%1$s = [", constant);
         parameters.forEach(this::generateParameterSpec);
         buffer.addLine("].freeze");
         buffer.addLine();
         buffer.addLine("private_constant :%1$s", constant);
         buffer.addLine();
+
+        // Register the name of the method, so that the metrics can be associated to it:
+        buffer.addLine("instrument %1$s, :%2$s", constant, rubyNames.getMemberStyleName(method));
+        buffer.addLine();
     }
 
     private void generateParameterSpec(Parameter parameter) {
@@ -498,9 +490,9 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
         buffer.addYardTag("return", "[%1$s] A reference to the `%2$s` service.", serviceName.getClassName(), methodName);
         buffer.addComment();
-        buffer.addLine("def %1$s_service(%2$s)", methodName, argName);
+        buffer.beginBlock("def %1$s_service(%2$s)", methodName, argName);
         buffer.addLine(  "%1$s.new(self, %2$s)", serviceName.getClassName(), argName);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -517,9 +509,9 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
         buffer.addYardTag("return", "[%1$s] A reference to `%2$s` service.", serviceName.getClassName(), methodName);
         buffer.addComment();
-        buffer.addLine("def %1$s_service", methodName);
+        buffer.beginBlock("def %1$s_service", methodName);
         buffer.addLine(  "@%1$s_service ||= %2$s.new(self, '%3$s')", methodName, serviceName.getClassName(), urlSegment);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -532,37 +524,41 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
         buffer.addYardTag("return", "[Service] A reference to the service.");
         buffer.addComment();
-        buffer.addLine("def service(path)");
-        buffer.addLine(  "if path.nil? || path == ''");
+        buffer.beginBlock("def service(path)");
+        buffer.beginBlock(  "if path.nil? || path == ''");
         buffer.addLine(    "return self");
-        buffer.addLine(  "end");
+        buffer.endBlock();
 
         // Generate the code that checks if the path corresponds to any of the locators without parameters:
-        service.locators().filter(x -> x.getParameters().isEmpty()).sorted().forEach(locator -> {
-            Name name = locator.getName();
-            String segment = getPath(name);
-            buffer.addLine("if path == '%1$s'", segment);
-            buffer.addLine(  "return %1$s_service", rubyNames.getMemberStyleName(name));
-            buffer.addLine("end");
-            buffer.addLine("if path.start_with?('%1$s/')", segment);
-            buffer.addLine(
-                "return %1$s_service.service(path[%2$d..-1])",
-                rubyNames.getMemberStyleName(name),
-                segment.length() + 1
-            );
-            buffer.addLine("end");
-        });
+        modelIndex.getLocators(service).stream()
+            .filter(x -> x.getParameters().isEmpty())
+            .forEach(locator -> {
+                Name name = locator.getName();
+                String segment = getPath(name);
+                buffer.beginBlock("if path == '%1$s'", segment);
+                buffer.addLine(  "return %1$s_service", rubyNames.getMemberStyleName(name));
+                buffer.endBlock();
+                buffer.beginBlock("if path.start_with?('%1$s/')", segment);
+                buffer.addLine(
+                    "return %1$s_service.service(path[%2$d..-1])",
+                    rubyNames.getMemberStyleName(name),
+                    segment.length() + 1
+                );
+                buffer.endBlock();
+            });
 
         // If the path doesn't correspond to a locator without parameters, then it will correspond to the locator
         // with parameters, otherwise it is an error:
-        Optional<Locator> optional = service.locators().filter(x -> !x.getParameters().isEmpty()).findAny();
+        Optional<Locator> optional = modelIndex.getLocators(service).stream()
+            .filter(x -> !x.getParameters().isEmpty())
+            .findAny();
         if (optional.isPresent()) {
             Locator locator = optional.get();
             Name name = locator.getName();
             buffer.addLine("index = path.index('/')");
-            buffer.addLine("if index.nil?");
+            buffer.beginBlock("if index.nil?");
             buffer.addLine(  "return %1$s_service(path)", rubyNames.getMemberStyleName(name));
-            buffer.addLine("end");
+            buffer.endBlock();
             buffer.addLine(
                 "return %1$s_service(path[0..(index - 1)]).service(path[(index +1)..-1])",
                 rubyNames.getMemberStyleName(name)
@@ -573,7 +569,7 @@ public class ServicesGenerator implements RubyGenerator {
         }
 
         // End method:
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -581,7 +577,7 @@ public class ServicesGenerator implements RubyGenerator {
         RubyName serviceName = rubyNames.getServiceName(service);
         Service base = service.getBase();
         RubyName baseName = base != null? rubyNames.getServiceName(base): rubyNames.getBaseServiceName();
-        buffer.addLine("class %1$s < %2$s", serviceName.getClassName(), baseName.getClassName());
+        buffer.beginBlock("class %1$s < %2$s", serviceName.getClassName(), baseName.getClassName());
     }
 
     private void documentBuiltinParameters() {
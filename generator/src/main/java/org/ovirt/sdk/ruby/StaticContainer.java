@@ -0,0 +1,343 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+import javax.enterprise.util.TypeLiteral;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Qualifier;
+import javax.inject.Singleton;
+
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+import org.ovirt.api.metamodel.tool.JavaPackages;
+import org.ovirt.api.metamodel.tool.JavaReservedWords;
+import org.ovirt.api.metamodel.tool.JaxrsNames;
+import org.ovirt.api.metamodel.tool.Names;
+import org.ovirt.api.metamodel.tool.PlainJavaNames;
+import org.ovirt.api.metamodel.tool.SchemaNames;
+import org.ovirt.api.metamodel.tool.Words;
+
+/**
+ * This class creates and wires the components of the generator without starting the CDI container. The components
+ * are taken from a fixed list instead of being discovered scanning the class path, and the {@code @Inject} fields,
+ * the {@code @Produces} methods and the {@code @PostConstruct} methods are processed in the same way that the CDI
+ * container does, but only for the simple cases used by the generator. It is used like the {@code Main} class of the
+ * metamodel, passing the name of the tool class as the first argument:
+ *
+ * <pre>
+ * java org.ovirt.sdk.ruby.StaticContainer org.ovirt.sdk.ruby.Tool \
+ * --model=model.jar \
+ * --out=lib \
+ * --version=4.3.0
+ * </pre>
+ *
+ * Note that new components need to be added to the list, otherwise they can't be injected.
+ */
+public class StaticContainer {
+    // The classes of the components. The order of the generators is the order used to run them:
+    private static final List<Class<?>> COMPONENTS = Arrays.asList(
+        // The tools:
+        Tool.class,
+        FixtureTool.class,
+
+        // The generators:
+        ReadersGenerator.class,
+        ServicesGenerator.class,
+        WritersGenerator.class,
+        BenchmarksGenerator.class,
+        StubGenerator.class,
+        TypesGenerator.class,
+        VersionGenerator.class,
+
+        // The rest of the components of the generator:
+        FixtureGenerator.class,
+        GeneratorOptions.class,
+        GeneratorProfile.class,
+        ModelCache.class,
+        ModelIndex.class,
+        ModelSubset.class,
+        RubyBuffer.class,
+        RubyNames.class,
+        RubyReservedWords.class,
+        TagProfile.class,
+        YardDoc.class,
+
+        // The components of the metamodel used by the generator:
+        BuiltinTypes.class,
+        JavaPackages.class,
+        JavaReservedWords.class,
+        JaxrsNames.class,
+        Names.class,
+        PlainJavaNames.class,
+        SchemaNames.class,
+        Words.class
+    );
+
+    // The instances of the components that are shared, indexed by class:
+    private final Map<Class<?>, Object> singletons = new HashMap<>();
+
+    /**
+     * Returns an instance of the component that has the given type, creating it if needed. Components annotated with
+     * {@code @ApplicationScoped} or {@code @Singleton} are created only once, the rest are created each time that
+     * they are requested.
+     *
+     * @param type the type of the component, it can be a class of the list or a type implemented by only one of them
+     */
+    public <T> T get(Class<T> type) {
+        return type.cast(create(resolve(type, new HashSet<>())));
+    }
+
+    private Object create(Class<?> clazz) {
+        boolean shared =
+            clazz.isAnnotationPresent(ApplicationScoped.class) ||
+            clazz.isAnnotationPresent(Singleton.class);
+        if (shared) {
+            Object instance = singletons.get(clazz);
+            if (instance != null) {
+                return instance;
+            }
+        }
+        try {
+            // Shared instances are registered before injecting their fields, so that components that depend on each
+            // other get the same instance:
+            Object instance = clazz.getDeclaredConstructor().newInstance();
+            if (shared) {
+                singletons.put(clazz, instance);
+            }
+            inject(instance);
+            return instance;
+        }
+        catch (InstantiationException | IllegalAccessException | NoSuchMethodException |
+            InvocationTargetException exception) {
+            throw new IllegalStateException("Can't create component of class \"" + clazz.getName() + "\"", exception);
+        }
+    }
+
+    private void inject(Object instance) throws IllegalAccessException {
+        // Fields of base classes are injected first, and then the post construct methods are called:
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> clazz = instance.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            hierarchy.add(0, clazz);
+        }
+        for (Class<?> clazz : hierarchy) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Inject.class)) {
+                    field.setAccessible(true);
+                    field.set(instance, lookup(field));
+                }
+            }
+        }
+        for (Class<?> clazz : hierarchy) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(PostConstruct.class)) {
+                    invoke(method, instance);
+                }
+            }
+        }
+    }
+
+    private Object lookup(Field field) {
+        Set<Annotation> qualifiers = qualifiers(field.getAnnotations());
+        Type type = field.getGenericType();
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Class<?> raw = (Class<?>) parameterized.getRawType();
+            if (raw == Provider.class) {
+                Class<?> element = (Class<?>) parameterized.getActualTypeArguments()[0];
+                return (Provider<?>) () -> get(element);
+            }
+            if (raw == Instance.class) {
+                Class<?> element = (Class<?>) parameterized.getActualTypeArguments()[0];
+                return new ListInstance<>(all(element));
+            }
+        }
+        Class<?> raw = field.getType();
+        if (!qualifiers.isEmpty()) {
+            Object produced = produce(raw, qualifiers);
+            if (produced != null) {
+                return produced;
+            }
+        }
+        return create(resolve(raw, qualifiers));
+    }
+
+    private Class<?> resolve(Class<?> type, Set<Annotation> qualifiers) {
+        List<Class<?>> candidates = COMPONENTS.stream()
+            .filter(type::isAssignableFrom)
+            .filter(clazz -> qualifiers(clazz.getAnnotations()).containsAll(qualifiers))
+            .collect(Collectors.toList());
+        if (candidates.size() != 1) {
+            throw new IllegalStateException(
+                "Expected exactly one component of type \"" + type.getName() + "\" with qualifiers " + qualifiers +
+                " but found " + candidates.size()
+            );
+        }
+        return candidates.get(0);
+    }
+
+    private <T> List<T> all(Class<T> type) {
+        return COMPONENTS.stream()
+            .filter(type::isAssignableFrom)
+            .map(clazz -> type.cast(create(clazz)))
+            .collect(Collectors.toList());
+    }
+
+    private Object produce(Class<?> type, Set<Annotation> qualifiers) {
+        for (Class<?> clazz : COMPONENTS) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                boolean matches =
+                    method.isAnnotationPresent(Produces.class) &&
+                    type.isAssignableFrom(method.getReturnType()) &&
+                    qualifiers(method.getAnnotations()).equals(qualifiers);
+                if (matches) {
+                    return invoke(method, create(clazz));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Set<Annotation> qualifiers(Annotation[] annotations) {
+        Set<Annotation> result = new HashSet<>();
+        for (Annotation annotation : annotations) {
+            Class<? extends Annotation> type = annotation.annotationType();
+            if (type.isAnnotationPresent(Qualifier.class) && type != Named.class) {
+                result.add(annotation);
+            }
+        }
+        return result;
+    }
+
+    private static Object invoke(Method method, Object instance) {
+        try {
+            method.setAccessible(true);
+            return method.invoke(instance);
+        }
+        catch (IllegalAccessException | InvocationTargetException exception) {
+            throw new IllegalStateException("Can't invoke method \"" + method + "\"", exception);
+        }
+    }
+
+    /**
+     * This is the implementation of the {@link Instance} interface used for the {@code @Inject @Any} fields. It
+     * contains the components that were found when the field was injected, and selecting a subset filters them by
+     * class and qualifiers.
+     */
+    private static class ListInstance<T> implements Instance<T> {
+        private final List<T> items;
+
+        ListInstance(List<T> items) {
+            this.items = items;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return items.iterator();
+        }
+
+        @Override
+        public T get() {
+            if (items.size() != 1) {
+                throw new IllegalStateException("Expected exactly one component but found " + items.size());
+            }
+            return items.get(0);
+        }
+
+        @Override
+        public boolean isUnsatisfied() {
+            return items.isEmpty();
+        }
+
+        @Override
+        public boolean isAmbiguous() {
+            return items.size() > 1;
+        }
+
+        @Override
+        public Instance<T> select(Annotation... qualifiers) {
+            return filter(Object.class, qualifiers);
+        }
+
+        @Override
+        public <U extends T> Instance<U> select(Class<U> subtype, Annotation... qualifiers) {
+            return filter(subtype, qualifiers);
+        }
+
+        @Override
+        public <U extends T> Instance<U> select(TypeLiteral<U> subtype, Annotation... qualifiers) {
+            return filter(subtype.getRawType(), qualifiers);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <U> Instance<U> filter(Class<?> subtype, Annotation... qualifiers) {
+            // The @Any qualifier is implicit in all the components, so it doesn't restrict the selection:
+            Set<Annotation> required = qualifiers(qualifiers);
+            required.removeIf(qualifier -> qualifier.annotationType() == Any.class);
+            return new ListInstance<>(items.stream()
+                .filter(subtype::isInstance)
+                .filter(item -> qualifiers(item.getClass().getAnnotations()).containsAll(required))
+                .map(item -> (U) item)
+                .collect(Collectors.toList()));
+        }
+
+        @Override
+        public void destroy(T instance) {
+            // Nothing, the instances are released by the garbage collector.
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("The first argument must be the fully qualified name of the tool class.");
+            System.exit(1);
+        }
+        Class<?> toolClass = Class.forName(args[0]);
+        String[] toolArgs = Arrays.copyOfRange(args, 1, args.length);
+        Object tool = new StaticContainer().get(toolClass);
+        try {
+            toolClass.getMethod("run", String[].class).invoke(tool, (Object) toolArgs);
+        }
+        catch (InvocationTargetException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static java.util.stream.Collectors.joining;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.ovirt.api.metamodel.concepts.ListType;
+import org.ovirt.api.metamodel.concepts.Method;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.NameParser;
+import org.ovirt.api.metamodel.concepts.Parameter;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+
+/**
+ * This class is responsible for generating a stub of the API server, a small Ruby script that serves every path of
+ * the services tree with synthetic or fixture backed responses, so that the SDK can be tested and measured without a
+ * real server. The stub is generated only when the {@code --stub} option is used, and it is written to the directory
+ * given in that option, not to the directory of the SDK.
+ */
+public class StubGenerator implements RubyGenerator {
+    // Well known method names:
+    private static final Name ADD = NameParser.parseUsingCase("Add");
+    private static final Name GET = NameParser.parseUsingCase("Get");
+    private static final Name LIST = NameParser.parseUsingCase("List");
+    private static final Name REMOVE = NameParser.parseUsingCase("Remove");
+    private static final Name UPDATE = NameParser.parseUsingCase("Update");
+
+    // The name of the generated file:
+    private static final String FILE_NAME = "stub_server";
+
+    // The directory were the output will be generated:
+    protected File out;
+
+    // Reference to the objects used to generate the code:
+    @Inject private RubyNames rubyNames;
+
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
+    // The buffer used to generate the Ruby code:
+    private RubyBuffer buffer;
+
+    // Reference to the precomputed lists of types, services and members:
+    @Inject private ModelIndex modelIndex;
+
+    // Reference to the object that creates the buffers:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
+    public void setOut(File newOut) {
+        out = newOut;
+    }
+
+    public void generate(Model model) {
+        // Do nothing unless the stub has been explicitly requested:
+        File dir = generatorOptions.getStubDir();
+        if (dir == null) {
+            return;
+        }
+
+        // Generate the source:
+        buffer = bufferProvider.get();
+        buffer.setFileName(FILE_NAME);
+        generateSource(model);
+
+        // Write the file:
+        try {
+            buffer.write(dir);
+        }
+        catch (IOException exception) {
+            throw new IllegalStateException("Error writing stub file \"" + FILE_NAME + "\"", exception);
+        }
+    }
+
+    private void generateSource(Model model) {
+        buffer.addRequire("cgi");
+        buffer.addRequire("json");
+        buffer.addRequire("optparse");
+        buffer.addRequire("webrick");
+
+        // Begin module:
+        String moduleName = rubyNames.getModuleName();
+        buffer.beginModule(moduleName);
+        buffer.addComment();
+        buffer.addComment("This module contains a stub of the API server, generated from the same model as the SDK.");
+        buffer.addComment("It serves all the paths of the services tree, using synthetic responses or the fixtures");
+        buffer.addComment("found in a directory, and it can add latency, errors and throttling. It is intended for");
+        buffer.addComment("tests of the SDK that can't use a real server. To start it from the command line:");
+        buffer.addComment();
+        buffer.addComment("[source]");
+        buffer.addComment("----");
+        buffer.addComment("ruby stub_server.rb --port 8080 --latency 0.01 --fixtures fixtures");
+        buffer.addComment("----");
+        buffer.addComment();
+        buffer.addComment("Then connect to `http://localhost:8080/ovirt-engine/api`, with any user name and password.");
+        buffer.addComment();
+        buffer.addComment("@api private");
+        buffer.addComment();
+        buffer.beginBlock("module Stub");
+
+        // Services table:
+        generateServicesTable(model);
+
+        // Server:
+        generateServer();
+
+        // Main:
+        generateMain();
+
+        // End module:
+        buffer.endBlock();
+        buffer.endModule(moduleName);
+        buffer.addLine();
+        buffer.addLine("%1$s::Stub.main(ARGV) if $PROGRAM_NAME == __FILE__", moduleName);
+    }
+
+    private void generateServicesTable(Model model) {
+        buffer.addComment();
+        buffer.addComment("The description of a service: the tags of the objects returned by the `get` and `list`");
+        buffer.addComment("methods, the flags that indicate if it supports the `add`, `update` and `remove` methods,");
+        buffer.addComment("the names of the actions, the services returned by the locators without parameters,");
+        buffer.addComment("indexed by path segment, and the service returned by the locator with a parameter.");
+        buffer.addComment();
+        buffer.addLine("Node = Struct.new(:get, :list, :add, :update, :remove, :actions, :locators, :parameter)");
+        buffer.addLine();
+        buffer.addComment();
+        buffer.addComment("The services, indexed by name.");
+        buffer.addComment();
+        buffer.addLine("SERVICES = {}");
+        buffer.addLine();
+        buffer.addComment();
+        buffer.addComment("The name of the root service.");
+        buffer.addComment();
+        buffer.addLine("ROOT = '%1$s'.freeze", rubyNames.getServiceName(model.getRoot()).getClassName());
+        buffer.addLine();
+        buffer.beginBlock("def self.define(name)");
+        buffer.addLine(  "SERVICES[name] = Node.new(nil, nil, false, false, false, [], {}, nil)");
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Generate the description of each service:
+        modelIndex.getServices().forEach(this::generateServiceEntry);
+        buffer.addLine();
+    }
+
+    private void generateServiceEntry(Service service) {
+        String serviceName = rubyNames.getServiceName(service).getClassName();
+        buffer.addLine("define('%1$s').tap do |node|", serviceName);
+
+        // Methods, note that many methods may correspond to the same HTTP method or action, for example the
+        // `export_to_export_domain` and `export_to_path_on_host` methods both use the `export` action:
+        Set<String> actions = new TreeSet<>();
+        modelIndex.getMethods(service).forEach(method -> {
+            Name baseName = getDeepestBase(method).getName();
+            if (GET.equals(baseName)) {
+                Type type = getOutputType(method);
+                if (type instanceof StructType) {
+                    buffer.addLine("node.get = '%1$s'", modelIndex.getTag(type.getName()));
+                }
+            }
+            else if (LIST.equals(baseName)) {
+                Type type = getOutputType(method);
+                if (type instanceof ListType && ((ListType) type).getElementType() instanceof StructType) {
+                    Name elementName = ((ListType) type).getElementType().getName();
+                    buffer.addLine(
+                        "node.list = ['%1$s', '%2$s']",
+                        modelIndex.getPluralTag(elementName),
+                        modelIndex.getTag(elementName)
+                    );
+                }
+            }
+            else if (ADD.equals(baseName)) {
+                buffer.addLine("node.add = true");
+            }
+            else if (UPDATE.equals(baseName)) {
+                buffer.addLine("node.update = true");
+            }
+            else if (REMOVE.equals(baseName)) {
+                buffer.addLine("node.remove = true");
+            }
+            else {
+                actions.add(getPath(baseName));
+            }
+        });
+        actions.forEach(action -> buffer.addLine("node.actions << '%1$s'", action));
+
+        // Locators:
+        modelIndex.getLocators(service).forEach(locator -> {
+            String childName = rubyNames.getServiceName(locator.getService()).getClassName();
+            if (locator.getParameters().isEmpty()) {
+                buffer.addLine("node.locators['%1$s'] = '%2$s'", getPath(locator.getName()), childName);
+            }
+            else {
+                buffer.addLine("node.parameter = '%1$s'", childName);
+            }
+        });
+        buffer.endBlock();
+    }
+
+    private void generateServer() {
+        buffer.addComment();
+        buffer.addComment("The stub server. Each connection is served by its own thread, connections are kept alive,");
+        buffer.addComment("and requests sent using pipelining are processed in the order they are received.");
+        buffer.addComment();
+        buffer.beginBlock("class Server");
+        buffer.addComment();
+        buffer.addComment("Creates a new server.");
+        buffer.addComment();
+        buffer.addComment("@param opts [Hash] The options.");
+        buffer.addComment();
+        buffer.addComment("@option opts [String] :host ('localhost') The address where the server will listen.");
+        buffer.addComment();
+        buffer.addComment("@option opts [Integer] :port (8080) The port where the server will listen, zero means any");
+        buffer.addComment("  free port.");
+        buffer.addComment();
+        buffer.addComment("@option opts [String] :prefix ('/ovirt-engine/api') The prefix of the paths of the API.");
+        buffer.addComment();
+        buffer.addComment("@option opts [Float] :latency (0) The number of seconds added to each response.");
+        buffer.addComment();
+        buffer.addComment("@option opts [Float] :jitter (0) The maximum number of seconds randomly added to the");
+        buffer.addComment("  latency.");
+        buffer.addComment();
+        buffer.addComment("@option opts [Float] :error_rate (0) The probability, between 0 and 1, of responding to a");
+        buffer.addComment("  request with an error 500.");
+        buffer.addComment();
+        buffer.addComment("@option opts [Integer] :max_requests The maximum number of requests processed");
+        buffer.addComment("  simultaneously. Requests beyond this limit get an error 503 with a `Retry-After` header.");
+        buffer.addComment("  By default there is no limit.");
+        buffer.addComment();
+        buffer.addComment("@option opts [Integer] :list_size (10) The number of objects of the synthetic lists.");
+        buffer.addComment();
+        buffer.addComment("@option opts [String] :fixtures The directory containing the fixtures. The response of a");
+        buffer.addComment("  `list` method will be the `vms.xml` file, for example, and the response of a `get`");
+        buffer.addComment("  method will be the `vm.xml` file. Missing fixtures are replaced by synthetic responses.");
+        buffer.addComment();
+        buffer.beginBlock("def initialize(opts = {})");
+        buffer.addLine(  "@prefix = opts[:prefix] || '/ovirt-engine/api'");
+        buffer.addLine(  "@latency = opts[:latency] || 0.0");
+        buffer.addLine(  "@jitter = opts[:jitter] || 0.0");
+        buffer.addLine(  "@error_rate = opts[:error_rate] || 0.0");
+        buffer.addLine(  "@max_requests = opts[:max_requests]");
+        buffer.addLine(  "@list_size = opts[:list_size] || 10");
+        buffer.addLine(  "@fixtures = opts[:fixtures]");
+        buffer.addLine(  "@active = 0");
+        buffer.addLine(  "@mutex = Mutex.new");
+        buffer.addLine(  "@documents = {}");
+        buffer.addLine(  "@server = WEBrick::HTTPServer.new(");
+        buffer.addLine(    "BindAddress: opts[:host] || 'localhost',");
+        buffer.addLine(    "Port: opts[:port] || 8080,");
+        buffer.addLine(    "Logger: WEBrick::Log.new($stderr, WEBrick::Log::WARN),");
+        buffer.addLine(    "AccessLog: []");
+        buffer.addLine(  ")");
+        buffer.addLine(  "%w(token token-http-auth).each do |entry|");
+        buffer.addLine(
+            "@server.mount_proc(\"/ovirt-engine/sso/oauth/#{entry}\") { |_, response| token(response) }"
+        );
+        buffer.endBlock();
+        buffer.addLine(
+            "@server.mount_proc('/ovirt-engine/services/sso-logout') { |_, response| response.status = 200 }"
+        );
+        buffer.addLine(  "@server.mount_proc(@prefix) { |request, response| handle(request, response) }");
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Public methods:
+        buffer.addComment();
+        buffer.addComment("Returns the port where the server is listening.");
+        buffer.addComment();
+        buffer.beginBlock("def port");
+        buffer.addLine(  "@server.config[:Port]");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.addComment();
+        buffer.addComment("Starts the server, and waits till it is stopped.");
+        buffer.addComment();
+        buffer.beginBlock("def start");
+        buffer.addLine(  "@server.start");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.addComment();
+        buffer.addComment("Stops the server.");
+        buffer.addComment();
+        buffer.beginBlock("def shutdown");
+        buffer.addLine(  "@server.shutdown");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.addLine("private");
+        buffer.addLine();
+
+        // Request handling:
+        buffer.beginBlock("def handle(request, response)");
+        buffer.addLine(  "return unless admit(response)");
+        buffer.beginBlock(  "begin");
+        buffer.addLine(    "sleep(@latency + rand * @jitter) if @latency > 0 || @jitter > 0");
+        buffer.beginBlock(    "if @error_rate > 0 && rand < @error_rate");
+        buffer.addLine(      "fault(response, 500, 'Simulated error')");
+        buffer.addClause(    "else");
+        buffer.addLine(      "dispatch(request, response)");
+        buffer.endBlock();
+        buffer.addClause(  "ensure");
+        buffer.addLine(    "@mutex.synchronize { @active -= 1 }");
+        buffer.endBlock();
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def admit(response)");
+        buffer.addLine(  "return true if reserve");
+        buffer.addLine(  "response['Retry-After'] = '1'");
+        buffer.addLine(  "fault(response, 503, 'Too many simultaneous requests')");
+        buffer.addLine(  "false");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def reserve");
+        buffer.addLine(  "@mutex.lock");
+        buffer.beginBlock(  "begin");
+        buffer.addLine(    "return false if @max_requests && @active >= @max_requests");
+        buffer.addLine(    "@active += 1");
+        buffer.addLine(    "true");
+        buffer.addClause(  "ensure");
+        buffer.addLine(    "@mutex.unlock");
+        buffer.endBlock();
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def dispatch(request, response)");
+        buffer.addLine(  "node, action = resolve(request.path)");
+        buffer.addLine(
+            "return fault(response, 404, \"Can't find a service for path '#{request.path}'\") if node.nil?"
+        );
+        buffer.addLine(  "method = request.request_method");
+        buffer.addLine(  "unsupported = \"Method '#{method}' isn't supported for path '#{request.path}'\"");
+        buffer.beginBlock(  "unless action.nil?");
+        buffer.addLine(    "return fault(response, 405, unsupported) unless method == 'POST'");
+        buffer.addLine(    "return xml(response, 200, '<action><status>complete</status></action>')");
+        buffer.endBlock();
+        buffer.beginBlock(  "case method");
+        buffer.addClause(  "when 'GET'");
+        buffer.addLine(    "return fault(response, 405, unsupported) unless node.get || node.list");
+        buffer.addLine(    "return list(response, *node.list) if node.list");
+        buffer.addLine(    "object(response, node.get)");
+        buffer.addClause(  "when 'POST'");
+        buffer.addLine(    "return fault(response, 405, unsupported) unless node.add");
+        buffer.addLine(    "xml(response, 201, request.body || '')");
+        buffer.addClause(  "when 'PUT'");
+        buffer.addLine(    "return fault(response, 405, unsupported) unless node.update");
+        buffer.addLine(    "xml(response, 200, request.body || '')");
+        buffer.addClause(  "when 'DELETE'");
+        buffer.addLine(    "return fault(response, 405, unsupported) unless node.remove");
+        buffer.addLine(    "response.status = 200");
+        buffer.addClause(  "else");
+        buffer.addLine(    "fault(response, 405, unsupported)");
+        buffer.endBlock();
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Path resolution, the same way that the services of the SDK locate each other:
+        buffer.beginBlock("def resolve(path)");
+        buffer.addLine(  "return nil unless path.start_with?(@prefix)");
+        buffer.addLine(  "node = SERVICES[ROOT]");
+        buffer.addLine(  "segments = path[@prefix.length..-1].split('/').reject(&:empty?)");
+        buffer.addLine(  "segments.each_with_index do |segment, index|");
+        buffer.addLine(    "last = index == segments.length - 1");
+        buffer.addLine(    "child = node.locators[segment]");
+        buffer.addLine(    "return [node, segment] if child.nil? && last && node.actions.include?(segment)");
+        buffer.addLine(    "child ||= node.parameter");
+        buffer.addLine(    "return nil if child.nil?");
+        buffer.addLine(    "node = SERVICES[child]");
+        buffer.endBlock();
+        buffer.addLine(  "[node, nil]");
+        buffer.endBlock();
+        buffer.addLine();
+
+        // Responses:
+        buffer.beginBlock("def list(response, plural, singular)");
+        buffer.addLine(  "return if fixture(response, plural)");
+        buffer.addLine(  "document = @documents[plural] ||= synthetic_list(plural, singular)");
+        buffer.addLine(  "xml(response, 200, document)");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def synthetic_list(plural, singular)");
+        buffer.addLine(  "items = Array.new(@list_size) do |index|");
+        buffer.addLine(    "\"<#{singular} href=\\\"#{@prefix}/#{plural}/#{index}\\\" id=\\\"#{index}\\\"/>\"");
+        buffer.endBlock();
+        buffer.addLine(  "\"<#{plural}>#{items.join}</#{plural}>\"");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def object(response, singular)");
+        buffer.addLine(  "return if fixture(response, singular)");
+        buffer.addLine(  "xml(response, 200, \"<#{singular} id=\\\"0\\\"/>\")");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def fixture(response, name)");
+        buffer.addLine(  "return false if @fixtures.nil?");
+        buffer.addLine(  "path = File.join(@fixtures, \"#{name}.xml\")");
+        buffer.addLine(  "return false unless File.file?(path)");
+        buffer.addLine(  "response.status = 200");
+        buffer.addLine(  "response.content_type = 'application/xml'");
+        buffer.addLine(  "response.content_length = File.size(path)");
+        buffer.addLine(  "response.body = File.open(path, 'rb')");
+        buffer.addLine(  "true");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def fault(response, status, reason)");
+        buffer.addLine(  "xml(response, status, \"<fault><reason>#{CGI.escapeHTML(reason)}</reason></fault>\")");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def xml(response, status, body)");
+        buffer.addLine(  "response.status = status");
+        buffer.addLine(  "response.content_type = 'application/xml'");
+        buffer.addLine(  "response.body = body");
+        buffer.endBlock();
+        buffer.addLine();
+        buffer.beginBlock("def token(response)");
+        buffer.addLine(  "response.status = 200");
+        buffer.addLine(  "response.content_type = 'application/json'");
+        buffer.addLine(  "response.body = JSON.generate(access_token: 'stub')");
+        buffer.endBlock();
+        buffer.endBlock();
+        buffer.addLine();
+    }
+
+    private void generateMain() {
+        buffer.addComment();
+        buffer.addComment("The command line options: the name, the type, the server option and the description.");
+        buffer.addComment();
+        buffer.addLine("OPTIONS = [");
+        buffer.addLine(  "['--host HOST', String, :host, 'The address to listen on.'],");
+        buffer.addLine(  "['--port PORT', Integer, :port, 'The port to listen on, 8080 by default.'],");
+        buffer.addLine(  "['--prefix PREFIX', String, :prefix, 'The prefix of the paths of the API.'],");
+        buffer.addLine(  "['--latency SECONDS', Float, :latency, 'The latency added to each response.'],");
+        buffer.addLine(  "['--jitter SECONDS', Float, :jitter, 'The maximum random latency added to each response.'],");
+        buffer.addLine(  "['--error-rate RATE', Float, :error_rate, 'The probability of responding with an error.'],");
+        buffer.addLine(  "['--max-requests COUNT', Integer, :max_requests, 'The maximum simultaneous requests.'],");
+        buffer.addLine(  "['--list-size COUNT', Integer, :list_size, 'The number of objects of synthetic lists.'],");
+        buffer.addLine(  "['--fixtures DIR', String, :fixtures, 'The directory containing the fixtures.']");
+        buffer.addLine("].freeze");
+        buffer.addLine();
+        buffer.addComment();
+        buffer.addComment("Parses the command line and runs the server till it is interrupted.");
+        buffer.addComment();
+        buffer.beginBlock("def self.main(args)");
+        buffer.addLine(  "opts = {}");
+        buffer.addLine(  "parser = OptionParser.new do |op|");
+        buffer.addLine(    "op.banner = 'Usage: stub_server.rb [OPTIONS]'");
+        buffer.addLine(    "OPTIONS.each do |option, type, key, doc|");
+        buffer.addLine(      "op.on(option, type, doc) { |value| opts[key] = value }");
+        buffer.endBlock();
+        buffer.endBlock();
+        buffer.addLine(  "parser.parse!(args)");
+        buffer.addLine(  "server = Server.new(opts)");
+        buffer.addLine(  "trap('INT') { server.shutdown }");
+        buffer.addLine(  "trap('TERM') { server.shutdown }");
+        buffer.addLine(  "server.start");
+        buffer.endBlock();
+    }
+
+    private Type getOutputType(Method method) {
+        return method.parameters()
+            .filter(Parameter::isOut)
+            .findFirst()
+            .map(Parameter::getType)
+            .orElse(null);
+    }
+
+    private Method getDeepestBase(Method method) {
+        Method base = method.getBase();
+        if (base == null) {
+            return method;
+        }
+        return getDeepestBase(base);
+    }
+
+    private String getPath(Name name) {
+        return name.words().map(String::toLowerCase).collect(joining());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.enterprise.context.ApplicationScoped;
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+/**
+ * This class contains the number of times that each XML element has been found inside each type, as collected by the
+ * {@code element_profile} method of the {@code MemoryStats} class of the SDK when the readers are generated with the
+ * {@code --instrument} option. The file is a JSON object where the names are the names of the Ruby classes of the
+ * types and the values are objects containing the number of times that each tag has been found:
+ *
+ * <pre>
+ * {
+ *   "Vm": { "name": 120, "status": 120, "link": 95 },
+ *   "Disk": { "name": 40 }
+ * }
+ * </pre>
+ *
+ * The generators use it to put first the code that handles the most frequent elements. When no profile is loaded
+ * all the counts are zero, so the order of the generated code doesn't change.
+ */
+@ApplicationScoped
+public class TagProfile {
+    // The number of times that each tag has been found, indexed by name of type and then by tag:
+    private Map<String, Map<String, Long>> counts = Collections.emptyMap();
+
+    /**
+     * Loads the profile from the given file, replacing the one loaded previously. If the file is {@code null} the
+     * profile is discarded.
+     *
+     * @param file the JSON file containing the profile
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the content of the file doesn't have the expected structure
+     */
+    public void load(File file) throws IOException {
+        if (file == null) {
+            counts = Collections.emptyMap();
+            return;
+        }
+        JsonObject root;
+        try (InputStream in = new FileInputStream(file)) {
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                try (JsonReader json = Json.createReader(reader)) {
+                    root = json.readObject();
+                }
+            }
+        }
+        Map<String, Map<String, Long>> newCounts = new HashMap<>();
+        for (Map.Entry<String, JsonValue> typeEntry : root.entrySet()) {
+            if (!(typeEntry.getValue() instanceof JsonObject)) {
+                throw new IllegalArgumentException(
+                    "The value for type \"" + typeEntry.getKey() + "\" of the tag profile \"" + file + "\" isn't " +
+                    "an object"
+                );
+            }
+            Map<String, Long> typeCounts = new HashMap<>();
+            for (Map.Entry<String, JsonValue> tagEntry : ((JsonObject) typeEntry.getValue()).entrySet()) {
+                if (!(tagEntry.getValue() instanceof JsonNumber)) {
+                    throw new IllegalArgumentException(
+                        "The value for tag \"" + tagEntry.getKey() + "\" of type \"" + typeEntry.getKey() + "\" of " +
+                        "the tag profile \"" + file + "\" isn't a number"
+                    );
+                }
+                typeCounts.put(tagEntry.getKey(), ((JsonNumber) tagEntry.getValue()).longValue());
+            }
+            newCounts.put(typeEntry.getKey(), typeCounts);
+        }
+        counts = newCounts;
+    }
+
+    /**
+     * Returns the number of times that the given tag has been found inside the given type, or zero if it isn't part
+     * of the profile.
+     *
+     * @param type the name of the Ruby class of the type, for example {@code Vm}
+     * @param tag the XML tag, for example {@code name}
+     */
+    public long getCount(String type, String tag) {
+        Map<String, Long> typeCounts = counts.get(type);
+        if (typeCounts == null) {
+            return 0;
+        }
+        Long count = typeCounts.get(tag);
+        return count != null? count: 0;
+    }
+
+    /**
+     * Returns the number of times that the given tag has been found inside any of the given types. This is used for
+     * the code that reads the members inherited from a base type, as the profile counts the elements using the type
+     * of the object that is being read, not the type that declares the member.
+     *
+     * @param types the names of the Ruby classes of the types, for example {@code Vm} and {@code Snapshot}
+     * @param tag the XML tag, for example {@code name}
+     */
+    public long getCount(Collection<String> types, String tag) {
+        long count = 0;
+        for (String type : types) {
+            count += getCount(type, tag);
+        }
+        return count;
+    }
+
+    /**
+     * Returns a copy of the given list sorted so that the items whose tags have been found more times inside any of
+     * the given types are first. The sort is stable, so items with the same count, for example all of them when there
+     * is no profile, keep their original order.
+     *
+     * @param types the names of the Ruby classes of the types, for example {@code Vm} and {@code Snapshot}
+     * @param items the items to sort
+     * @param tag the function that calculates the XML tag corresponding to each item
+     */
+    public <T> List<T> sort(Collection<String> types, List<T> items, Function<T, String> tag) {
+        List<T> sorted = new ArrayList<>(items);
+        if (types.stream().anyMatch(counts::containsKey)) {
+            sorted.sort(Comparator.comparingLong((T item) -> getCount(types, tag.apply(item))).reversed());
+        }
+        return sorted;
+    }
+}
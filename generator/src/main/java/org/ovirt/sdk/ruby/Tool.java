@@ -17,6 +17,29 @@ limitations under the License.
 package org.ovirt.sdk.ruby;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Any;
 import javax.enterprise.inject.Instance;
@@ -40,10 +63,30 @@ public class Tool {
     private static final String MODEL_OPTION = "model";
     private static final String OUT_OPTION = "out";
     private static final String VERSION_OPTION = "version";
+    private static final String INSTRUMENT_OPTION = "instrument";
+    private static final String PROFILE_OPTION = "profile";
+    private static final String BENCHMARKS_OPTION = "benchmarks";
+    private static final String STUB_OPTION = "stub";
+    private static final String CACHE_OPTION = "cache";
+    private static final String WATCH_OPTION = "watch";
+    private static final String INCLUDE_OPTION = "include";
+    private static final String DOCS_OPTION = "docs";
+    private static final String TAG_PROFILE_OPTION = "tag-profile";
+    private static final String MINIFY_OPTION = "minify";
+
+    // The number of milliseconds without changes in the model that the watch mode waits before regenerating the code,
+    // so that saving multiple files at once triggers only one regeneration:
+    private static final long WATCH_QUIET_PERIOD = 500;
 
     // Reference to the objects used to calculate Ruby names:
     @Inject private RubyNames rubyNames;
 
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
+    // Reference to the object that measures the time and memory used:
+    @Inject private GeneratorProfile profile;
+
     // References to the generators:
     @Inject @Any
     private Instance<RubyGenerator> generators;
@@ -51,6 +94,26 @@ public class Tool {
     // Reference to the object used to add built-in types to the model:
     @Inject private BuiltinTypes builtinTypes;
 
+    // Reference to the cache of analyzed models:
+    @Inject private ModelCache modelCache;
+
+    // Reference to the subset of the model that should be generated:
+    @Inject private ModelSubset modelSubset;
+
+    // Reference to the precomputed lists of types, services and members used by the generators:
+    @Inject private ModelIndex modelIndex;
+
+    // Reference to the frequencies of the elements used to sort the generated code:
+    @Inject private TagProfile tagProfile;
+
+    /**
+     * Runs the tool with the components wired by the {@link StaticContainer} instead of by the CDI container. This is
+     * the entry point of the native executable built with the {@code native} profile.
+     */
+    public static void main(String[] args) throws Exception {
+        new StaticContainer().get(Tool.class).run(args);
+    }
+
     public void run(String[] args) throws Exception {
         // Create the command line options:
         Options options = new Options();
@@ -58,7 +121,11 @@ public class Tool {
         // Options for the locations of files and directories:
         options.addOption(Option.builder()
             .longOpt(MODEL_OPTION)
-            .desc("The directory or .jar file containing the source model files.")
+            .desc(
+                "The directory or .jar file containing the source model files. The option can be used multiple " +
+                "times to generate the code for multiple models, and then the \"out\" and \"version\" options " +
+                "need to be used the same number of times, in the same order."
+            )
             .type(File.class)
             .required(true)
             .hasArg(true)
@@ -88,51 +155,419 @@ public class Tool {
             .build()
         );
 
+        // Option to generate readers and writers that report statistics:
+        options.addOption(Option.builder()
+            .longOpt(INSTRUMENT_OPTION)
+            .desc("Generate readers and writers that report the number of objects and skipped elements.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
+        // Option to report the time and memory used:
+        options.addOption(Option.builder()
+            .longOpt(PROFILE_OPTION)
+            .desc(
+                "Report the time and memory used by the different phases of the generation, and the size of the " +
+                "generated files. If a file name is given the report will also be written to that file, in JSON " +
+                "format."
+            )
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .optionalArg(true)
+            .argName("FILE")
+            .build()
+        );
+
+        // Option to generate the benchmarks of the readers and writers:
+        options.addOption(Option.builder()
+            .longOpt(BENCHMARKS_OPTION)
+            .desc("The directory where the benchmarks of the readers and writers will be created.")
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DIRECTORY")
+            .build()
+        );
+
+        // Option to generate the stub server:
+        options.addOption(Option.builder()
+            .longOpt(STUB_OPTION)
+            .desc("The directory where the stub server, used to test the SDK without a real server, will be created.")
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DIRECTORY")
+            .build()
+        );
+
+        // Option to keep the analyzed model in a cache:
+        options.addOption(Option.builder()
+            .longOpt(CACHE_OPTION)
+            .desc(
+                "The directory where the analyzed model will be stored, so that the next time the generator runs " +
+                "with the same model and the same version of the generator the analysis of the model can be skipped."
+            )
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DIRECTORY")
+            .build()
+        );
+
+        // Option to keep running and regenerate the code when the model changes:
+        options.addOption(Option.builder()
+            .longOpt(WATCH_OPTION)
+            .desc(
+                "After generating the code keep running, watching the model, and generate the code again each time " +
+                "that the model changes. Generated files whose content doesn't change are not written again."
+            )
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
+        // Option to generate only some of the services and types:
+        options.addOption(Option.builder()
+            .longOpt(INCLUDE_OPTION)
+            .desc(
+                "Generate only the given services and types, and the services and types that they use. The value " +
+                "is a comma separated list of service paths, like \"vms/vm/nics\", or type names, like " +
+                "\"storage_domain\". The option can be used multiple times."
+            )
+            .required(false)
+            .hasArgs()
+            .valueSeparator(',')
+            .argName("PATH|TYPE")
+            .build()
+        );
+
+        // Option to generate the documentation separately from the code:
+        options.addOption(Option.builder()
+            .longOpt(DOCS_OPTION)
+            .desc(
+                "The directory where the source code including the documentation comments will be created. When " +
+                "this is given the source code created in the output directory doesn't contain comments, so that " +
+                "it is smaller and faster to load, and the documentation should be generated from this directory."
+            )
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DIRECTORY")
+            .build()
+        );
+
+        // Option to sort the generated code according to the frequencies of the elements:
+        options.addOption(Option.builder()
+            .longOpt(TAG_PROFILE_OPTION)
+            .desc(
+                "The JSON file containing the number of times that each element has been found inside each type, " +
+                "as returned by the \"element_profile\" method of the \"MemoryStats\" class when using readers " +
+                "generated with the \"instrument\" option. The readers check the most frequent elements first."
+            )
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("FILE")
+            .build()
+        );
+
+        // Option to generate the source code without comments, empty lines or indentation:
+        options.addOption(Option.builder()
+            .longOpt(MINIFY_OPTION)
+            .desc(
+                "Generate the source code without comments, empty lines or indentation, so that it is smaller and " +
+                "faster to load. When combined with the \"docs\" option the documented source code is still " +
+                "generated complete."
+            )
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
         // Parse the command line:
         CommandLineParser parser = new DefaultParser();
         CommandLine line = null;
         try {
             line = parser.parse(options, args);
+            checkRepeatedOptions(line);
         }
         catch (ParseException exception) {
+            System.err.println(exception.getMessage());
             HelpFormatter formatter = new HelpFormatter();
             formatter.setSyntaxPrefix("Usage: ");
             formatter.printHelp("ruby-tool [OPTIONS]", options);
             System.exit(1);
         }
 
-        // Extract the locations of files and directories from the command line:
-        File modelFile = (File) line.getParsedOptionValue(MODEL_OPTION);
-        File outDir = (File) line.getParsedOptionValue(OUT_OPTION);
+        // Enable profiling before doing anything else, so that the startup time is as accurate as possible:
+        profile.setEnabled(line.hasOption(PROFILE_OPTION));
+        File profileFile = (File) line.getParsedOptionValue(PROFILE_OPTION);
+
+        // Extract the locations of files and directories from the command line. The options can be repeated, and
+        // then the first model is generated to the first output directory, the second to the second, and so on:
+        List<File> modelFiles = getFiles(line, MODEL_OPTION);
+        List<File> outDirs = getFiles(line, OUT_OPTION);
+
+        // Extract the versions of the SDK. The versions will usually come from the root POM of the project, where
+        // they will use upper case for suffixes like "Alpha" or "Beta". In addition they will have the "-SNAPSHOT"
+        // suffix for non release versions. We need to remove the "-SNAPSHOT" suffix, and convert the result to lower
+        // case, as the common practice for Ruby is to use "alpha" or "beta", lower case.
+        List<String> versions = new ArrayList<>();
+        for (String version : line.getOptionValues(VERSION_OPTION)) {
+            versions.add(version.replaceAll("-SNAPSHOT$", "").toLowerCase());
+        }
+
+        // Analyze the model files and add the built-in types, or load the results from the cache if they are there:
+        modelCache.setDir((File) line.getParsedOptionValue(CACHE_OPTION));
+        List<Model> models = analyzeAll(modelFiles);
+
+        // Configure the options that change the generated code:
+        generatorOptions.setInstrument(line.hasOption(INSTRUMENT_OPTION));
+        generatorOptions.setBenchmarksDir((File) line.getParsedOptionValue(BENCHMARKS_OPTION));
+        generatorOptions.setStubDir((File) line.getParsedOptionValue(STUB_OPTION));
+        generatorOptions.setKeepUnchanged(line.hasOption(WATCH_OPTION));
+        generatorOptions.setDocsDir((File) line.getParsedOptionValue(DOCS_OPTION));
+        generatorOptions.setMinify(line.hasOption(MINIFY_OPTION));
+        tagProfile.load((File) line.getParsedOptionValue(TAG_PROFILE_OPTION));
+
+        // Configure the subset of the model that will be generated:
+        String[] includes = line.getOptionValues(INCLUDE_OPTION);
+        modelSubset.setIncludes(includes != null? Arrays.asList(includes): Collections.emptyList());
+
+        // Run the generators for each model. The generators keep the state of the model that they are generating,
+        // so the models are generated one after the other, but reusing the same components:
+        for (int i = 0; i < models.size(); i++) {
+            rubyNames.setVersion(versions.get(i));
+            generate(models.get(i), outDirs.isEmpty()? null: outDirs.get(i));
+        }
+
+        // Write the profiling report:
+        if (profile.isEnabled()) {
+            profile.writeText(System.out);
+            if (profileFile != null) {
+                profile.writeJson(profileFile);
+            }
+        }
+
+        // Keep generating the code each time that the model changes, if requested:
+        if (line.hasOption(WATCH_OPTION)) {
+            watch(modelFiles.get(0), outDirs.isEmpty()? null: outDirs.get(0));
+        }
+    }
 
-        // Extract the version of the:
-        String version = line.getOptionValue(VERSION_OPTION);
+    private void checkRepeatedOptions(CommandLine line) throws ParseException {
+        int count = line.getOptionValues(MODEL_OPTION).length;
+        if (line.getOptionValues(VERSION_OPTION).length != count) {
+            throw new ParseException(
+                "The \"" + VERSION_OPTION + "\" option must be used once for each \"" + MODEL_OPTION + "\" option"
+            );
+        }
+        String[] outs = line.getOptionValues(OUT_OPTION);
+        if (outs != null && outs.length != count) {
+            throw new ParseException(
+                "The \"" + OUT_OPTION + "\" option must be used once for each \"" + MODEL_OPTION + "\" option"
+            );
+        }
 
-        // The version will usually come from the root POM of the project, where it will use upper case for suffixes
-        // like "Alpha" or "Beta". In addition it will have the "-SNAPSHOT" suffix for non release versions. We need
-        // to remove the "-SNAPSHOT" suffix, and convert the result to lower case, as the common practice for Ruby
-        // is to use "alpha" or "beta", lower case.
-        version = version.replaceAll("-SNAPSHOT$", "").toLowerCase();
+        // The rest of the options that generate files or watch the model can only be used with one model, as
+        // otherwise the files generated for one model would be replaced by the files generated for the next one:
+        if (count > 1) {
+            for (String name : Arrays.asList(BENCHMARKS_OPTION, STUB_OPTION, DOCS_OPTION, WATCH_OPTION)) {
+                if (line.hasOption(name)) {
+                    throw new ParseException(
+                        "The \"" + name + "\" option can't be used with multiple \"" + MODEL_OPTION + "\" options"
+                    );
+                }
+            }
+        }
+    }
 
-        // Analyze the model files:
+    private static List<File> getFiles(CommandLine line, String name) {
+        List<File> files = new ArrayList<>();
+        String[] values = line.getOptionValues(name);
+        if (values != null) {
+            for (String value : values) {
+                files.add(new File(value));
+            }
+        }
+        return files;
+    }
+
+    private List<Model> analyzeAll(List<File> modelFiles) throws Exception {
+        // Each model is analyzed, or loaded from the cache, in a different thread, and the results are collected in
+        // the same order that the model files were given:
+        int threads = Math.min(modelFiles.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Model>> futures = new ArrayList<>();
+            for (File modelFile : modelFiles) {
+                futures.add(executor.submit(() -> modelCache.get(modelFile, () -> analyze(modelFile))));
+            }
+            List<Model> models = new ArrayList<>();
+            for (Future<Model> future : futures) {
+                try {
+                    models.add(future.get());
+                }
+                catch (ExecutionException exception) {
+                    Throwable cause = exception.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw exception;
+                }
+            }
+            return models;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private Model analyze(File modelFile) throws Exception {
         Model model = new Model();
         ModelAnalyzer modelAnalyzer = new ModelAnalyzer();
         modelAnalyzer.setModel(model);
-        modelAnalyzer.analyzeSource(modelFile);
-
-        // Add the built-in types:
-        builtinTypes.addBuiltinTypes(model);
-
-        // Configure the object used to generate names:
-        rubyNames.setVersion(version);
+        profile.measure("model analysis", () -> modelAnalyzer.analyzeSource(modelFile));
+        profile.measure("built-in types", () -> builtinTypes.addBuiltinTypes(model));
+        return model;
+    }
 
-        // Run the generators:
+    private void generate(Model model, File outDir) throws Exception {
         if (outDir != null) {
+            modelSubset.compute(model);
+            profile.measure("model index", () -> modelIndex.compute(model));
             FileUtils.forceMkdir(outDir);
             for (RubyGenerator generator : generators) {
                 generator.setOut(outDir);
-                generator.generate(model);
+                profile.measure(generator.getClass().getSimpleName(), () -> generator.generate(model));
+            }
+        }
+    }
+
+    private void watch(File modelFile, File outDir) throws Exception {
+        // The model can be a directory or a .jar file. For a directory all its subdirectories are watched, and for
+        // a .jar file the directory that contains it:
+        Path modelPath = modelFile.getAbsoluteFile().toPath();
+        boolean directory = Files.isDirectory(modelPath);
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            if (directory) {
+                registerTree(watcher, modelPath);
+            }
+            else {
+                register(watcher, modelPath.getParent());
+            }
+            System.out.println("Watching \"" + modelPath + "\" for changes.");
+            String digest = modelCache.digest(modelFile);
+            for (;;) {
+                // Wait for changes that affect the model, and then wait till there are no more changes for a while:
+                WatchKey key = watcher.take();
+                boolean changed = processEvents(watcher, key, modelPath, directory);
+                while ((key = watcher.poll(WATCH_QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= processEvents(watcher, key, modelPath, directory);
+                }
+                if (!changed) {
+                    continue;
+                }
+
+                // Files may be saved without changing their content, so check the digest before doing any work:
+                String newDigest = modelCache.digest(modelFile);
+                if (newDigest.equals(digest)) {
+                    continue;
+                }
+                digest = newDigest;
+
+                // Analyze the model and generate the code again. Errors, like syntax errors in the model sources,
+                // are reported but don't stop the watch:
+                try {
+                    regenerate(modelFile, outDir);
+                }
+                catch (Exception exception) {
+                    System.out.println("Can't regenerate the code: " + exception);
+                }
+            }
+        }
+    }
+
+    private void regenerate(File modelFile, File outDir) throws Exception {
+        List<File> dirs = new ArrayList<>();
+        dirs.add(outDir);
+        dirs.add(generatorOptions.getBenchmarksDir());
+        dirs.add(generatorOptions.getStubDir());
+        Map<File, Long> before = snapshot(dirs);
+        long start = System.nanoTime();
+        Model model = analyze(modelFile);
+        long analyzed = System.nanoTime();
+        generate(model, outDir);
+        long generated = System.nanoTime();
+        Map<File, Long> after = snapshot(dirs);
+        long changed = after.entrySet().stream()
+            .filter(entry -> !Objects.equals(before.get(entry.getKey()), entry.getValue()))
+            .count();
+        System.out.printf(
+            "Regenerated in %d ms (analysis %d ms, generation %d ms), %d of %d files changed.%n",
+            (generated - start) / 1000000,
+            (analyzed - start) / 1000000,
+            (generated - analyzed) / 1000000,
+            changed,
+            after.size()
+        );
+    }
+
+    private boolean processEvents(WatchService watcher, WatchKey key, Path modelPath, boolean directory)
+            throws IOException {
+        boolean changed = false;
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (directory) {
+                // New subdirectories of the model need to be watched as well:
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    registerTree(watcher, path);
+                }
+                changed = true;
+            }
+            else if (path.equals(modelPath)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private static void registerTree(WatchService watcher, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(watcher, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void register(WatchService watcher, Path dir) throws IOException {
+        dir.register(
+            watcher,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE
+        );
+    }
+
+    private static Map<File, Long> snapshot(List<File> dirs) {
+        Map<File, Long> result = new HashMap<>();
+        for (File dir : dirs) {
+            if (dir != null && dir.isDirectory()) {
+                for (File file : FileUtils.listFiles(dir, null, true)) {
+                    result.put(file, file.lastModified());
+                }
             }
         }
+        return result;
     }
 }
@@ -16,17 +16,14 @@ limitations under the License.
 
 package org.ovirt.sdk.ruby;
 
-import static java.util.stream.Collectors.toCollection;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.List;
-import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.EnumType;
 import org.ovirt.api.metamodel.concepts.EnumValue;
@@ -51,9 +48,18 @@ public class TypesGenerator implements RubyGenerator {
     @Inject private RubyNames rubyNames;
     @Inject private YardDoc yardDoc;
 
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
     // The buffer used to generate the Ruby code:
     private RubyBuffer buffer;
 
+    // Reference to the precomputed lists of types, services and members:
+    @Inject private ModelIndex modelIndex;
+
+    // Reference to the object that creates the buffers:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
     public void setOut(File newOut) {
         out = newOut;
     }
@@ -61,7 +67,7 @@ public class TypesGenerator implements RubyGenerator {
     public void generate(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/types";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Begin module:
@@ -78,7 +84,7 @@ public class TypesGenerator implements RubyGenerator {
 
         // Write the file:
         try {
-            buffer.write(out);
+            buffer.write(out, generatorOptions.getDocsDir());
         }
         catch (IOException exception) {
             throw new IllegalStateException("Error writing types file \"" + fileName + "\"", exception);
@@ -92,29 +98,13 @@ public class TypesGenerator implements RubyGenerator {
         buffer.addComment();
 
         // The declarations of the types need to appear in inheritance order, otherwise some symbols won't be
-        // defined and that will produce errors. To order them correctly we need first to sort them by name, and
-        // then sort again so that bases are before extensions.
-        Deque<StructType> pending = model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .collect(toCollection(ArrayDeque::new));
-        Deque<StructType> sorted = new ArrayDeque<>(pending.size());
-        while (!pending.isEmpty()) {
-            StructType current = pending.removeFirst();
-            StructType base = (StructType) current.getBase();
-            if (base == null || sorted.contains(base)) {
-                sorted.addLast(current);
-            }
-            else {
-                pending.addLast(current);
-            }
-        }
+        // defined and that will produce errors:
+        List<StructType> sorted = modelIndex.getStructTypesInInheritanceOrder();
 
         // Generate the forward declarations using the order calculated in the previous step:
         sorted.forEach(x -> {
             generateClassDeclaration(x);
-            buffer.addLine("end");
+            buffer.endBlock();
             buffer.addLine();
         });
 
@@ -128,10 +118,7 @@ public class TypesGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Get the list of members, including those declared in the base types:
-        List<StructMember> allMembers = new ArrayList<>();
-        allMembers.addAll(type.getAttributes());
-        allMembers.addAll(type.getLinks());
-        Collections.sort(allMembers);
+        List<StructMember> allMembers = modelIndex.getMembers(type);
 
         // Get the list of members declared directly in this type:
         List<StructMember> declaredMembers = new ArrayList<>();
@@ -175,13 +162,13 @@ public class TypesGenerator implements RubyGenerator {
             }
         });
         buffer.addComment();
-        buffer.addLine("def initialize(opts = {})");
+        buffer.beginBlock("def initialize(opts = {})");
         buffer.addLine(  "super(opts)");
         declaredMembers.forEach(member -> {
             String memberName = rubyNames.getMemberStyleName(member.getName());
             buffer.addLine("self.%1$s = opts[:%1$s]", memberName);
         });
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
 
         // Operator to compare two objects:
@@ -189,7 +176,7 @@ public class TypesGenerator implements RubyGenerator {
             buffer.addComment();
             buffer.addComment("Returns `true` if `self` and `other` have the same attributes and values.");
             buffer.addComment();
-            buffer.addLine("def ==(other)");
+            buffer.beginBlock("def ==(other)");
             buffer.addLine(  "super &&");
             for (int i = 0; i < declaredMembers.size(); i++) {
                 String memberName = rubyNames.getMemberStyleName(declaredMembers.get(i).getName());
@@ -199,7 +186,7 @@ public class TypesGenerator implements RubyGenerator {
                 }
                 buffer.addLine(line);
             }
-            buffer.addLine("end");
+            buffer.endBlock();
             buffer.addLine();
         }
 
@@ -208,7 +195,7 @@ public class TypesGenerator implements RubyGenerator {
             buffer.addComment();
             buffer.addComment("Generates a hash value for this object.");
             buffer.addComment();
-            buffer.addLine("def hash");
+            buffer.beginBlock("def hash");
             buffer.addLine(  "super +");
             for (int i = 0; i < declaredMembers.size(); i++) {
                 String memberName = rubyNames.getMemberStyleName(declaredMembers.get(i).getName());
@@ -218,12 +205,12 @@ public class TypesGenerator implements RubyGenerator {
                 }
                 buffer.addLine(line);
             }
-            buffer.addLine("end");
+            buffer.endBlock();
             buffer.addLine();
         }
 
         // End class:
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -241,9 +228,9 @@ public class TypesGenerator implements RubyGenerator {
         buffer.addComment();
         buffer.addYardTag("return", "[%1$s]", yardDoc.getType(type));
         buffer.addComment();
-        buffer.addLine("def %1$s", property);
+        buffer.beginBlock("def %1$s", property);
         buffer.addLine(  "@%1$s", property);
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
@@ -257,9 +244,9 @@ public class TypesGenerator implements RubyGenerator {
         if (type instanceof PrimitiveType || type instanceof EnumType) {
             buffer.addYardTag("param", "value [%1$s]", yardDoc.getType(type));
             buffer.addComment();
-            buffer.addLine("def %1$s=(value)", property);
+            buffer.beginBlock("def %1$s=(value)", property);
             buffer.addLine(  "@%1$s = value", property);
-            buffer.addLine("end");
+            buffer.endBlock();
         }
         else if (type instanceof StructType) {
             RubyName typeName = rubyNames.getTypeName(type);
@@ -269,12 +256,12 @@ public class TypesGenerator implements RubyGenerator {
             buffer.addComment("If it is a hash then a new instance will be created passing the hash as the ");
             buffer.addComment("`opts` parameter to the constructor.");
             buffer.addComment();
-            buffer.addLine("def %1$s=(value)", property);
-            buffer.addLine(  "if value.is_a?(Hash)");
+            buffer.beginBlock("def %1$s=(value)", property);
+            buffer.beginBlock(  "if value.is_a?(Hash)");
             buffer.addLine(    "value = %1$s.new(value)", typeName.getClassName());
-            buffer.addLine(  "end");
+            buffer.endBlock();
             buffer.addLine(  "@%1$s = value", property);
-            buffer.addLine("end");
+            buffer.endBlock();
         }
         else if (type instanceof ListType) {
             buffer.addYardTag("param", "list [%1$s]", yardDoc.getType(type));
@@ -282,34 +269,30 @@ public class TypesGenerator implements RubyGenerator {
             ListType listType = (ListType) type;
             Type elementType = listType.getElementType();
             if (elementType instanceof PrimitiveType || elementType instanceof EnumType) {
-                buffer.addLine("def %1$s=(list)", property);
+                buffer.beginBlock("def %1$s=(list)", property);
                 buffer.addLine(  "@%1$s = list", property);
-                buffer.addLine("end");
+                buffer.endBlock();
             }
             else if (elementType instanceof StructType) {
                 RubyName elementTypeName = rubyNames.getTypeName(elementType);
-                buffer.addLine("def %1$s=(list)", property);
-                buffer.addLine(  "if list.class == Array");
+                buffer.beginBlock("def %1$s=(list)", property);
+                buffer.beginBlock(  "if list.class == Array");
                 buffer.addLine(    "list = List.new(list)");
                 buffer.addLine(    "list.each_with_index do |value, index|");
-                buffer.addLine(      "if value.is_a?(Hash)");
+                buffer.beginBlock(      "if value.is_a?(Hash)");
                 buffer.addLine(        "list[index] = %1$s.new(value)", elementTypeName.getClassName());
-                buffer.addLine(      "end");
-                buffer.addLine(    "end");
-                buffer.addLine(  "end");
+                buffer.endBlock();
+                buffer.endBlock();
+                buffer.endBlock();
                 buffer.addLine(  "@%1$s = list", property);
-                buffer.addLine("end");
+                buffer.endBlock();
             }
         }
         buffer.addLine();
     }
 
     private void generateEnums(Model model) {
-        model.types()
-            .filter(EnumType.class::isInstance)
-            .map(EnumType.class::cast)
-            .sorted()
-            .forEach(this::generateEnum);
+        modelIndex.getEnumTypes().forEach(this::generateEnum);
     }
 
     private void generateEnum(EnumType type) {
@@ -336,7 +319,7 @@ public class TypesGenerator implements RubyGenerator {
         RubyName typeName = rubyNames.getTypeName(type);
         Type base = type.getBase();
         RubyName baseName = base != null? rubyNames.getTypeName(base): rubyNames.getBaseStructName();
-        buffer.addLine("class %1$s < %2$s", typeName.getClassName(), baseName.getClassName());
+        buffer.beginBlock("class %1$s < %2$s", typeName.getClassName(), baseName.getClassName());
     }
 }
 
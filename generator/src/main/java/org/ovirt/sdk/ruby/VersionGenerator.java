@@ -18,8 +18,8 @@ package org.ovirt.sdk.ruby;
 
 import java.io.File;
 import java.io.IOException;
-import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.Model;
 
@@ -33,20 +33,26 @@ public class VersionGenerator implements RubyGenerator {
     // Reference to the objects used to generate the code:
     @Inject private RubyNames rubyNames;
 
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
     // The buffer used to generate the Ruby code:
     private RubyBuffer buffer;
 
+    // Reference to the object that creates the buffers:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
     public void setOut(File newOut) {
         out = newOut;
     }
 
     public void generate(Model model) throws IOException {
         // Generate the source:
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(rubyNames.getModulePath() + File.separator + "version");
         generateVersion();
         try {
-            buffer.write(out);
+            buffer.write(out, generatorOptions.getDocsDir());
         }
         catch (IOException exception) {
             throw new IllegalStateException("Error writing version file", exception);
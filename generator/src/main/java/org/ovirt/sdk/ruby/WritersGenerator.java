@@ -16,10 +16,19 @@ limitations under the License.
 
 package org.ovirt.sdk.ruby;
 
+import static java.util.Collections.singletonList;
+
 import java.io.File;
 import java.io.IOException;
-import javax.enterprise.inject.spi.CDI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.EnumType;
 import org.ovirt.api.metamodel.concepts.ListType;
@@ -45,9 +54,26 @@ public class WritersGenerator implements RubyGenerator {
     @Inject private SchemaNames schemaNames;
     @Inject private RubyNames rubyNames;
 
+    // Reference to the options that change the generated code:
+    @Inject private GeneratorOptions generatorOptions;
+
     // The buffer used to generate the Ruby code:
     private RubyBuffer buffer;
 
+    // Reference to the precomputed lists of types, services and members:
+    @Inject private ModelIndex modelIndex;
+
+    // Reference to the object that creates the buffers:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
+    // The members written by each type, split in the groups that are written inline, containing one member, and the
+    // runs of inherited members that are written by a method of the writer of the base type:
+    private Map<StructType, List<List<StructMember>>> groups;
+
+    // The runs of members that the writer of each base type writes on behalf of the writers of the derived types, and
+    // the number of derived types that use each of them:
+    private Map<StructType, Map<List<StructMember>, Integer>> runs;
+
     public void setOut(File newOut) {
         out = newOut;
     }
@@ -55,7 +81,7 @@ public class WritersGenerator implements RubyGenerator {
     public void generate(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/writers";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Generate the source:
@@ -63,7 +89,7 @@ public class WritersGenerator implements RubyGenerator {
 
         // Write the file:
         try {
-            buffer.write(out);
+            buffer.write(out, generatorOptions.getDocsDir());
         }
         catch (IOException exception) {
             throw new IllegalStateException("Error writing writers file \"" + fileName + "\"", exception);
@@ -76,23 +102,22 @@ public class WritersGenerator implements RubyGenerator {
         buffer.beginModule(moduleName);
         buffer.addLine();
 
+        // Split the members of the types, so that the writers of the derived types know which ones are written by the
+        // writers of the base types:
+        groups = new HashMap<>();
+        runs = new HashMap<>();
+        modelIndex.getStructTypes().forEach(this::splitMembers);
+        modelIndex.getStructTypes().forEach(this::inlineRuns);
+
         // Generate a writer for each struct type:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(this::generateWriter);
+        modelIndex.getStructTypes().forEach(this::generateWriter);
 
         // Generate code to register the writers:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(type -> {
-                String typeName = rubyNames.getTypeName(type).getClassName();
-                String writerName = rubyNames.getWriterName(type).getClassName();
-                buffer.addLine("Writer.register(%1$s, %2$s.method(:write_one))", typeName, writerName);
-            });
+        modelIndex.getStructTypes().forEach(type -> {
+            String typeName = rubyNames.getTypeName(type).getClassName();
+            String writerName = rubyNames.getWriterName(type).getClassName();
+            buffer.addLine("Writer.register(%1$s, %2$s.method(:write_one))", typeName, writerName);
+        });
 
         // End module:
         buffer.endModule(moduleName);
@@ -102,74 +127,191 @@ public class WritersGenerator implements RubyGenerator {
         // Begin class:
         RubyName writerName = rubyNames.getWriterName(type);
         RubyName baseName = rubyNames.getBaseWriterName();
-        buffer.addLine("class %1$s < %2$s", writerName.getClassName(), baseName.getClassName());
+        buffer.beginBlock("class %1$s < %2$s", writerName.getClassName(), baseName.getClassName());
         buffer.addLine();
 
         // Get the tags:
-        Name singularName = type.getName();
-        Name pluralName = names.getPlural(singularName);
-        String singularTag = schemaNames.getSchemaTagName(singularName);
-        String pluralTag = schemaNames.getSchemaTagName(pluralName);
+        Name typeName = type.getName();
+        String singularTag = modelIndex.getTag(typeName);
+        String pluralTag = modelIndex.getPluralTag(typeName);
 
         // Generate the method that writes one object:
-        buffer.addLine("def self.write_one(object, writer, singular = nil)");
+        buffer.beginBlock("def self.write_one(object, writer, singular = nil)");
+        if (generatorOptions.isInstrument()) {
+            buffer.addLine("Writer.stats.count_object(%1$s)", rubyNames.getTypeName(type).getClassName());
+        }
         buffer.addLine(  "singular ||= '%1$s'", singularTag);
         buffer.addLine(  "writer.write_start(singular)");
         buffer.addLine(  "href = object.href");
         buffer.addLine(  "writer.write_attribute('href', href) unless href.nil?");
-        generateMembersWrite(type);
+        generateGroupsWrite(type);
         buffer.addLine(  "writer.write_end");
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
 
         // Generate the method that writes one object:
-        buffer.addLine("def self.write_many(list, writer, singular = nil, plural = nil)");
+        buffer.beginBlock("def self.write_many(list, writer, singular = nil, plural = nil)");
         buffer.addLine(  "singular ||= '%1$s'", singularTag);
         buffer.addLine(  "plural ||= '%1$s'", pluralTag);
         buffer.addLine(  "writer.write_start(plural)");
-        buffer.addLine(  "if list.is_a?(%1$s)", rubyNames.getBaseListName().getClassName());
+        buffer.beginBlock(  "if list.is_a?(%1$s)", rubyNames.getBaseListName().getClassName());
         buffer.addLine(    "href = list.href");
         buffer.addLine(    "writer.write_attribute('href', href) unless href.nil?");
-        buffer.addLine(  "end");
+        buffer.endBlock();
         buffer.addLine(  "list.each do |item|");
         buffer.addLine(    "write_one(item, writer, singular)");
-        buffer.addLine(  "end");
+        buffer.endBlock();
         buffer.addLine(  "writer.write_end");
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
 
+        // Generate the methods that write the runs of members used by the writers of the derived types:
+        generateRunsWrite(type);
+
         // End class:
-        buffer.addLine("end");
+        buffer.endBlock();
         buffer.addLine();
     }
 
-    private void generateMembersWrite(StructType type) {
-        // Generate the code that writes the members that are represented as XML attributes:
-        type.attributes()
+    /**
+     * Returns the members of the given type, including the inherited ones, in the order that they are written: first
+     * the ones represented as XML attributes and then the ones represented as inner elements, the attributes before
+     * the links, and sorted by name.
+     */
+    private List<StructMember> getWrittenMembers(StructType type) {
+        List<StructMember> result = new ArrayList<>();
+        modelIndex.getAttributes(type).stream()
             .filter(x -> schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsAttribute);
-        type.links()
+            .forEach(result::add);
+        modelIndex.getLinks(type).stream()
             .filter(x -> schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsAttribute);
-
-        // Generate the code that writes the members that are represented as inner elements:
-        type.attributes()
+            .forEach(result::add);
+        modelIndex.getAttributes(type).stream()
             .filter(x -> !schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsElement);
-        type.links()
+            .forEach(result::add);
+        modelIndex.getLinks(type).stream()
             .filter(x -> !schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsElement);
+            .forEach(result::add);
+        return result;
+    }
+
+    private void splitMembers(StructType type) {
+        // The members are written sorted by name, so the inherited and declared ones are mixed. The runs of consecutive
+        // inherited members are written by the writer of the base type, as they are also consecutive in the list of
+        // members of the base type:
+        Type base = type.getBase();
+        boolean delegate = base instanceof StructType && modelIndex.getStructTypes().contains(base);
+        Set<StructMember> declared = new HashSet<>();
+        declared.addAll(modelIndex.getDeclaredAttributes(type));
+        declared.addAll(modelIndex.getDeclaredLinks(type));
+        List<List<StructMember>> typeGroups = new ArrayList<>();
+        List<StructMember> run = new ArrayList<>();
+        for (StructMember member : getWrittenMembers(type)) {
+            if (delegate && !declared.contains(member)) {
+                run.add(member);
+            }
+            else {
+                addRun(base, run, typeGroups);
+                run = new ArrayList<>();
+                typeGroups.add(singletonList(member));
+            }
+        }
+        addRun(base, run, typeGroups);
+        groups.put(type, typeGroups);
+    }
+
+    private void addRun(Type base, List<StructMember> run, List<List<StructMember>> typeGroups) {
+        if (run.size() > 1) {
+            runs.computeIfAbsent((StructType) base, x -> new HashMap<>()).merge(run, 1, Integer::sum);
+            typeGroups.add(run);
+        }
+        else {
+            run.forEach(member -> typeGroups.add(singletonList(member)));
+        }
+    }
+
+    private void inlineRuns(StructType type) {
+        // A run is only worth a method of the base writer if it is used by enough derived types: each use replaces
+        // one line per member with one call, but the method adds its own lines, the members, the header, the end and
+        // an empty line. The other runs are written inline:
+        List<List<StructMember>> typeGroups = new ArrayList<>();
+        for (List<StructMember> group : groups.get(type)) {
+            if (group.size() > 1 && !isWorthMethod(group, runs.get(type.getBase()).get(group))) {
+                group.forEach(member -> typeGroups.add(singletonList(member)));
+            }
+            else {
+                typeGroups.add(group);
+            }
+        }
+        groups.put(type, typeGroups);
+    }
+
+    private boolean isWorthMethod(List<StructMember> run, int uses) {
+        return uses * (run.size() - 1) > run.size() + 3;
+    }
+
+    private void generateGroupsWrite(StructType type) {
+        Type base = type.getBase();
+        for (List<StructMember> group : groups.get(type)) {
+            if (group.size() == 1) {
+                generateMemberWrite(group.get(0));
+            }
+            else {
+                buffer.addLine(
+                    "%1$s.%2$s(object, writer)",
+                    rubyNames.getWriterName(base).getClassName(),
+                    getRunMethodName(group)
+                );
+            }
+        }
+    }
+
+    private void generateRunsWrite(StructType type) {
+        Map<List<StructMember>, Integer> typeRuns = runs.get(type);
+        if (typeRuns == null) {
+            return;
+        }
+        List<StructMember> members = getWrittenMembers(type);
+        List<List<StructMember>> sorted = new ArrayList<>();
+        typeRuns.forEach((run, uses) -> {
+            if (isWorthMethod(run, uses)) {
+                sorted.add(run);
+            }
+        });
+        sorted.sort(
+            Comparator.<List<StructMember>>comparingInt(run -> members.indexOf(run.get(0)))
+                .thenComparingInt(List::size)
+        );
+        for (List<StructMember> run : sorted) {
+            buffer.beginBlock("def self.%1$s(object, writer)", getRunMethodName(run));
+            run.forEach(this::generateMemberWrite);
+            buffer.endBlock();
+            buffer.addLine();
+        }
+    }
+
+    private String getRunMethodName(List<StructMember> run) {
+        return String.format(
+            "write_%1$s_to_%2$s",
+            rubyNames.getMemberStyleName(run.get(0).getName()),
+            rubyNames.getMemberStyleName(run.get(run.size() - 1).getName())
+        );
+    }
+
+    private void generateMemberWrite(StructMember member) {
+        if (schemaNames.isRepresentedAsAttribute(member.getName())) {
+            generateMemberWriteAsAttribute(member);
+        }
+        else {
+            generateMemberWriteAsElement(member);
+        }
     }
 
     private void generateMemberWriteAsAttribute(StructMember member) {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String attribute = schemaNames.getSchemaTagName(name);
+        String attribute = modelIndex.getTag(name);
         if (type instanceof PrimitiveType) {
             generateWritePrimitivePropertyAsAttribute((PrimitiveType) type, attribute, "object." + property);
         }
@@ -199,7 +341,7 @@ public class WritersGenerator implements RubyGenerator {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String tag = schemaNames.getSchemaTagName(name);
+        String tag = modelIndex.getTag(name);
         if (type instanceof PrimitiveType) {
             generateWritePrimitivePropertyAsElement((PrimitiveType) type, tag, "object." + property);
         }
@@ -241,7 +383,7 @@ public class WritersGenerator implements RubyGenerator {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String tag = schemaNames.getSchemaTagName(name);
+        String tag = modelIndex.getTag(name);
         RubyName writerName = rubyNames.getWriterName(type);
         buffer.addLine(
             "%1$s.write_one(object.%2$s, writer, '%3$s') unless object.%2$s.nil?",
@@ -257,10 +399,10 @@ public class WritersGenerator implements RubyGenerator {
         ListType listType = (ListType) type;
         Type elementType = listType.getElementType();
         String property = rubyNames.getMemberStyleName(name);
-        String listTag = schemaNames.getSchemaTagName(name);
+        String listTag = modelIndex.getTag(name);
         if (elementType instanceof PrimitiveType || elementType instanceof EnumType) {
             String elementTag = schemaNames.getSchemaTagName(names.getSingular(name));
-            buffer.addLine("unless object.%1$s.nil?", property);
+            buffer.beginBlock("unless object.%1$s.nil?", property);
             buffer.addLine(  "writer.write_start('%1$s')", listTag);
             buffer.addLine(  "object.%1$s.each do |item|", property);
             if (elementType instanceof PrimitiveType) {
@@ -269,12 +411,12 @@ public class WritersGenerator implements RubyGenerator {
             else if (elementType instanceof EnumType) {
                 generateWriteEnumPropertyAsElement((EnumType) elementType, elementTag, "item");
             }
-            buffer.addLine(  "end");
+            buffer.endBlock();
             buffer.addLine(  "writer.write_end");
-            buffer.addLine("end");
+            buffer.endBlock();
         }
         else if (elementType instanceof StructType) {
-            String elementTag = schemaNames.getSchemaTagName(elementType.getName());
+            String elementTag = modelIndex.getTag(elementType.getName());
             RubyName elementWriterName = rubyNames.getWriterName(elementType);
             buffer.addLine(
                 "%1$s.write_many(object.%2$s, writer, '%3$s', '%4$s') unless object.%2$s.nil?",
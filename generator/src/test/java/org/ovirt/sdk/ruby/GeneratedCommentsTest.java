@@ -0,0 +1,130 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ovirt.api.metamodel.analyzer.ModelAnalyzer;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+
+/**
+ * Tests of the comments of the generated code, using the small model in the {@code src/test/model} directory.
+ */
+public class GeneratedCommentsTest {
+    // The number of lines of the license header, which is always preserved:
+    private static final int LICENSE_LINES = 15;
+
+    // The files generated from the model:
+    private static final List<String> FILES = Arrays.asList(
+        "ovirtsdk4/readers.rb",
+        "ovirtsdk4/writers.rb"
+    );
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private StaticContainer container;
+    private Model model;
+
+    @Before
+    public void analyzeModel() throws Exception {
+        container = new StaticContainer();
+        model = new Model();
+        ModelAnalyzer analyzer = new ModelAnalyzer();
+        analyzer.setModel(model);
+        analyzer.analyzeSource(new File("src/test/model"));
+        container.get(BuiltinTypes.class).addBuiltinTypes(model);
+        container.get(RubyNames.class).setVersion("4.3.0");
+        container.get(ModelSubset.class).compute(model);
+        container.get(ModelIndex.class).compute(model);
+    }
+
+    /**
+     * Checks that the pretty printed code contains the comments added by the generators, including the ones added
+     * as lines of code.
+     */
+    @Test
+    public void testPrettyCodeContainsComments() throws Exception {
+        File out = generate();
+        String readers = FileUtils.readFileToString(new File(out, "ovirtsdk4/readers.rb"), StandardCharsets.UTF_8);
+        assertTrue(readers.contains("\n      # Process the attributes:\n"));
+    }
+
+    /**
+     * Checks that the minified code doesn't contain any comment other than the license header.
+     */
+    @Test
+    public void testMinifiedCodeContainsOnlyLicense() throws Exception {
+        container.get(GeneratorOptions.class).setMinify(true);
+        File out = generate();
+        for (String file : FILES) {
+            assertEquals(file, LICENSE_LINES, countComments(new File(out, file)));
+        }
+    }
+
+    /**
+     * Checks that when the documentation is generated separately the runtime code doesn't contain any comment other
+     * than the license header, and that the documented code is the same that is generated without that option.
+     */
+    @Test
+    public void testSeparateDocsContainAllComments() throws Exception {
+        File expected = generate();
+        File docs = tmp.newFolder("docs");
+        container.get(GeneratorOptions.class).setDocsDir(docs);
+        File out = generate();
+        for (String file : FILES) {
+            assertEquals(file, LICENSE_LINES, countComments(new File(out, file)));
+            assertEquals(
+                file,
+                FileUtils.readFileToString(new File(expected, file), StandardCharsets.UTF_8),
+                FileUtils.readFileToString(new File(docs, file), StandardCharsets.UTF_8)
+            );
+        }
+    }
+
+    private File generate() throws Exception {
+        File out = tmp.newFolder();
+        for (Class<? extends RubyGenerator> type : Arrays.asList(ReadersGenerator.class, WritersGenerator.class)) {
+            RubyGenerator generator = container.get(type);
+            generator.setOut(out);
+            generator.generate(model);
+        }
+        return out;
+    }
+
+    private int countComments(File file) throws Exception {
+        int count = 0;
+        for (String line : FileUtils.readLines(file, StandardCharsets.UTF_8)) {
+            if (line.trim().startsWith("#")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
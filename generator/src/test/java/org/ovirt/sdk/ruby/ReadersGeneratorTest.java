@@ -0,0 +1,101 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ovirt.api.metamodel.analyzer.ModelAnalyzer;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+
+/**
+ * Tests of the generator of the readers, using the small model in the {@code src/test/model} directory, where the
+ * {@code Snapshot} type extends {@code Vm}, which extends {@code Identified}.
+ */
+public class ReadersGeneratorTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private StaticContainer container;
+    private Model model;
+
+    @Before
+    public void analyzeModel() throws Exception {
+        container = new StaticContainer();
+        model = new Model();
+        ModelAnalyzer analyzer = new ModelAnalyzer();
+        analyzer.setModel(model);
+        analyzer.analyzeSource(new File("src/test/model"));
+        container.get(BuiltinTypes.class).addBuiltinTypes(model);
+        container.get(RubyNames.class).setVersion("4.3.0");
+        container.get(ModelSubset.class).compute(model);
+        container.get(ModelIndex.class).compute(model);
+    }
+
+    /**
+     * Checks that the branches of the method that reads the members inherited from a base type are sorted using the
+     * counts of the types that extend it, as the profiles only contain the types of the objects that were read.
+     */
+    @Test
+    public void testInheritedBranchesSortedByCountsOfExtensions() throws Exception {
+        File profile = tmp.newFile("profile.json");
+        FileUtils.write(profile, "{ \"Snapshot\": { \"name\": 10, \"id\": 5 } }", StandardCharsets.UTF_8);
+        container.get(TagProfile.class).load(profile);
+
+        String code = generate();
+        String reader = code.substring(code.indexOf("class IdentifiedReader"), code.indexOf("class SnapshotReader"));
+        String inner = reader.substring(reader.indexOf("def self.read_inner_element"));
+        int name = inner.indexOf("when 'name'");
+        int id = inner.indexOf("when 'id'");
+        int description = inner.indexOf("when 'description'");
+        assertTrue(name >= 0 && id >= 0 && description >= 0);
+        assertTrue(name < id);
+        assertTrue(id < description);
+    }
+
+    /**
+     * Checks that without a profile the branches are sorted by name.
+     */
+    @Test
+    public void testInheritedBranchesSortedByNameWithoutProfile() throws Exception {
+        String code = generate();
+        String reader = code.substring(code.indexOf("class IdentifiedReader"), code.indexOf("class SnapshotReader"));
+        String inner = reader.substring(reader.indexOf("def self.read_inner_element"));
+        int name = inner.indexOf("when 'name'");
+        int id = inner.indexOf("when 'id'");
+        int description = inner.indexOf("when 'description'");
+        assertTrue(name >= 0 && id >= 0 && description >= 0);
+        assertTrue(description < id);
+        assertTrue(id < name);
+    }
+
+    private String generate() throws Exception {
+        File out = tmp.newFolder("out");
+        ReadersGenerator generator = container.get(ReadersGenerator.class);
+        generator.setOut(out);
+        generator.generate(model);
+        return FileUtils.readFileToString(new File(out, "ovirtsdk4/readers.rb"), StandardCharsets.UTF_8);
+    }
+}
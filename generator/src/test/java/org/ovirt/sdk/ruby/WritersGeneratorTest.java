@@ -0,0 +1,109 @@
+/*
+Copyright (c) 2017 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ovirt.api.metamodel.analyzer.ModelAnalyzer;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+
+/**
+ * Tests of the generator of the writers, using the small model in the {@code src/test/model} directory, where the
+ * {@code Snapshot} type extends {@code Vm}, which extends {@code Identified}.
+ */
+public class WritersGeneratorTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private StaticContainer container;
+    private Model model;
+
+    @Before
+    public void analyzeModel() throws Exception {
+        container = new StaticContainer();
+        model = new Model();
+        ModelAnalyzer analyzer = new ModelAnalyzer();
+        analyzer.setModel(model);
+        analyzer.analyzeSource(new File("src/test/model"));
+        container.get(BuiltinTypes.class).addBuiltinTypes(model);
+        container.get(RubyNames.class).setVersion("4.3.0");
+        container.get(ModelSubset.class).compute(model);
+        container.get(ModelIndex.class).compute(model);
+    }
+
+    /**
+     * Checks that a run of consecutive inherited members used by several derived types is written by a method of the
+     * writer of the base type, and that the declared members are written after it, in their sorted position.
+     */
+    @Test
+    public void testSharedRunWrittenByBaseWriter() throws Exception {
+        String code = generate();
+        String identified = getWriter(code, "Identified");
+        assertTrue(identified.contains("def self.write_id_to_name(object, writer)"));
+        for (String type : new String[] { "Cluster", "Disk", "Host", "Network" }) {
+            String writer = getWriter(code, type);
+            int run = writer.indexOf("IdentifiedWriter.write_id_to_name(object, writer)");
+            int status = writer.indexOf("Writer.write_string(writer, 'status', object.status)");
+            assertTrue(type, run >= 0);
+            assertTrue(type, run < status);
+        }
+    }
+
+    /**
+     * Checks that the runs that are used by only one derived type are written inline, as a method of the writer of
+     * the base type wouldn't make the code smaller, and that the members are still sorted by name.
+     */
+    @Test
+    public void testUnsharedRunsWrittenInline() throws Exception {
+        String code = generate();
+        String vm = getWriter(code, "Vm");
+        String snapshot = getWriter(code, "Snapshot");
+        assertFalse(vm.contains("IdentifiedWriter."));
+        assertFalse(snapshot.contains("VmWriter."));
+        int description = snapshot.indexOf("'description', object.description");
+        int memory = snapshot.indexOf("'memory', object.memory");
+        int name = snapshot.indexOf("'name', object.name");
+        int origin = snapshot.indexOf("'origin', object.origin");
+        assertTrue(description >= 0);
+        assertTrue(description < memory);
+        assertTrue(memory < name);
+        assertTrue(name < origin);
+    }
+
+    private String getWriter(String code, String type) {
+        String writer = code.substring(code.indexOf("class " + type + "Writer "));
+        return writer.substring(0, writer.indexOf("\n  end\n"));
+    }
+
+    private String generate() throws Exception {
+        File out = tmp.newFolder("out");
+        WritersGenerator generator = container.get(WritersGenerator.class);
+        generator.setOut(out);
+        generator.generate(model);
+        return FileUtils.readFileToString(new File(out, "ovirtsdk4/writers.rb"), StandardCharsets.UTF_8);
+    }
+}
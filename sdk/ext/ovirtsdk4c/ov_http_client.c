@@ -24,6 +24,7 @@ limitations under the License.
 #include <stdlib.h>
 #include <string.h>
 #include <sys/time.h>
+#include <time.h>
 #include <sys/select.h>
 
 #include "ov_module.h"
@@ -38,6 +39,7 @@ limitations under the License.
 VALUE ov_http_client_class;
 
 /* Symbols: */
+static VALUE ADAPTIVE_SYMBOL;
 static VALUE CA_FILE_SYMBOL;
 static VALUE COMPRESS_SYMBOL;
 static VALUE CONNECTIONS_SYMBOL;
@@ -53,6 +55,34 @@ static VALUE TIMEOUT_SYMBOL;
 static VALUE CONNECT_TIMEOUT_SYMBOL;
 static VALUE COOKIES_SYMBOL;
 
+/* Symbols for the timings of the responses: */
+static VALUE QUEUE_SYMBOL;
+static VALUE NAMELOOKUP_SYMBOL;
+static VALUE CONNECT_SYMBOL;
+static VALUE APPCONNECT_SYMBOL;
+static VALUE PRETRANSFER_SYMBOL;
+static VALUE STARTTRANSFER_SYMBOL;
+static VALUE TOTAL_SYMBOL;
+
+/* Symbols for the statistics: */
+static VALUE REQUESTS_SYMBOL;
+static VALUE QUEUED_SYMBOL;
+static VALUE RESPONSES_SYMBOL;
+static VALUE ERRORS_SYMBOL;
+static VALUE TIMEOUTS_SYMBOL;
+static VALUE CANCELLED_SYMBOL;
+static VALUE REUSED_SYMBOL;
+static VALUE HANDSHAKES_SYMBOL;
+static VALUE MAX_IN_PROGRESS_SYMBOL;
+static VALUE BYTES_SENT_SYMBOL;
+static VALUE BYTES_RECEIVED_SYMBOL;
+static VALUE BODY_RECEIVED_SYMBOL;
+static VALUE BODY_DECODED_SYMBOL;
+static VALUE SECONDS_SYMBOL;
+static VALUE IN_PROGRESS_SYMBOL;
+static VALUE QUEUE_SIZE_SYMBOL;
+static VALUE LIMIT_SYMBOL;
+
 /* Method identifiers: */
 static ID COMPARE_BY_IDENTITY_ID;
 static ID DEBUG_ID;
@@ -105,6 +135,14 @@ static curl_version_info_data* libcurl_version;
 #define CURLMOPT_PIPELINING 3
 #endif
 
+/* When the adaptive limit is enabled, responses that take more than this factor multiplied by the base latency are
+   considered a symptom of overload: */
+#define OV_HTTP_CLIENT_LATENCY_TOLERANCE 2.0
+
+/* When the adaptive limit is enabled, the base latency moves towards the observed latencies using this factor, so
+   that permanent changes in the latency of the server don't keep the limit at the minimum: */
+#define OV_HTTP_CLIENT_LATENCY_DRIFT 0.05
+
 typedef struct {
     VALUE io; /* IO */
     char* ptr;
@@ -135,6 +173,13 @@ typedef struct {
 } ov_http_client_wait_context;
 
 
+static double ov_http_client_now(void) {
+    struct timespec now;
+
+    clock_gettime(CLOCK_MONOTONIC, &now);
+    return now.tv_sec + now.tv_nsec / 1e9;
+}
+
 static void ov_http_client_log_info(VALUE log, const char* format, ...) {
     VALUE enabled;
     VALUE message;
@@ -230,6 +275,13 @@ static VALUE ov_http_client_alloc(VALUE klass) {
     ptr->share = NULL;
     ptr->log = Qnil;
     ptr->limit = 0;
+    ptr->max_limit = 0;
+    ptr->adaptive = false;
+    ptr->generation = 0;
+    ptr->successes = 0;
+    ptr->base_latency = 0;
+    ptr->connections = 0;
+    ptr->pipeline = 0;
     ptr->queue = Qnil;
     ptr->pending = Qnil;
     ptr->completed = Qnil;
@@ -243,6 +295,7 @@ static VALUE ov_http_client_alloc(VALUE klass) {
     ptr->timeout = 0;
     ptr->connect_timeout = 0;
     ptr->cookies = NULL;
+    memset(&ptr->stats, 0, sizeof(ptr->stats));
     return TypedData_Wrap_Struct(klass, &ov_http_client_type, ptr);
 }
 
@@ -610,6 +663,10 @@ static VALUE ov_http_client_initialize(int argc, VALUE* argv, VALUE self) {
         rb_raise(rb_eArgError, "The maximum pipeline length can't be %ld, minimum is 0.", pipeline);
     }
 
+    /* Get the value of the 'adaptive' parameter: */
+    opt = rb_hash_aref(opts, ADAPTIVE_SYMBOL);
+    ptr->adaptive = NIL_P(opt)? false: RTEST(opt);
+
     /* Get the value of the 'connections' parameter: */
     opt = rb_hash_aref(opts, CONNECTIONS_SYMBOL);
     if (NIL_P(opt)) {
@@ -648,11 +705,17 @@ static VALUE ov_http_client_initialize(int argc, VALUE* argv, VALUE self) {
     /* Calculate the max number of requests that can be handled by libcurl simultaneously. For versions of libcurl
        newer than 7.30.0 the limit can be increased when using pipelining. For older versions it can't be increased
        because libcurl would create additional connections for the requests that can't be pipelined. */
-    ptr->limit = connections;
+    ptr->connections = connections;
+    ptr->pipeline = pipeline;
+    ptr->max_limit = connections;
     if (pipeline > 0 && libcurl_version->version_num >= 0x071e00 /* 7.30.0 */) {
-        ptr->limit *= pipeline;
+        ptr->max_limit *= pipeline;
     }
 
+    /* When the adaptive limit is enabled start with one request, and let it grow as responses are received, otherwise
+       use the max limit from the beginning: */
+    ptr->limit = ptr->adaptive? 1: ptr->max_limit;
+
     /* Create the libcurl multi handle: */
     ptr->handle = curl_multi_init();
     if (ptr->handle == NULL) {
@@ -744,12 +807,146 @@ static int ov_http_client_add_header(VALUE name, VALUE value, struct curl_slist*
     return ST_CONTINUE;
 }
 
+static void ov_http_client_set_limit(ov_http_client_object* ptr, int limit) {
+    long length;
+
+    /* Make sure that the new limit is within the bounds: */
+    if (limit < 1) {
+        limit = 1;
+    }
+    if (limit > ptr->max_limit) {
+        limit = ptr->max_limit;
+    }
+
+    /* Start a new generation, so that responses to requests that were sent before this change aren't used to change
+       the limit again: */
+    ptr->generation++;
+    ptr->successes = 0;
+    if (limit == ptr->limit) {
+        return;
+    }
+    ov_http_client_log_info(ptr->log, "Changing limit of simultaneous requests from %d to %d.", ptr->limit, limit);
+    ptr->limit = limit;
+
+    /* When pipelining is enabled the requests should be distributed among all the connections, so the length of the
+       pipeline needs to be adjusted as well: */
+    if (ptr->pipeline > 0 && libcurl_version->version_num >= 0x071e00 /* 7.30.0 */) {
+        length = (limit + ptr->connections - 1) / ptr->connections;
+        curl_multi_setopt(ptr->handle, CURLMOPT_MAX_PIPELINE_LENGTH, length);
+    }
+}
+
+static void ov_http_client_adapt(ov_http_client_object* ptr, long generation, double latency, bool overloaded) {
+    /* Do nothing if the adaptive limit isn't enabled, or if the request was sent before the last change of the
+       limit, as in that case it doesn't say anything about the current limit: */
+    if (!ptr->adaptive || generation != ptr->generation) {
+        return;
+    }
+
+    /* If the server explicitly indicated that it is overloaded then decrease the limit multiplicatively: */
+    if (overloaded) {
+        ov_http_client_set_limit(ptr, ptr->limit / 2);
+        return;
+    }
+
+    /* Update the base latency: */
+    if (ptr->base_latency == 0 || latency < ptr->base_latency) {
+        ptr->base_latency = latency;
+    }
+    else {
+        ptr->base_latency += (latency - ptr->base_latency) * OV_HTTP_CLIENT_LATENCY_DRIFT;
+    }
+
+    /* If the latency is growing then the server is probably starting to queue requests, so decrease the limit by
+       one: */
+    if (latency > ptr->base_latency * OV_HTTP_CLIENT_LATENCY_TOLERANCE) {
+        ov_http_client_set_limit(ptr, ptr->limit - 1);
+        return;
+    }
+
+    /* If as many responses as the current limit were received without symptoms of overload, then increase the limit
+       by one: */
+    ptr->successes++;
+    if (ptr->successes >= ptr->limit) {
+        ov_http_client_set_limit(ptr, ptr->limit + 1);
+    }
+}
+
+static double ov_http_client_get_double(CURL* handle, CURLINFO info) {
+    double value;
+
+    value = 0;
+    curl_easy_getinfo(handle, info, &value);
+    return value;
+}
+
+static long ov_http_client_get_long(CURL* handle, CURLINFO info) {
+    long value;
+
+    value = 0;
+    curl_easy_getinfo(handle, info, &value);
+    return value;
+}
+
+static void ov_http_client_add_timing(VALUE timings, VALUE name, CURL* handle, CURLINFO info) {
+    rb_hash_aset(timings, name, rb_float_new(ov_http_client_get_double(handle, info)));
+}
+
+static VALUE ov_http_client_timings(ov_http_transfer_object* transfer_ptr, CURL* handle) {
+    VALUE timings;
+
+    /* The times reported by libcurl are measured since the start of the transfer, and each one includes the previous
+       ones, so for example the time to establish the TLS session is the 'appconnect' time minus the 'connect' time.
+       The time spent in the queue of the client happens before the start of the transfer, so it isn't included in
+       any of them: */
+    timings = rb_hash_new();
+    rb_hash_aset(timings, QUEUE_SYMBOL, rb_float_new(transfer_ptr->queue));
+    ov_http_client_add_timing(timings, NAMELOOKUP_SYMBOL, handle, CURLINFO_NAMELOOKUP_TIME);
+    ov_http_client_add_timing(timings, CONNECT_SYMBOL, handle, CURLINFO_CONNECT_TIME);
+    ov_http_client_add_timing(timings, APPCONNECT_SYMBOL, handle, CURLINFO_APPCONNECT_TIME);
+    ov_http_client_add_timing(timings, PRETRANSFER_SYMBOL, handle, CURLINFO_PRETRANSFER_TIME);
+    ov_http_client_add_timing(timings, STARTTRANSFER_SYMBOL, handle, CURLINFO_STARTTRANSFER_TIME);
+    ov_http_client_add_timing(timings, TOTAL_SYMBOL, handle, CURLINFO_TOTAL_TIME);
+    return timings;
+}
+
+static void ov_http_client_count_transfer(ov_http_client_object* ptr, CURL* handle, VALUE body) {
+    double body_received;
+    long connects;
+
+    /* A transfer that didn't need to open a new connection reused one that was already open. When it opened a new
+       connection and spent time in the TLS negotiation, then there was a TLS handshake: */
+    connects = ov_http_client_get_long(handle, CURLINFO_NUM_CONNECTS);
+    if (connects > 0) {
+        ptr->stats.connections += connects;
+        if (ov_http_client_get_double(handle, CURLINFO_APPCONNECT_TIME) > 0) {
+            ptr->stats.handshakes++;
+        }
+    }
+    else {
+        ptr->stats.reused++;
+    }
+
+    /* The size of the body reported by libcurl is the size before decompression, so comparing it with the size of
+       the body that was finally received gives the compression ratio: */
+    body_received = ov_http_client_get_double(handle, CURLINFO_SIZE_DOWNLOAD);
+    ptr->stats.body_received += body_received;
+    if (!NIL_P(body)) {
+        ptr->stats.body_decoded += RSTRING_LEN(body);
+    }
+    ptr->stats.bytes_received += body_received + ov_http_client_get_long(handle, CURLINFO_HEADER_SIZE);
+    ptr->stats.bytes_sent += ov_http_client_get_double(handle, CURLINFO_SIZE_UPLOAD);
+    ptr->stats.bytes_sent += ov_http_client_get_long(handle, CURLINFO_REQUEST_SIZE);
+    ptr->stats.seconds += ov_http_client_get_double(handle, CURLINFO_TOTAL_TIME);
+}
+
 static void* ov_http_client_complete_task(void* data) {
     CURLM* handle;
     CURLMsg* message;
     VALUE error_class;
     VALUE error_instance;
     VALUE transfer;
+    double latency;
     long code;
     ov_http_client_object* client_ptr;
     ov_http_request_object* request_ptr;
@@ -777,6 +974,11 @@ static void* ov_http_client_complete_task(void* data) {
         curl_easy_getinfo(handle, CURLINFO_RESPONSE_CODE, &code);
         response_ptr->code = LONG2NUM(code);
         response_ptr->body = rb_funcall(transfer_ptr->out, STRING_ID, 0);
+        response_ptr->timings = ov_http_client_timings(transfer_ptr, handle);
+
+        /* Update the statistics: */
+        client_ptr->stats.responses++;
+        ov_http_client_count_transfer(client_ptr, handle, response_ptr->body);
 
         /* Put the request and the response in the completed transfers hash: */
         rb_hash_aset(client_ptr->completed, transfer_ptr->request, transfer_ptr->response);
@@ -789,6 +991,12 @@ static void* ov_http_client_complete_task(void* data) {
             request_ptr->method,
             request_ptr->url
         );
+
+        /* Adjust the limit of simultaneous requests, considering the service unavailable and too many requests
+           responses as symptoms of overload. The latency is the time till the first byte of the response, as the
+           time needed to download the body depends on its size and not on the load of the server: */
+        curl_easy_getinfo(handle, CURLINFO_STARTTRANSFER_TIME, &latency);
+        ov_http_client_adapt(client_ptr, transfer_ptr->generation, latency, code == 503 || code == 429);
     }
     else {
         /* Select the error class according to the kind of error returned by libcurl: */
@@ -800,11 +1008,17 @@ static void* ov_http_client_complete_task(void* data) {
             break;
         case CURLE_OPERATION_TIMEDOUT:
             error_class = ov_timeout_error_class;
+            ov_http_client_adapt(client_ptr, transfer_ptr->generation, 0, true);
+            client_ptr->stats.timeouts++;
             break;
         default:
             error_class = ov_error_class;
         }
 
+        /* Update the statistics: */
+        client_ptr->stats.errors++;
+        ov_http_client_count_transfer(client_ptr, handle, Qnil);
+
         /* Put the request and error in the completed transfers hash: */
         error_instance = rb_sprintf("Can't send request: %s", curl_easy_strerror(message->data.result));
         error_instance = rb_class_new_instance(1, &error_instance, error_class);
@@ -1056,7 +1270,10 @@ static VALUE ov_http_client_submit(VALUE self, VALUE request) {
     transfer_ptr->request = request;
     transfer_ptr->response = response;
     transfer_ptr->headers = headers;
+    transfer_ptr->handle = handle;
     transfer_ptr->cancel = false;
+    transfer_ptr->generation = ptr->generation;
+    transfer_ptr->queue = request_ptr->queued > 0? ov_http_client_now() - request_ptr->queued: 0;
     if (NIL_P(request_ptr->body)) {
         transfer_ptr->in = rb_class_new_instance(0, NULL, STRING_IO_CLASS);
     }
@@ -1078,29 +1295,53 @@ static VALUE ov_http_client_submit(VALUE self, VALUE request) {
     /* Add the easy handle to the multi handle: */
     curl_multi_add_handle(ptr->handle, handle);
 
+    /* Update the max number of requests in progress: */
+    if (RHASH_SIZE(ptr->pending) > ptr->stats.max_in_progress) {
+        ptr->stats.max_in_progress = RHASH_SIZE(ptr->pending);
+    }
+
     return Qnil;
 }
 
 static VALUE ov_http_client_send(VALUE self, VALUE request) {
     ov_http_client_object* ptr;
+    ov_http_request_object* request_ptr;
 
     /* Get the pointer to the native object and check that it isn't closed: */
     ov_http_client_ptr(self, ptr);
     ov_http_client_check_closed(ptr);
 
+    /* Remember when the request was sent, so that the time that it spends in the queue can be calculated when it is
+       submitted to libcurl: */
+    if (rb_obj_is_instance_of(request, ov_http_request_class)) {
+        ov_http_request_ptr(request, request_ptr);
+        request_ptr->queued = ov_http_client_now();
+    }
+
     /* If the limit hasn't been reached then submit the request directly to libcurl, otherwise put it in the queue: */
+    ptr->stats.requests++;
     if (RHASH_SIZE(ptr->pending) < ptr->limit) {
         ov_http_client_submit(self, request);
     }
     else {
         rb_ary_push(ptr->queue, request);
+        ptr->stats.queued++;
     }
 
     return Qnil;
 }
 
-static VALUE ov_http_client_wait(VALUE self, VALUE request) {
+static void ov_http_client_drain(VALUE self, ov_http_client_object* ptr) {
     VALUE next;
+
+    /* Move requests from the queue to libcurl while the limit allows it: */
+    while (RARRAY_LEN(ptr->queue) > 0 && RHASH_SIZE(ptr->pending) < ptr->limit) {
+        next = rb_ary_shift(ptr->queue);
+        ov_http_client_submit(self, next);
+    }
+}
+
+static VALUE ov_http_client_wait(VALUE self, VALUE request) {
     VALUE result;
     ov_http_client_object* ptr;
     ov_http_client_wait_context context;
@@ -1113,13 +1354,8 @@ static VALUE ov_http_client_wait(VALUE self, VALUE request) {
     context.handle = ptr->handle;
     context.code = CURLE_OK;
     context.cancel = false;
+    ov_http_client_drain(self, ptr);
     for (;;) {
-        /* Move requests from the queue to libcurl: */
-        while (RARRAY_LEN(ptr->queue) > 0 && RHASH_SIZE(ptr->pending) < ptr->limit) {
-            next = rb_ary_shift(ptr->queue);
-            ov_http_client_submit(self, next);
-        }
-
         /* Check if the response is already available, if so then return it: */
         result = rb_hash_delete(ptr->completed, request);
         if (!NIL_P(result)) {
@@ -1139,11 +1375,104 @@ static VALUE ov_http_client_wait(VALUE self, VALUE request) {
         if (context.code != CURLE_OK) {
             rb_raise(ov_error_class, "Unexpected error while waiting: %s", curl_easy_strerror(context.code));
         }
+
+        /* The completed transfers have released slots and may have raised the limit, so submit the queued requests
+           now, even if the response that we are waiting for is already available, instead of leaving them in the
+           queue till the next call: */
+        ov_http_client_drain(self, ptr);
     }
 
     return Qnil;
 }
 
+static VALUE ov_http_client_cancel(VALUE self, VALUE request) {
+    VALUE transfer;
+    ov_http_client_object* ptr;
+    ov_http_request_object* request_ptr;
+    ov_http_transfer_object* transfer_ptr;
+
+    /* Get the pointer to the native object and check that it isn't closed: */
+    ov_http_client_ptr(self, ptr);
+    ov_http_client_check_closed(ptr);
+
+    /* If the request hasn't been submitted to libcurl yet then it is enough to remove it from the queue, and if it has
+       already been completed then it is enough to discard the result: */
+    rb_ary_delete(ptr->queue, request);
+    rb_hash_delete(ptr->completed, request);
+
+    /* If the request is in progress then remove the easy handle from the multi handle, so that libcurl stops
+       processing it, and release it: */
+    transfer = rb_hash_delete(ptr->pending, request);
+    if (!NIL_P(transfer)) {
+        ov_http_transfer_ptr(transfer, transfer_ptr);
+        transfer_ptr->cancel = true;
+        curl_multi_remove_handle(ptr->handle, transfer_ptr->handle);
+        curl_easy_cleanup(transfer_ptr->handle);
+        transfer_ptr->handle = NULL;
+        curl_slist_free_all(transfer_ptr->headers);
+        transfer_ptr->headers = NULL;
+        ptr->stats.cancelled++;
+
+        /* Send a summary of the cancellation to the log: */
+        ov_http_request_ptr(request, request_ptr);
+        ov_http_client_log_info(
+            ptr->log,
+            "Cancelled %"PRIsVALUE" request to URL '%"PRIsVALUE"'.",
+            request_ptr->method,
+            request_ptr->url
+        );
+    }
+
+    return Qnil;
+}
+
+static VALUE ov_http_client_limit(VALUE self) {
+    ov_http_client_object* ptr;
+
+    ov_http_client_ptr(self, ptr);
+    return INT2NUM(ptr->limit);
+}
+
+static VALUE ov_http_client_queue_size(VALUE self) {
+    ov_http_client_object* ptr;
+
+    ov_http_client_ptr(self, ptr);
+    return NIL_P(ptr->queue)? INT2NUM(0): LONG2NUM(RARRAY_LEN(ptr->queue));
+}
+
+static VALUE ov_http_client_stats(VALUE self) {
+    VALUE stats;
+    ov_http_client_object* ptr;
+
+    /* This doesn't check if the client is closed, so that the statistics can still be retrieved after closing it: */
+    ov_http_client_ptr(self, ptr);
+
+    /* Cumulative counters: */
+    stats = rb_hash_new();
+    rb_hash_aset(stats, REQUESTS_SYMBOL, LONG2NUM(ptr->stats.requests));
+    rb_hash_aset(stats, QUEUED_SYMBOL, LONG2NUM(ptr->stats.queued));
+    rb_hash_aset(stats, RESPONSES_SYMBOL, LONG2NUM(ptr->stats.responses));
+    rb_hash_aset(stats, ERRORS_SYMBOL, LONG2NUM(ptr->stats.errors));
+    rb_hash_aset(stats, TIMEOUTS_SYMBOL, LONG2NUM(ptr->stats.timeouts));
+    rb_hash_aset(stats, CANCELLED_SYMBOL, LONG2NUM(ptr->stats.cancelled));
+    rb_hash_aset(stats, CONNECTIONS_SYMBOL, LONG2NUM(ptr->stats.connections));
+    rb_hash_aset(stats, REUSED_SYMBOL, LONG2NUM(ptr->stats.reused));
+    rb_hash_aset(stats, HANDSHAKES_SYMBOL, LONG2NUM(ptr->stats.handshakes));
+    rb_hash_aset(stats, MAX_IN_PROGRESS_SYMBOL, LONG2NUM(ptr->stats.max_in_progress));
+    rb_hash_aset(stats, BYTES_SENT_SYMBOL, LL2NUM((long long) ptr->stats.bytes_sent));
+    rb_hash_aset(stats, BYTES_RECEIVED_SYMBOL, LL2NUM((long long) ptr->stats.bytes_received));
+    rb_hash_aset(stats, BODY_RECEIVED_SYMBOL, LL2NUM((long long) ptr->stats.body_received));
+    rb_hash_aset(stats, BODY_DECODED_SYMBOL, LL2NUM((long long) ptr->stats.body_decoded));
+    rb_hash_aset(stats, SECONDS_SYMBOL, rb_float_new(ptr->stats.seconds));
+
+    /* Current values: */
+    rb_hash_aset(stats, IN_PROGRESS_SYMBOL, NIL_P(ptr->pending)? INT2NUM(0): LONG2NUM(RHASH_SIZE(ptr->pending)));
+    rb_hash_aset(stats, QUEUE_SIZE_SYMBOL, NIL_P(ptr->queue)? INT2NUM(0): LONG2NUM(RARRAY_LEN(ptr->queue)));
+    rb_hash_aset(stats, LIMIT_SYMBOL, INT2NUM(ptr->limit));
+
+    return stats;
+}
+
 static VALUE ov_http_client_inspect(VALUE self) {
     ov_http_client_object* ptr;
 
@@ -1166,13 +1495,18 @@ void ov_http_client_define(void) {
     rb_define_method(ov_http_client_class, "initialize", ov_http_client_initialize, -1);
 
     /* Define the methods: */
-    rb_define_method(ov_http_client_class, "close",   ov_http_client_close,   0);
-    rb_define_method(ov_http_client_class, "inspect", ov_http_client_inspect, 0);
-    rb_define_method(ov_http_client_class, "send",    ov_http_client_send,    1);
-    rb_define_method(ov_http_client_class, "to_s",    ov_http_client_inspect, 0);
-    rb_define_method(ov_http_client_class, "wait",    ov_http_client_wait,    1);
+    rb_define_method(ov_http_client_class, "cancel",     ov_http_client_cancel,     1);
+    rb_define_method(ov_http_client_class, "close",      ov_http_client_close,      0);
+    rb_define_method(ov_http_client_class, "inspect",    ov_http_client_inspect,    0);
+    rb_define_method(ov_http_client_class, "limit",      ov_http_client_limit,      0);
+    rb_define_method(ov_http_client_class, "queue_size", ov_http_client_queue_size, 0);
+    rb_define_method(ov_http_client_class, "send",       ov_http_client_send,       1);
+    rb_define_method(ov_http_client_class, "stats",      ov_http_client_stats,      0);
+    rb_define_method(ov_http_client_class, "to_s",       ov_http_client_inspect,    0);
+    rb_define_method(ov_http_client_class, "wait",       ov_http_client_wait,       1);
 
     /* Define the symbols: */
+    ADAPTIVE_SYMBOL        = ID2SYM(rb_intern("adaptive"));
     CA_FILE_SYMBOL         = ID2SYM(rb_intern("ca_file"));
     COMPRESS_SYMBOL        = ID2SYM(rb_intern("compress"));
     CONNECTIONS_SYMBOL     = ID2SYM(rb_intern("connections"));
@@ -1187,6 +1521,30 @@ void ov_http_client_define(void) {
     TIMEOUT_SYMBOL         = ID2SYM(rb_intern("timeout"));
     CONNECT_TIMEOUT_SYMBOL = ID2SYM(rb_intern("connect_timeout"));
     COOKIES_SYMBOL         = ID2SYM(rb_intern("cookies"));
+    QUEUE_SYMBOL           = ID2SYM(rb_intern("queue"));
+    NAMELOOKUP_SYMBOL      = ID2SYM(rb_intern("namelookup"));
+    CONNECT_SYMBOL         = ID2SYM(rb_intern("connect"));
+    APPCONNECT_SYMBOL      = ID2SYM(rb_intern("appconnect"));
+    PRETRANSFER_SYMBOL     = ID2SYM(rb_intern("pretransfer"));
+    STARTTRANSFER_SYMBOL   = ID2SYM(rb_intern("starttransfer"));
+    TOTAL_SYMBOL           = ID2SYM(rb_intern("total"));
+    REQUESTS_SYMBOL        = ID2SYM(rb_intern("requests"));
+    QUEUED_SYMBOL          = ID2SYM(rb_intern("queued"));
+    RESPONSES_SYMBOL       = ID2SYM(rb_intern("responses"));
+    ERRORS_SYMBOL          = ID2SYM(rb_intern("errors"));
+    TIMEOUTS_SYMBOL        = ID2SYM(rb_intern("timeouts"));
+    CANCELLED_SYMBOL       = ID2SYM(rb_intern("cancelled"));
+    REUSED_SYMBOL          = ID2SYM(rb_intern("reused"));
+    HANDSHAKES_SYMBOL      = ID2SYM(rb_intern("handshakes"));
+    MAX_IN_PROGRESS_SYMBOL = ID2SYM(rb_intern("max_in_progress"));
+    BYTES_SENT_SYMBOL      = ID2SYM(rb_intern("bytes_sent"));
+    BYTES_RECEIVED_SYMBOL  = ID2SYM(rb_intern("bytes_received"));
+    BODY_RECEIVED_SYMBOL   = ID2SYM(rb_intern("body_received"));
+    BODY_DECODED_SYMBOL    = ID2SYM(rb_intern("body_decoded"));
+    SECONDS_SYMBOL         = ID2SYM(rb_intern("seconds"));
+    IN_PROGRESS_SYMBOL     = ID2SYM(rb_intern("in_progress"));
+    QUEUE_SIZE_SYMBOL      = ID2SYM(rb_intern("queue_size"));
+    LIMIT_SYMBOL           = ID2SYM(rb_intern("limit"));
 
     /* Define the method identifiers: */
     COMPARE_BY_IDENTITY_ID = rb_intern("compare_by_identity");
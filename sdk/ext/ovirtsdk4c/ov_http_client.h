@@ -26,6 +26,25 @@ limitations under the License.
 extern rb_data_type_t ov_http_client_type;
 extern VALUE ov_http_client_class;
 
+/* Cumulative counters of the activity of the client: */
+typedef struct {
+    long requests;         /* Requests passed to the 'send' method */
+    long queued;           /* Requests that had to wait in the queue because the limit was reached */
+    long responses;        /* Responses received */
+    long errors;           /* Transfers that failed without a response, including timeouts */
+    long timeouts;         /* Transfers that failed because of a timeout */
+    long cancelled;        /* Requests cancelled before receiving the response */
+    long connections;      /* Connections opened */
+    long reused;           /* Responses received using a connection that was already open */
+    long handshakes;       /* TLS handshakes */
+    long max_in_progress;  /* Max number of requests submitted to libcurl simultaneously */
+    double bytes_sent;     /* Bytes sent, including the headers */
+    double bytes_received; /* Bytes received, including the headers, before decompression */
+    double body_received;  /* Bytes of the bodies of the responses, before decompression */
+    double body_decoded;   /* Bytes of the bodies of the responses, after decompression */
+    double seconds;        /* Total time of the transfers, as reported by libcurl */
+} ov_http_client_stats;
+
 /* Content: */
 typedef struct {
     /* The libcurl multi handle, used to implement multiple simultaneous requests: */
@@ -38,9 +57,30 @@ typedef struct {
     VALUE log;
 
     /* The max number of requests that can be processed simultaneously by libcurl. Will be calculated multiplying the
-       max number of connections by the pipeline length: */
+       max number of connections by the pipeline length. When the adaptive limit is enabled this changes according to
+       the observed latencies and errors: */
     int limit;
 
+    /* The upper bound for the above limit. When the adaptive limit is disabled both values are the same: */
+    int max_limit;
+
+    /* Indicates if the limit should be adjusted according to the observed latencies and errors: */
+    bool adaptive;
+
+    /* Incremented each time that the limit changes, so that responses to requests sent before the change can be
+       ignored when adjusting it again: */
+    long generation;
+
+    /* The number of successful responses to requests sent since the limit was last changed: */
+    int successes;
+
+    /* The latency considered normal for this server, in seconds, or zero if no response has been received yet: */
+    double base_latency;
+
+    /* The max number of connections and the max pipeline length: */
+    long connections;
+    long pipeline;
+
     /* This queue contains the requests that have not yet been sent to libcurl for processing: */
     VALUE queue;
 
@@ -63,6 +103,9 @@ typedef struct {
     int timeout;
     int connect_timeout;
     char* cookies;
+
+    /* The counters returned by the 'stats' method: */
+    ov_http_client_stats stats;
 } ov_http_client_object;
 
 /* Macro to get the pointer: */
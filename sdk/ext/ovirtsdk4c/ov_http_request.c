@@ -96,6 +96,7 @@ static VALUE ov_http_request_alloc(VALUE klass) {
     ptr->body            = Qnil;
     ptr->timeout         = Qnil;
     ptr->connect_timeout = Qnil;
+    ptr->queued          = 0;
     return TypedData_Wrap_Struct(klass, &ov_http_request_type, ptr);
 }
 
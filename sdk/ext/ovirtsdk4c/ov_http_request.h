@@ -42,6 +42,7 @@ typedef struct {
     VALUE body;            /* String */
     VALUE timeout;         /* Integer */
     VALUE connect_timeout; /* Integer */
+    double queued;         /* The monotonic time, in seconds, when the request was passed to the client */
 } ov_http_request_object;
 
 /* Macro to get the pointer: */
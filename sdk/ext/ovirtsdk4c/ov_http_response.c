@@ -27,6 +27,7 @@ static VALUE BODY_SYMBOL;
 static VALUE CODE_SYMBOL;
 static VALUE HEADERS_SYMBOL;
 static VALUE MESSAGE_SYMBOL;
+static VALUE TIMINGS_SYMBOL;
 
 static void ov_http_response_mark(void* vptr) {
     ov_http_response_object* ptr;
@@ -36,6 +37,7 @@ static void ov_http_response_mark(void* vptr) {
     rb_gc_mark(ptr->code);
     rb_gc_mark(ptr->headers);
     rb_gc_mark(ptr->message);
+    rb_gc_mark(ptr->timings);
 }
 
 static void ov_http_response_free(void* vptr) {
@@ -68,6 +70,7 @@ static VALUE ov_http_response_alloc(VALUE klass) {
     ptr->code = Qnil;
     ptr->headers = Qnil;
     ptr->message = Qnil;
+    ptr->timings = Qnil;
     return TypedData_Wrap_Struct(klass, &ov_http_response_type, ptr);
 }
 
@@ -146,6 +149,24 @@ static VALUE ov_http_response_set_message(VALUE self, VALUE value) {
     return Qnil;
 }
 
+static VALUE ov_http_response_get_timings(VALUE self) {
+    ov_http_response_object* ptr;
+
+    ov_http_response_ptr(self, ptr);
+    return ptr->timings;
+}
+
+static VALUE ov_http_response_set_timings(VALUE self, VALUE value) {
+    ov_http_response_object* ptr;
+
+    ov_http_response_ptr(self, ptr);
+    if (!NIL_P(value)) {
+        Check_Type(value, T_HASH);
+    }
+    ptr->timings = value;
+    return Qnil;
+}
+
 static VALUE ov_http_response_inspect(VALUE self) {
     ov_http_response_object* ptr;
 
@@ -178,6 +199,7 @@ static VALUE ov_http_response_initialize(int argc, VALUE* argv, VALUE self) {
     ov_http_response_set_headers(self, rb_hash_aref(opts, HEADERS_SYMBOL));
     ov_http_response_set_code(self, rb_hash_aref(opts, CODE_SYMBOL));
     ov_http_response_set_message(self, rb_hash_aref(opts, MESSAGE_SYMBOL));
+    ov_http_response_set_timings(self, rb_hash_aref(opts, TIMINGS_SYMBOL));
 
     return self;
 }
@@ -199,6 +221,8 @@ void ov_http_response_define(void) {
     rb_define_method(ov_http_response_class, "headers=", ov_http_response_set_headers, 1);
     rb_define_method(ov_http_response_class, "message",  ov_http_response_get_message, 0);
     rb_define_method(ov_http_response_class, "message=", ov_http_response_set_message, 1);
+    rb_define_method(ov_http_response_class, "timings",  ov_http_response_get_timings, 0);
+    rb_define_method(ov_http_response_class, "timings=", ov_http_response_set_timings, 1);
     rb_define_method(ov_http_response_class, "inspect",  ov_http_response_inspect,     0);
     rb_define_method(ov_http_response_class, "to_s",     ov_http_response_inspect,     0);
 
@@ -207,4 +231,5 @@ void ov_http_response_define(void) {
     CODE_SYMBOL    = ID2SYM(rb_intern("code"));
     HEADERS_SYMBOL = ID2SYM(rb_intern("headers"));
     MESSAGE_SYMBOL = ID2SYM(rb_intern("message"));
+    TIMINGS_SYMBOL = ID2SYM(rb_intern("timings"));
 }
@@ -29,6 +29,7 @@ typedef struct {
     VALUE code;    /* Integer */
     VALUE headers; /* Hash<String, String> */
     VALUE message; /* String */
+    VALUE timings; /* Hash<Symbol, Float> */
 } ov_http_response_object;
 
 /* Macro to get the pointer: */
@@ -67,7 +67,10 @@ static VALUE ov_http_transfer_alloc(VALUE klass) {
     ptr->in       = Qnil;
     ptr->out      = Qnil;
     ptr->headers  = NULL;
+    ptr->handle   = NULL;
     ptr->cancel   = false;
+    ptr->generation = 0;
+    ptr->queue = 0;
     return TypedData_Wrap_Struct(klass, &ov_http_transfer_type, ptr);
 }
 
@@ -34,7 +34,10 @@ typedef struct {
     VALUE in;       /* IO */
     VALUE out;      /* IO */
     struct curl_slist* headers;
+    CURL* handle;   /* The libcurl easy handle */
     bool cancel;
+    long generation; /* The generation of the client limit when the transfer was submitted */
+    double queue;    /* The number of seconds that the request waited in the queue before being submitted */
 } ov_http_transfer_object;
 
 /* Macro to get the pointer: */
@@ -25,17 +25,22 @@ require 'date'
 require 'ovirtsdk4c'
 
 #
-# Own requirements.
+# Own requirements. The large generated files are loaded from the precompiled instruction sequences when possible.
 #
 require 'ovirtsdk4/version.rb'
 require 'ovirtsdk4/errors.rb'
+require 'ovirtsdk4/metrics.rb'
+require 'ovirtsdk4/stats.rb'
+require 'ovirtsdk4/recording.rb'
+require 'ovirtsdk4/tracing.rb'
 require 'ovirtsdk4/connection.rb'
+require 'ovirtsdk4/precompiled.rb'
 require 'ovirtsdk4/type.rb'
-require 'ovirtsdk4/types.rb'
+OvirtSDK4::Precompiled.require('ovirtsdk4/types')
 require 'ovirtsdk4/reader.rb'
-require 'ovirtsdk4/readers.rb'
+OvirtSDK4::Precompiled.require('ovirtsdk4/readers')
 require 'ovirtsdk4/writer.rb'
-require 'ovirtsdk4/writers.rb'
+OvirtSDK4::Precompiled.require('ovirtsdk4/writers')
 require 'ovirtsdk4/service.rb'
-require 'ovirtsdk4/services.rb'
+OvirtSDK4::Precompiled.require('ovirtsdk4/services')
 require 'ovirtsdk4/probe.rb'
@@ -26,6 +26,22 @@ module OvirtSDK4
   # provided by the API.
   #
   class Connection
+    #
+    # The number of recent latencies of each method that are used to calculate the hedging delay, and the number of
+    # them that are required before starting to hedge requests.
+    #
+    HEDGE_MAX_SAMPLES = 100
+    HEDGE_MIN_SAMPLES = 20
+    private_constant :HEDGE_MAX_SAMPLES, :HEDGE_MIN_SAMPLES
+
+    #
+    # The name of the thread variable that is set in the threads of the copies of hedged requests that lost the race
+    # before stopping them, so that they aren't reported as failed calls.
+    #
+    # @api private
+    #
+    HEDGE_CANCELLED = :ovirtsdk4_hedge_cancelled
+
     #
     # Creates a new connection to the API server.
     #
@@ -107,6 +123,47 @@ module OvirtSDK4
     # @option opts [Integer] :pipeline (0) The maximum number of request to put in an HTTP pipeline without waiting for
     #   the response. If the value is `0` (the default) then pipelining is disabled.
     #
+    # @option opts [Boolean] :adaptive (false) A boolean flag indicating if the number of requests sent
+    #   simultaneously to the server should be adjusted automatically. When enabled, the client starts sending one
+    #   request at a time, and increases that number while the responses arrive without delays, up to the limit given
+    #   by the `connections` and `pipeline` options. When the server returns `503` or `429` responses, when requests
+    #   time out, or when the latency grows, the number is decreased. Requests that exceed the number are kept in a
+    #   queue in the client till the server can accept them.
+    #
+    # @option opts [Integer] :pool (1) The number of HTTP clients used by the connection. Each client has its own
+    #   connections and its own lock, so when the value is greater than 1 multiple threads can send requests and wait
+    #   for responses simultaneously instead of waiting for each other. The authentication token is shared by all the
+    #   clients. Note that the `connections` and `pipeline` options apply to each client, so the total number of
+    #   connections opened to the server can be up to `pool * connections`.
+    #
+    # @option opts [Boolean] :coalesce (false) A boolean flag indicating if identical `get` and `list` requests sent
+    #   simultaneously by multiple threads should be coalesced. When enabled, a request that has the same path, query
+    #   parameters, headers and timeout than other request that is already in progress isn't sent to the server:
+    #   the thread waits for the request in progress and receives the same result. Note that all these threads
+    #   receive the same result object, so they should treat it as read only.
+    #
+    # @option opts [Float] :hedge (nil) The percentile of the recent latencies of each `get` and `list` method, as a
+    #   number between 0 and 1, used to decide when to hedge a request. For example, if the value is 0.95 and a `get`
+    #   request hasn't received a response after the 95th percentile of the latencies of the last requests for that
+    #   same method, then a copy of the request is sent using other HTTP client of the pool. The first response is
+    #   used, and the other request is cancelled. Hedging only starts when enough latencies have been recorded for
+    #   the method, and it requires a `pool` greater than 1, otherwise an `ArgumentError` is raised. The default is
+    #   `nil`, which disables hedging.
+    #
+    # @option opts [Metrics] :metrics (nil) The object that will receive the measurements of the calls to the methods
+    #   of the services, like the latency and the number of bytes sent and received. See the {Metrics} and
+    #   {MemoryMetrics} classes. The default is `nil`, which means that nothing is measured.
+    #
+    # @option opts [Recorder] :recorder (nil) The object that will record the requests sent and the responses
+    #   received, with their timings, so that they can be replayed later with the {Replayer} class. The default is
+    #   `nil`, which means that nothing is recorded.
+    #
+    # @option opts [Tracer] :tracer (nil) The object that will receive the spans of the calls to the methods of the
+    #   services, describing where the time of each call was spent: waiting in the queue, resolving the host name,
+    #   connecting, negotiating TLS, waiting for the first byte of the response, transferring the response and
+    #   parsing it. See the {Tracer} and {MemoryTracer} classes. The default is `nil`, which means that nothing is
+    #   traced.
+    #
     def initialize(opts = {})
       # Get the values of the parameters and assign default values:
       @url = opts[:url]
@@ -128,10 +185,30 @@ module OvirtSDK4
       @headers = opts[:headers]
       @connections = opts[:connections] || 1
       @pipeline = opts[:pipeline] || 0
+      @adaptive = opts[:adaptive] || false
+      @pool = opts[:pool] || 1
+      @coalesce = opts[:coalesce] || false
+      @hedge = opts[:hedge]
+      @metrics = opts[:metrics]
+      @recorder = opts[:recorder]
+      @tracer = opts[:tracer]
 
       # Check that the URL has been provided:
       raise ArgumentError, "The 'url' option is mandatory" unless @url
 
+      # Check that the size of the pool is valid:
+      raise ArgumentError, "The size of the pool can't be #{@pool}, minimum is 1" if @pool < 1
+
+      # Check that the hedging percentile is valid:
+      if @hedge && (@hedge <= 0 || @hedge >= 1)
+        raise ArgumentError, "The hedging percentile can't be #{@hedge}, it should be between 0 and 1"
+      end
+
+      # Check that there are enough clients to send the copies of hedged requests:
+      if @hedge && @pool < 2
+        raise ArgumentError, "Hedging requires a pool of at least 2 clients, but the size of the pool is #{@pool}"
+      end
+
       # Automatically disable compression when debug is enabled, as otherwise the debug output generated by
       # libcurl is also compressed, and that isn't useful for debugging:
       @compress = false if @debug
@@ -150,26 +227,74 @@ module OvirtSDK4
         @ca_store.close
       end
 
-      # Create the mutex that will be used to prevents simultaneous access to the same HTTP client by multiple threads:
+      # Create the mutex that protects the table that tracks which client was used to send each request, the number
+      # of requests that have been sent with each client and not yet retrieved, and the index of the next client to
+      # use:
       @mutex = Mutex.new
-
-      # Create the HTTP client:
-      @client = HttpClient.new(
-        insecure: @insecure,
-        ca_file: @ca_store ? @ca_store.path : nil,
-        debug: @debug,
-        log: @log,
-        timeout: @timeout,
-        connect_timeout: @connect_timeout,
-        compress: @compress,
-        proxy_url: @proxy_url,
-        proxy_username: @proxy_username,
-        proxy_password: @proxy_password,
-        connections: @connections,
-        pipeline: @pipeline
-      )
+      @owners = {}.compare_by_identity
+      @in_flight = Array.new(@pool, 0)
+      @next = 0
+
+      # Create the mutex that prevents simultaneous creation of the authentication token by multiple threads:
+      @token_mutex = Mutex.new
+
+      # Create the table of coalesced requests that are in progress, the mutex that protects it, and the condition
+      # that is signaled when one of them completes:
+      @flights = {}
+      @flights_mutex = Mutex.new
+      @flights_done = ConditionVariable.new
+      @coalesced = 0
+
+      # Create the table of recent latencies of each hedged method, the mutex that protects it, and the counters of
+      # hedged requests:
+      @latencies = {}.compare_by_identity
+      @hedge_mutex = Mutex.new
+      @hedges_issued = 0
+      @hedges_won = 0
+
+      # Create the HTTP clients, and for each of them the mutex that will be used to prevent simultaneous access to
+      # that client by multiple threads:
+      @clients = Array.new(@pool) do
+        HttpClient.new(
+          insecure: @insecure,
+          ca_file: @ca_store ? @ca_store.path : nil,
+          debug: @debug,
+          log: @log,
+          timeout: @timeout,
+          connect_timeout: @connect_timeout,
+          compress: @compress,
+          proxy_url: @proxy_url,
+          proxy_username: @proxy_username,
+          proxy_password: @proxy_password,
+          connections: @connections,
+          pipeline: @pipeline,
+          adaptive: @adaptive
+        )
+      end
+      @locks = Array.new(@pool) { Mutex.new }
     end
 
+    #
+    # Returns the object that receives the measurements of the calls to the methods of the services.
+    #
+    # @return [Metrics] The metrics sink, or `nil` if measurements aren't enabled.
+    #
+    attr_reader :metrics
+
+    #
+    # Returns the object that records the requests and the responses.
+    #
+    # @return [Recorder] The recorder, or `nil` if recording isn't enabled.
+    #
+    attr_reader :recorder
+
+    #
+    # Returns the object that receives the spans of the calls to the methods of the services.
+    #
+    # @return [Tracer] The tracer, or `nil` if tracing isn't enabled.
+    #
+    attr_reader :tracer
+
     #
     # Returns a reference to the root of the services tree.
     #
@@ -196,11 +321,21 @@ module OvirtSDK4
     # Sends an HTTP request, making sure that multiple threads are coordinated correctly.
     #
     # @param request [HttpRequest] The request object containing the details of the HTTP request to send.
+    # @param avoid [Integer] The index of a client of the pool that shouldn't be used to send the request, unless it
+    #   is the only one.
     #
     # @api private
     #
-    def send(request)
-      @mutex.synchronize { internal_send(request) }
+    def send(request, avoid = nil)
+      index = assign_client(request, avoid)
+      @recorder.started(request) if @recorder
+      begin
+        @locks[index].synchronize { internal_send(request, @clients[index]) }
+      rescue StandardError
+        release_client(request)
+        @recorder.discard(request) if @recorder
+        raise
+      end
     end
 
     #
@@ -212,7 +347,234 @@ module OvirtSDK4
     # @api private
     #
     def wait(request)
-      @mutex.synchronize { internal_wait(request) }
+      index = release_client(request) || 0
+      return @locks[index].synchronize { internal_wait(request, @clients[index]) } unless @recorder
+      begin
+        response = @locks[index].synchronize { internal_wait(request, @clients[index]) }
+      rescue StandardError => error
+        @recorder.finished(request, error)
+        raise
+      end
+      @recorder.finished(request, response)
+      response
+    end
+
+    #
+    # Indicates if coalescing of identical requests is enabled.
+    #
+    # @return [Boolean]
+    #
+    # @api private
+    #
+    def coalesce?
+      @coalesce
+    end
+
+    #
+    # Executes the given block, unless other thread is already executing a block with the same key. In that case it
+    # waits till that other thread finishes, and returns the same result or raises the same exception.
+    #
+    # @param key [Object] The key that identifies the request. It should be an immutable object, and it is usually an
+    #   array containing the path, the query parameters and the headers of the request.
+    # @return [Object] The result of the block.
+    #
+    # @api private
+    #
+    def coalesce(key)
+      # Check if there is already a request in progress with the same key, and if there isn't then register this one:
+      flight, leader = @flights_mutex.synchronize do
+        existing = @flights[key]
+        if existing
+          @coalesced += 1
+          [existing, false]
+        else
+          @flights[key] = {}
+          [@flights[key], true]
+        end
+      end
+
+      if leader
+        # This is the first thread sending the request, so it executes the block, saves the result, and then notifies
+        # the rest of the threads:
+        begin
+          flight[:result] = yield
+        rescue StandardError => error
+          flight[:error] = error
+        ensure
+          @flights_mutex.synchronize do
+            flight[:error] = Error.new("The coalesced request didn't complete") if flight.empty?
+            @flights.delete(key)
+            flight[:done] = true
+            @flights_done.broadcast
+          end
+        end
+      else
+        # Other thread is already sending the request, so wait for it to complete:
+        @flights_mutex.synchronize do
+          @flights_done.wait(@flights_mutex) until flight[:done]
+        end
+      end
+
+      # Return the result, or raise the error:
+      raise flight[:error] if flight.key?(:error)
+      flight[:result]
+    end
+
+    #
+    # Returns the number of requests that weren't sent to the server because an identical request was already in
+    # progress. This is always zero unless the `coalesce` option is enabled.
+    #
+    # @return [Integer]
+    #
+    def coalesced_requests
+      @flights_mutex.synchronize { @coalesced }
+    end
+
+    #
+    # Indicates if hedging of requests is enabled.
+    #
+    # @return [Boolean]
+    #
+    # @api private
+    #
+    def hedge?
+      !@hedge.nil?
+    end
+
+    #
+    # Sends a request created by the given factory and waits for the result, calculated by the given block. If the
+    # result isn't available after the configured percentile of the recent latencies of the method identified by the
+    # key, then a copy of the request is sent using other client of the pool. The first result is returned, and the
+    # other request is cancelled.
+    #
+    # @param key [Object] The object that identifies the method, usually the constant that contains its parameter
+    #   specifications. It is compared by identity.
+    # @param factory [Proc] The block that creates the request. It will be called once for each copy of the request.
+    # @yield [request, started] The block that waits for the response to the request and converts it into the result.
+    #   It also receives the monotonic time when the original request was sent, which is the start of the call for
+    #   all the copies.
+    # @return [Object] The result of the block.
+    #
+    # @api private
+    #
+    def hedge(key, factory, &block)
+      # Send the request:
+      started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      primary = factory.call
+      send(primary)
+
+      # If there isn't a delay yet, because there aren't enough latencies for this method, then wait for the result
+      # and just record its latency:
+      delay = hedge_delay(key)
+      if delay.nil?
+        result = yield primary, started
+        record_latency(key, Process.clock_gettime(Process::CLOCK_MONOTONIC) - started)
+        return result
+      end
+
+      # Wait for the result in a separate thread, so that this thread can send the copy if needed:
+      race = { mutex: Mutex.new, done: ConditionVariable.new, results: [] }
+      attempts = [hedge_attempt(race, primary, started, &block)]
+      race[:mutex].synchronize do
+        deadline = started + delay
+        while race[:results].empty?
+          remaining = deadline - Process.clock_gettime(Process::CLOCK_MONOTONIC)
+          break if remaining <= 0
+          race[:done].wait(race[:mutex], remaining)
+        end
+      end
+
+      # If there is no result yet, send the copy using a client different to the one used for the original request,
+      # and wait for the first result:
+      if race[:mutex].synchronize { race[:results].empty? }
+        copy = factory.call
+        begin
+          send(copy, attempts.first[:index])
+          attempts << hedge_attempt(race, copy, started, &block)
+          @hedge_mutex.synchronize { @hedges_issued += 1 }
+        rescue StandardError
+          # If the copy can't be sent then just keep waiting for the original request:
+          nil
+        end
+      end
+      winner = race[:mutex].synchronize do
+        race[:done].wait(race[:mutex]) while race[:results].empty?
+        race[:results].first
+      end
+
+      # Stop the threads of the requests that lost the race, and cancel them:
+      attempts.each do |attempt|
+        next if attempt[:request].equal?(winner[:request])
+        hedge_cancel(attempt)
+      end
+
+      # Update the counters and the latencies:
+      unless winner[:request].equal?(primary)
+        @hedge_mutex.synchronize { @hedges_won += 1 }
+      end
+      unless winner.key?(:error)
+        record_latency(key, Process.clock_gettime(Process::CLOCK_MONOTONIC) - started)
+      end
+
+      # Return the result, or raise the error:
+      raise winner[:error] if winner.key?(:error)
+      winner[:result]
+    end
+
+    #
+    # Returns the number of copies of requests that have been sent because the original request was slower than
+    # the configured percentile. This is always zero unless the `hedge` option is enabled.
+    #
+    # @return [Integer]
+    #
+    def hedges_issued
+      @hedge_mutex.synchronize { @hedges_issued }
+    end
+
+    #
+    # Returns the number of copies of requests that received the response before the original request. This is always
+    # zero unless the `hedge` option is enabled.
+    #
+    # @return [Integer]
+    #
+    def hedges_won
+      @hedge_mutex.synchronize { @hedges_won }
+    end
+
+    #
+    # Returns the statistics of the HTTP clients used by this connection, combined, and the counters of coalesced
+    # and hedged requests. This doesn't wait for the requests in progress, so it is cheap enough to be called
+    # frequently, for example once per second, in order to tune the `connections`, `pipeline`, `pool` and `compress`
+    # options.
+    #
+    # @return [Hash] A hash containing the cumulative counters of the clients added together (`requests`, `queued`,
+    #   `responses`, `errors`, `timeouts`, `cancelled`, `connections`, `reused`, `handshakes`, `bytes_sent`,
+    #   `bytes_received`, `body_received`, `body_decoded` and `seconds`), the requests that are currently in progress
+    #   and queued in all the clients (`in_progress` and `queue_size`), the largest `max_in_progress` of the clients,
+    #   an array containing the current `limit` of each client, and the `coalesced`, `hedges_issued` and `hedges_won`
+    #   counters of the connection. The compression ratio of the responses is `body_decoded` divided by
+    #   `body_received`.
+    #
+    def stats
+      all = @clients.map(&:stats)
+      result = all.reduce do |total, stats|
+        total.merge(stats) do |name, left, right|
+          case name
+          when :max_in_progress
+            [left, right].max
+          when :limit
+            nil
+          else
+            left + right
+          end
+        end
+      end
+      result.merge(
+        limit: all.map { |stats| stats[:limit] },
+        coalesced: coalesced_requests,
+        hedges_issued: hedges_issued,
+        hedges_won: hedges_won
+      )
     end
 
     #
@@ -244,7 +606,7 @@ module OvirtSDK4
     # @return [String]
     #
     def authenticate
-      @token ||= create_access_token
+      @locks[0].synchronize { ensure_access_token(@clients[0]) }
     end
 
     #
@@ -299,7 +661,7 @@ module OvirtSDK4
     # Releases the resources used by this connection, making sure that multiple threads are coordinated correctly.
     #
     def close
-      @mutex.synchronize { internal_close }
+      synchronize_all(@locks) { internal_close }
     end
 
     #
@@ -456,16 +818,17 @@ module OvirtSDK4
     #
     # Obtains the access token from SSO to be used for bearer authentication.
     #
+    # @param client [HttpClient] The HTTP client that will be used to send the request to the SSO server.
     # @return [String] The access token.
     #
     # @api private
     #
-    def create_access_token
+    def create_access_token(client)
       # Build the URL and parameters required for the request:
       url, parameters = build_sso_auth_request
 
       # Send the request and wait for the request:
-      response = get_sso_response(url, parameters)
+      response = get_sso_response(client, url, parameters)
       response = response[0] if response.is_a?(Array)
 
       # Check the response and raise an error if it contains an error code:
@@ -478,14 +841,16 @@ module OvirtSDK4
     #
     # Revoke the SSO access token.
     #
+    # @param client [HttpClient] The HTTP client that will be used to send the request to the SSO server.
+    #
     # @api private
     #
-    def revoke_access_token
+    def revoke_access_token(client)
       # Build the URL and parameters required for the request:
       url, parameters = build_sso_revoke_request
 
       # Send the request and wait for the response:
-      response = get_sso_response(url, parameters)
+      response = get_sso_response(client, url, parameters)
       response = response[0] if response.is_a?(Array)
 
       # Check the response and raise an error if it contains an error code:
@@ -496,6 +861,8 @@ module OvirtSDK4
     #
     # Execute a get request to the SSO server and return the response.
     #
+    # @param client [HttpClient] The HTTP client that will be used to send the request.
+    #
     # @param url [String] The URL of the SSO server.
     #
     # @param parameters [Hash] The parameters to send to the SSO server.
@@ -504,7 +871,7 @@ module OvirtSDK4
     #
     # @api private
     #
-    def get_sso_response(url, parameters)
+    def get_sso_response(client, url, parameters)
       # Create the request:
       request = HttpRequest.new
       request.method = :POST
@@ -520,8 +887,8 @@ module OvirtSDK4
       request.headers.merge!(@headers) if @headers
 
       # Send the request and wait for the response:
-      @client.send(request)
-      response = @client.wait(request)
+      client.send(request)
+      response = client.wait(request)
       raise response if response.is_a?(Exception)
 
       # Check the returned content type:
@@ -609,14 +976,180 @@ module OvirtSDK4
       "#{code}: #{description}" if code
     end
 
+    #
+    # Selects the HTTP client that will be used to send the given request, and remembers it, so that the response
+    # will later be retrieved from the same client. The client with less requests sent and not yet retrieved is
+    # selected, and when several have the same number of requests they are selected in turns.
+    #
+    # @param request [HttpRequest] The request that will be sent.
+    # @param avoid [Integer] The index of a client that shouldn't be selected, unless it is the only one.
+    # @return [Integer] The index of the selected client.
+    #
+    # @api private
+    #
+    def assign_client(request, avoid = nil)
+      @mutex.synchronize do
+        index = nil
+        @pool.times do |offset|
+          candidate = (@next + offset) % @pool
+          next if candidate == avoid && @pool > 1
+          index = candidate if index.nil? || @in_flight[candidate] < @in_flight[index]
+        end
+        @next = (index + 1) % @pool
+        @in_flight[index] += 1
+        @owners[request] = index
+      end
+    end
+
+    #
+    # Forgets the HTTP client that was selected to send the given request, because its response has been retrieved
+    # or because it has been cancelled.
+    #
+    # @param request [HttpRequest] The request.
+    # @return [Integer] The index of the client that was selected, or `nil` if the request isn't known.
+    #
+    # @api private
+    #
+    def release_client(request)
+      @mutex.synchronize do
+        index = @owners.delete(request)
+        @in_flight[index] -= 1 if index
+        index
+      end
+    end
+
+    #
+    # Returns the number of requests that have been sent with each client of the pool and whose responses haven't
+    # been retrieved yet.
+    #
+    # @return [Array<Integer>] The number of requests of each client.
+    #
+    # @api private
+    #
+    def in_flight
+      @mutex.synchronize { @in_flight.dup }
+    end
+
+    #
+    # Calculates how long to wait for the response to a request of the given method before sending a copy.
+    #
+    # @param key [Object] The object that identifies the method.
+    # @return [Float] The number of seconds to wait, or `nil` if there aren't enough latencies for the method yet.
+    #
+    # @api private
+    #
+    def hedge_delay(key)
+      latencies = @hedge_mutex.synchronize do
+        samples = @latencies[key]
+        samples.dup if samples && samples.size >= HEDGE_MIN_SAMPLES
+      end
+      return nil if latencies.nil?
+      latencies.sort!
+      latencies[(@hedge * (latencies.size - 1)).round]
+    end
+
+    #
+    # Records the latency of a request of the given method, keeping only the most recent ones.
+    #
+    # @param key [Object] The object that identifies the method.
+    # @param latency [Float] The latency, in seconds.
+    #
+    # @api private
+    #
+    def record_latency(key, latency)
+      @hedge_mutex.synchronize do
+        samples = (@latencies[key] ||= [])
+        samples << latency
+        samples.shift if samples.size > HEDGE_MAX_SAMPLES
+      end
+    end
+
+    #
+    # Starts a thread that waits for the result of a request that has already been sent, and adds it to the results
+    # of the race when it is available.
+    #
+    # @param race [Hash] The mutex, the condition and the list of results shared by all the copies of the request.
+    # @param request [HttpRequest] The request that has been sent.
+    # @param started [Float] The monotonic time when the original request was sent.
+    # @yield [request, started] The block that waits for the response to the request and converts it into the result.
+    # @return [Hash] The request, the index of the client used to send it and the thread.
+    #
+    # @api private
+    #
+    def hedge_attempt(race, request, started)
+      index = @mutex.synchronize { @owners[request] }
+      thread = Thread.new do
+        # The thread is stopped when other copy of the request wins the race. That is only accepted while it is
+        # blocked, for example waiting for the response, so that it isn't stopped in the middle of processing the
+        # responses of other requests sent with the same client:
+        outcome = { request: request }
+        Thread.handle_interrupt(Object => :on_blocking) do
+          begin
+            outcome[:result] = yield request, started
+          rescue StandardError => error
+            outcome[:error] = error
+          end
+        end
+        race[:mutex].synchronize do
+          race[:results] << outcome
+          race[:done].signal
+        end
+      end
+      { request: request, index: index, thread: thread }
+    end
+
+    #
+    # Stops the thread that waits for a request that lost the race, and cancels the request, so that the client
+    # doesn't keep processing it.
+    #
+    # @param attempt [Hash] The request, the index of the client used to send it and the thread.
+    #
+    # @api private
+    #
+    def hedge_cancel(attempt)
+      attempt[:thread].thread_variable_set(HEDGE_CANCELLED, true)
+      attempt[:thread].kill
+      attempt[:thread].join
+      request = attempt[:request]
+      index = attempt[:index]
+      release_client(request)
+      @recorder.discard(request) if @recorder
+      @locks[index].synchronize { @clients[index].cancel(request) } if index
+    end
+
+    #
+    # Makes sure that the shared authentication token has been created, creating it if needed.
+    #
+    # @param client [HttpClient] The HTTP client that will be used to send the request to the SSO server, if needed.
+    # @return [String] The authentication token.
+    #
+    # @api private
+    #
+    def ensure_access_token(client)
+      @token_mutex.synchronize { @token ||= create_access_token(client) }
+    end
+
+    #
+    # Acquires all the given locks, in order, and then executes the given block.
+    #
+    # @param locks [Array<Mutex>] The locks to acquire.
+    #
+    # @api private
+    #
+    def synchronize_all(locks, &block)
+      return yield if locks.empty?
+      locks.first.synchronize { synchronize_all(locks.drop(1), &block) }
+    end
+
     #
     # Sends an HTTP request.
     #
     # @param request [HttpRequest] The request object containing the details of the HTTP request to send.
+    # @param client [HttpClient] The HTTP client that will be used to send the request.
     #
     # @api private
     #
-    def internal_send(request)
+    def internal_send(request, client)
       # Add the base URL to the request:
       request.url = request.url.nil? ? request.url = @url : "#{@url}/#{request.url}"
 
@@ -640,34 +1173,38 @@ module OvirtSDK4
       request.headers.merge!(@headers) { |_name, local, _global| local } if @headers
 
       # Set the authentication token:
-      @token ||= create_access_token
-      request.token = @token
+      request.token = ensure_access_token(client)
 
       # Send the request:
-      @client.send(request)
+      client.send(request)
     end
 
     #
     # Waits for the response to the given request.
     #
     # @param request [HttpRequest] The request object whose corresponding response you want to wait for.
+    # @param client [HttpClient] The HTTP client that was used to send the request.
     # @return [Response] A request object containing the details of the HTTP response received.
     #
     # @api private
     #
-    def internal_wait(request)
+    def internal_wait(request, client)
       # Wait for the response:
-      response = @client.wait(request)
+      response = client.wait(request)
       raise response if response.is_a?(Exception)
 
       # If the request failed because of authentication, and it wasn't a request to the SSO service, then the
       # most likely cause is an expired SSO token. In this case we need to request a new token, and try the original
-      # request again, but only once. It if fails again, we just return the failed response.
+      # request again, but only once. It if fails again, we just return the failed response. Note that the token is
+      # shared by all the clients, so it is renewed only if no other thread renewed it already.
       if response.code == 401 && request.token
-        @token = create_access_token
-        request.token = @token
-        @client.send(request)
-        response = @client.wait(request)
+        expired = request.token
+        request.token = @token_mutex.synchronize do
+          @token = create_access_token(client) if @token == expired
+          @token
+        end
+        client.send(request)
+        response = client.wait(request)
       end
 
       response
@@ -680,10 +1217,10 @@ module OvirtSDK4
     #
     def internal_close
       # Revoke the SSO access token:
-      revoke_access_token if @token
+      revoke_access_token(@clients[0]) if @token
 
-      # Close the HTTP client:
-      @client.close if @client
+      # Close the HTTP clients:
+      @clients.each(&:close)
 
       # Remove the temporary file that contains the trusted CA certificates:
       @ca_store.unlink if @ca_store
@@ -0,0 +1,151 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+module OvirtSDK4
+  #
+  # This is the base class for the objects that receive the measurements of the calls to the methods of the
+  # services. It ignores all the measurements, so custom sinks only need to extend it and replace the `record` method.
+  # To use a sink pass it to the connection using the `metrics` option:
+  #
+  # [source,ruby]
+  # ----
+  # metrics = OvirtSDK4::MemoryMetrics.new
+  # connection = OvirtSDK4::Connection.new(
+  #   url: 'https://engine.example.com/ovirt-engine/api',
+  #   username: 'admin@internal',
+  #   password: '...',
+  #   metrics: metrics
+  # )
+  # ----
+  #
+  class Metrics
+    #
+    # Records the measurements of one call to a method of a service. Note that this may be called simultaneously from
+    # multiple threads.
+    #
+    # @param method [String] The name of the method, for example `VmsService#list`.
+    # @param sample [Hash] The measurements of the call.
+    #
+    # @option sample [Float] :latency The number of seconds since the request was sent till the result was available.
+    #
+    # @option sample [Float] :wait The number of seconds since the request was sent till the response was received.
+    #
+    # @option sample [Float] :parse The number of seconds spent checking the response and converting its body into
+    #   the result.
+    #
+    # @option sample [Integer] :sent The number of bytes of the body of the request.
+    #
+    # @option sample [Integer] :received The number of bytes of the body of the response.
+    #
+    # @option sample [Boolean] :error Indicates if the call failed.
+    #
+    def record(method, sample)
+      # Nothing, custom sinks should replace this.
+    end
+  end
+
+  #
+  # This sink keeps in memory the count of calls, the latency histogram and the totals of the rest of the
+  # measurements for each method.
+  #
+  class MemoryMetrics < Metrics
+    #
+    # The upper bounds, in seconds, of the buckets of the latency histograms. Latencies larger than the last bound are
+    # counted in an additional bucket.
+    #
+    BUCKETS = [0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0, 25.0, 60.0].freeze
+
+    #
+    # Creates a new empty sink.
+    #
+    def initialize
+      @mutex = Mutex.new
+      @entries = {}
+    end
+
+    #
+    # Records the measurements of one call to a method of a service.
+    #
+    # @param method [String] The name of the method.
+    # @param sample [Hash] The measurements of the call.
+    #
+    def record(method, sample)
+      latency = sample[:latency]
+      bucket = BUCKETS.index { |bound| latency <= bound } || BUCKETS.size
+      @mutex.synchronize do
+        entry = @entries[method] ||= create_entry
+        entry[:count] += 1
+        entry[:errors] += 1 if sample[:error]
+        entry[:latency] += latency
+        entry[:wait] += sample[:wait] || 0
+        entry[:parse] += sample[:parse] || 0
+        entry[:sent] += sample[:sent] || 0
+        entry[:received] += sample[:received] || 0
+        entry[:histogram][bucket] += 1
+      end
+    end
+
+    #
+    # Returns the measurements of all the methods that have been called.
+    #
+    # @return [Hash<String, Hash>] A hash where the keys are the names of the methods and the values are hashes
+    #   containing the `count`, `errors`, `latency`, `wait`, `parse`, `sent` and `received` totals, and the
+    #   `histogram` array with the number of calls in each of the buckets.
+    #
+    def summary
+      @mutex.synchronize do
+        @entries.each_with_object({}) do |(method, entry), result|
+          result[method] = entry.merge(histogram: entry[:histogram].dup)
+        end
+      end
+    end
+
+    #
+    # Returns the measurements of one method.
+    #
+    # @param method [String] The name of the method, for example `VmsService#list`.
+    # @return [Hash] The measurements of the method, or `nil` if it hasn't been called.
+    #
+    def [](method)
+      @mutex.synchronize do
+        entry = @entries[method]
+        entry.merge(histogram: entry[:histogram].dup) if entry
+      end
+    end
+
+    #
+    # Discards all the measurements.
+    #
+    def reset
+      @mutex.synchronize { @entries.clear }
+    end
+
+    private
+
+    def create_entry
+      {
+        count: 0,
+        errors: 0,
+        latency: 0.0,
+        wait: 0.0,
+        parse: 0.0,
+        sent: 0,
+        received: 0,
+        histogram: Array.new(BUCKETS.size + 1, 0)
+      }
+    end
+  end
+end
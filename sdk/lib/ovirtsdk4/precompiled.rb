@@ -0,0 +1,162 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+require 'digest'
+
+module OvirtSDK4
+  #
+  # This module loads the generated source files from instruction sequence binaries created in advance with the
+  # `precompile` task of the `Rakefile`, so that the interpreter doesn't need to compile the large generated files
+  # each time that the SDK is loaded. The binaries are only used when they were created by the same version of the
+  # interpreter, for the same platform and from the same source, otherwise the source is loaded as usual. To check the
+  # source without reading it the binaries also contain its size and modification time, and its digest is only
+  # calculated when the modification time is different, for example after installing the gem.
+  #
+  # @api private
+  #
+  module Precompiled
+    #
+    # The names of the generated files that are precompiled, relative to the `lib` directory and without extension.
+    #
+    FILES = %w[
+      ovirtsdk4/types
+      ovirtsdk4/readers
+      ovirtsdk4/writers
+      ovirtsdk4/services
+    ].freeze
+
+    #
+    # The extension of the instruction sequence binaries.
+    #
+    EXTENSION = '.yarb'.freeze
+
+    #
+    # Compiles the given generated file and writes the resulting binary next to it.
+    #
+    # @param name [String] The name of the file, relative to the `lib` directory and without extension, for example
+    #   `ovirtsdk4/types`.
+    #
+    # @return [Boolean] `true` if the binary was written, `false` if the interpreter doesn't support it.
+    #
+    def self.compile(name)
+      return false unless supported?
+      source = source_path(name)
+      code = File.read(source)
+      stat = File.stat(source)
+      iseq = RubyVM::InstructionSequence.compile(code, source, source)
+      File.binwrite(binary_path(name), iseq.to_binary(signature(stat, Digest::SHA256.hexdigest(code))))
+      true
+    end
+
+    #
+    # Loads the given generated file, from the binary if it can be used, or from the source otherwise. Like `require`,
+    # it does nothing if the file has already been loaded.
+    #
+    # @param name [String] The name of the file, relative to the `lib` directory and without extension, for example
+    #   `ovirtsdk4/types`.
+    #
+    def self.require(name)
+      source = source_path(name)
+      return if $LOADED_FEATURES.include?(source)
+      iseq = load_binary(name)
+      return Kernel.require(source) if iseq.nil?
+      iseq.eval
+      $LOADED_FEATURES << source
+    end
+
+    #
+    # Returns the instruction sequence loaded from the binary of the given file, or `nil` if the binary doesn't exist
+    # or can't be used.
+    #
+    # @api private
+    #
+    def self.load_binary(name)
+      return nil unless supported?
+      binary = binary_path(name)
+      return nil unless File.file?(binary)
+      data = File.binread(binary)
+      extra = RubyVM::InstructionSequence.load_from_binary_extra_data(data)
+      return nil unless current?(source_path(name), extra)
+      RubyVM::InstructionSequence.load_from_binary(data)
+    rescue StandardError
+      # Binaries created by other versions of the interpreter may fail to load, in that case the source is used.
+      nil
+    end
+
+    #
+    # Checks if the interpreter supports loading instruction sequence binaries.
+    #
+    # @api private
+    #
+    def self.supported?
+      defined?(RubyVM::InstructionSequence) && RubyVM::InstructionSequence.respond_to?(:load_from_binary)
+    end
+
+    #
+    # Checks if the signature stored in a binary corresponds to this interpreter and to the current content of the
+    # given source file. The digest of the source is only calculated if the size matches but the modification time
+    # doesn't.
+    #
+    # @api private
+    #
+    def self.current?(source, extra)
+      prefix = "#{interpreter} "
+      return false unless extra.start_with?(prefix)
+      size, mtime, digest = extra[prefix.length..-1].split(' ')
+      stat = File.stat(source)
+      return false unless size == stat.size.to_s
+      return true if mtime == stat.mtime.to_r.to_s
+      digest == Digest::SHA256.file(source).hexdigest
+    end
+
+    #
+    # Calculates the signature that is stored in the binary: the interpreter, and the size, modification time and
+    # digest of the source.
+    #
+    # @api private
+    #
+    def self.signature(stat, digest)
+      "#{interpreter} #{stat.size} #{stat.mtime.to_r} #{digest}"
+    end
+
+    #
+    # Returns the engine, version and platform of the interpreter, that need to match for the binary to be used.
+    #
+    # @api private
+    #
+    def self.interpreter
+      "#{RUBY_ENGINE} #{RUBY_VERSION} #{RUBY_PLATFORM}"
+    end
+
+    #
+    # Returns the path of the source of the given file.
+    #
+    # @api private
+    #
+    def self.source_path(name)
+      File.join(File.dirname(__dir__), "#{name}.rb")
+    end
+
+    #
+    # Returns the path of the binary of the given file.
+    #
+    # @api private
+    #
+    def self.binary_path(name)
+      File.join(File.dirname(__dir__), "#{name}#{EXTENSION}")
+    end
+  end
+end
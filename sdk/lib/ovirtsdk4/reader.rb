@@ -233,6 +233,29 @@ module OvirtSDK4
     #
     @readers = {}
 
+    #
+    # The registry that receives the statistics of the readers.
+    #
+    @stats = Stats.new
+
+    #
+    # Returns the registry that receives the statistics of the readers.
+    #
+    # @return [Stats]
+    #
+    def self.stats
+      @stats
+    end
+
+    #
+    # Replaces the registry that receives the statistics of the readers.
+    #
+    # @param stats [Stats] The new registry. If it is `nil` the statistics will be ignored.
+    #
+    def self.stats=(stats)
+      @stats = stats || Stats.new
+    end
+
     #
     # Registers a read method.
     #
@@ -271,8 +294,12 @@ module OvirtSDK4
         reader = @readers[tag]
         raise Error, "Can't find a reader for tag '#{tag}'" if reader.nil?
 
-        # Read the object using the specific reader:
-        reader.call(cursor)
+        # Read the object using the specific reader, and send the time and size to the statistics registry:
+        started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+        result = reader.call(cursor)
+        elapsed = Process.clock_gettime(Process::CLOCK_MONOTONIC) - started
+        @stats.record(tag, elapsed, source.is_a?(String) ? source.bytesize : nil)
+        result
       ensure
         cursor.close if !cursor.nil? && !cursor.equal?(source)
       end
@@ -0,0 +1,304 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+require 'json'
+require 'thread'
+require 'zlib'
+
+module OvirtSDK4
+  #
+  # This class records the requests sent by a connection and the responses received, with their timings, so that
+  # they can later be replayed with the {Replayer} class. Each request is written as one line containing a JSON
+  # object, and if the name of the file ends with `.gz` then it is compressed. To use it pass it to the connection
+  # using the `recorder` option:
+  #
+  # [source,ruby]
+  # ----
+  # recorder = OvirtSDK4::Recorder.new('calls.jsonl.gz')
+  # connection = OvirtSDK4::Connection.new(
+  #   url: 'https://engine.example.com/ovirt-engine/api',
+  #   username: 'admin@internal',
+  #   password: '...',
+  #   recorder: recorder
+  # )
+  # ...
+  # connection.close
+  # recorder.close
+  # ----
+  #
+  # Each entry contains the following keys:
+  #
+  # `t`:: The number of seconds since the recorder was created till the request was sent.
+  # `method`:: The HTTP method, for example `GET`.
+  # `path`:: The path of the request, relative to the URL of the connection, for example `vms/123`.
+  # `query`:: The query parameters of the request, omitted if there are none.
+  # `body`:: The body of the request, omitted if there is no body.
+  # `status`:: The HTTP status code of the response, or `nil` if the request failed without a response.
+  # `latency`:: The number of seconds since the request was sent till the response was received.
+  # `size`:: The number of bytes of the body of the response.
+  # `response`:: The body of the response, only when the `bodies` option is `true`.
+  #
+  # Note that the authentication token and the rest of the headers are never recorded.
+  #
+  class Recorder
+    #
+    # Creates a new recorder.
+    #
+    # @param target [String, IO] The name of the file where the entries will be written, or an IO object. If it is a
+    #   file name ending with `.gz` then the file will be compressed.
+    #
+    # @param bodies [Boolean] (false) Indicates if the bodies of the responses should also be recorded. They are
+    #   only needed when the replayed responses will be compared to the recorded ones.
+    #
+    def initialize(target, bodies: false)
+      @bodies = bodies
+      @own = target.is_a?(String)
+      @io = if !@own
+              target
+            elsif target.end_with?('.gz')
+              Zlib::GzipWriter.open(target)
+            else
+              ::File.open(target, 'w')
+            end
+      @start = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      @pending = {}.compare_by_identity
+      @mutex = Mutex.new
+      @count = 0
+    end
+
+    #
+    # Returns the number of entries written so far.
+    #
+    # @return [Integer]
+    #
+    attr_reader :count
+
+    #
+    # Takes note of a request that is about to be sent. This must be called before the connection adds the base URL
+    # to the request.
+    #
+    # @param request [HttpRequest] The request.
+    #
+    # @api private
+    #
+    def started(request)
+      now = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      entry = {
+        't' => (now - @start).round(6),
+        'method' => request.method.to_s,
+        'path' => request.url.to_s
+      }
+      entry['query'] = render_query(request.query) unless request.query.nil? || request.query.empty?
+      entry['body'] = request.body unless request.body.nil?
+      @mutex.synchronize { @pending[request] = [now, entry] }
+    end
+
+    #
+    # Writes the entry corresponding to a request whose response has been received.
+    #
+    # @param request [HttpRequest] The request.
+    # @param response [HttpResponse, Exception] The response, or the exception raised while waiting for it.
+    #
+    # @api private
+    #
+    def finished(request, response)
+      now = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      @mutex.synchronize do
+        sent, entry = @pending.delete(request)
+        return unless entry
+        body = response.is_a?(HttpResponse) ? response.body : nil
+        entry['status'] = response.is_a?(HttpResponse) ? response.code : nil
+        entry['latency'] = (now - sent).round(6)
+        entry['size'] = body ? body.bytesize : 0
+        entry['response'] = body if @bodies
+        @io.write(JSON.generate(entry))
+        @io.write("\n")
+        @count += 1
+      end
+    end
+
+    #
+    # Forgets a request that was cancelled, so that it isn't recorded.
+    #
+    # @param request [HttpRequest] The request.
+    #
+    # @api private
+    #
+    def discard(request)
+      @mutex.synchronize { @pending.delete(request) }
+    end
+
+    #
+    # Flushes the entries and closes the file, if it was opened by the recorder.
+    #
+    def close
+      @mutex.synchronize do
+        if @own
+          @io.close
+        else
+          @io.flush
+        end
+      end
+    end
+
+    private
+
+    def render_query(query)
+      query.each_with_object({}) { |(name, value), result| result[name.to_s] = value.to_s }
+    end
+  end
+
+  #
+  # This class sends again, using a connection, the requests recorded with the {Recorder} class. The requests are
+  # sent preserving the original intervals between them, or accelerated by the given factor, or as fast as possible.
+  # This is intended for load tests, usually against the stub server generated with the `--stub` option of the code
+  # generator, for example:
+  #
+  # [source,ruby]
+  # ----
+  # connection = OvirtSDK4::Connection.new(
+  #   url: 'http://localhost:8080/ovirt-engine/api',
+  #   username: 'admin@internal',
+  #   password: '...',
+  #   pool: 4
+  # )
+  # replayer = OvirtSDK4::Replayer.new(connection, 'calls.jsonl.gz', speed: 10.0)
+  # summary = replayer.run
+  # ----
+  #
+  class Replayer
+    #
+    # Loads the entries from a file written by a recorder.
+    #
+    # @param path [String] The name of the file. If it ends with `.gz` then it is decompressed.
+    # @return [Array<Hash>] The entries, sorted by the time when the requests were sent.
+    #
+    def self.load(path)
+      entries = []
+      io = path.end_with?('.gz') ? Zlib::GzipReader.open(path) : ::File.open(path)
+      begin
+        io.each_line do |line|
+          entries << JSON.parse(line) unless line.strip.empty?
+        end
+      ensure
+        io.close
+      end
+      entries.sort_by { |entry| entry['t'] }
+    end
+
+    #
+    # Creates a new replayer.
+    #
+    # @param connection [Connection] The connection that will be used to send the requests.
+    #
+    # @param source [String, Array<Hash>] The name of the file containing the recorded entries, or the entries.
+    #
+    # @param speed [Float] (1.0) The factor used to accelerate the replay. For example, if the value is 10 then
+    #   requests that were originally sent with one second of difference will be sent with a tenth of a second of
+    #   difference. If the value is `nil` then the requests are sent as fast as possible.
+    #
+    # @param threads [Integer] (4) The number of threads used to send the requests. Requests that are due while all
+    #   the threads are busy will be delayed.
+    #
+    # @param parse [Boolean] (true) Indicates if the bodies of the responses should be parsed, like the services do.
+    #
+    def initialize(connection, source, speed: 1.0, threads: 4, parse: true)
+      raise ArgumentError, "The speed can't be #{speed}, it should be greater than 0" if speed && speed <= 0
+      raise ArgumentError, "The number of threads can't be #{threads}, minimum is 1" if threads < 1
+      @connection = connection
+      @entries = source.is_a?(String) ? Replayer.load(source) : source
+      @speed = speed
+      @threads = threads
+      @parse = parse
+    end
+
+    #
+    # Sends all the requests and waits till all the responses have been received.
+    #
+    # @return [Hash] A hash containing the number of requests sent (`count`), the number of them that failed, or
+    #   whose status was different to the recorded one (`errors`), the total time (`seconds`), and the percentiles
+    #   `p50`, `p90` and `p99` of the latencies of the replayed requests (`latency`) and of the recorded ones
+    #   (`recorded`).
+    #
+    def run
+      queue = Queue.new
+      @entries.each { |entry| queue << entry }
+      latencies = []
+      errors = 0
+      mutex = Mutex.new
+      start = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      workers = Array.new(@threads) do
+        Thread.new do
+          loop do
+            entry = begin
+              queue.pop(true)
+            rescue ThreadError
+              break
+            end
+            wait_until(start, entry)
+            latency, ok = replay(entry)
+            mutex.synchronize do
+              latencies << latency
+              errors += 1 unless ok
+            end
+          end
+        end
+      end
+      workers.each(&:join)
+      {
+        count: latencies.size,
+        errors: errors,
+        seconds: Process.clock_gettime(Process::CLOCK_MONOTONIC) - start,
+        latency: percentiles(latencies),
+        recorded: percentiles(@entries.map { |entry| entry['latency'] }.compact)
+      }
+    end
+
+    private
+
+    def wait_until(start, entry)
+      return unless @speed
+      delay = start + entry['t'] / @speed - Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      sleep(delay) if delay > 0
+    end
+
+    def replay(entry)
+      request = HttpRequest.new
+      request.method = entry['method'].to_sym
+      request.url = entry['path']
+      request.query = entry['query'] || {}
+      request.body = entry['body']
+      sent = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      ok = begin
+        @connection.send(request)
+        response = @connection.wait(request)
+        Reader.read(response.body) if @parse && response.code < 300 && response.body && !response.body.empty?
+        entry['status'].nil? || response.code == entry['status']
+      rescue StandardError
+        false
+      end
+      [Process.clock_gettime(Process::CLOCK_MONOTONIC) - sent, ok]
+    end
+
+    def percentiles(values)
+      sorted = values.sort
+      return {} if sorted.empty?
+      [50, 90, 99].each_with_object({}) do |percentile, result|
+        result["p#{percentile}".to_sym] = sorted[[(sorted.size * percentile / 100.0).ceil - 1, 0].max]
+      end
+    end
+  end
+end
@@ -24,15 +24,23 @@ module OvirtSDK4
     #
     # @param service [Service] The service that created this future.
     # @param request [HttpRequest] The request that this future will wait for when the `wait` method is called.
+    # @param specs [Array<Array<Symbol, Class>>] The parameter specifications of the method that created this future,
+    #   used to find the name of the method when recording metrics and spans.
+    # @param started [Float] The monotonic time when the request was sent, used as the start of the call when
+    #   recording metrics and spans. If `nil` the time when the future is created is used.
     # @param block [Block] The block that will be executed to check the response, and to convert its body into the
     #   right type of object.
     #
     # @api private
     #
-    def initialize(service, request, &block)
+    def initialize(service, request, specs = nil, started = nil, &block)
       @service = service
       @request = request
+      @specs = specs
       @block = block
+      @metrics = service.connection.metrics if service
+      @tracer = service.connection.tracer if service
+      @started = started || Process.clock_gettime(Process::CLOCK_MONOTONIC) if @metrics || @tracer
     end
 
     #
@@ -41,6 +49,7 @@ module OvirtSDK4
     # @return [Object] The result of the operation that created this future.
     #
     def wait
+      return measured_wait if @metrics || @tracer
       response = @service.connection.wait(@request)
       raise response if response.is_a?(Exception)
       @block.call(response)
@@ -63,12 +72,136 @@ module OvirtSDK4
     def to_s
       inspect
     end
+
+    private
+
+    #
+    # Waits till the result is available, like the `wait` method, and sends the measurements to the metrics sink and
+    # the spans to the tracer of the connection. Nothing is sent for copies of hedged requests that are cancelled
+    # because other copy finished first, as from the point of view of the caller they aren't calls.
+    #
+    # @return [Object] The result of the operation that created this future.
+    #
+    def measured_wait
+      body = @request.body
+      sample = { sent: body ? body.bytesize : 0, received: 0, error: true }
+      received = nil
+      response = nil
+      begin
+        response = @service.connection.wait(@request)
+        received = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+        sample[:wait] = received - @started
+        raise response if response.is_a?(Exception)
+        body = response.body
+        sample[:received] = body.bytesize if body
+        result = @block.call(response)
+        sample[:error] = false
+        result
+      ensure
+        record(sample, response, received) unless Thread.current.thread_variable_get(Connection::HEDGE_CANCELLED)
+      end
+    end
+
+    #
+    # Sends the measurements of a completed call to the metrics sink, and its spans to the tracer of the connection.
+    #
+    # @param sample [Hash] The measurements of the call.
+    # @param response [HttpResponse, Exception] The response, or `nil` if waiting for it failed.
+    # @param received [Float] The monotonic time when the response was received, or `nil` if it wasn't received.
+    #
+    def record(sample, response, received)
+      finished = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      sample[:latency] = finished - @started
+      sample[:parse] = finished - received if received
+      name = Service.instrumented_name(@specs) || "#{@service.class.name}##{@request.method}"
+      @metrics.record(name, sample) if @metrics
+      trace(name, sample, response, received, finished) if @tracer
+    end
+
+    #
+    # Sends to the tracer of the connection the spans of a completed call.
+    #
+    # @param name [String] The name of the method, for example `VmsService#list`.
+    # @param sample [Hash] The measurements of the call.
+    # @param response [HttpResponse, Exception] The response, or `nil` if waiting for it failed.
+    # @param received [Float] The monotonic time when the response was received, or `nil` if it wasn't received.
+    # @param finished [Float] The monotonic time when the call finished.
+    #
+    def trace(name, sample, response, received, finished)
+      # The spans use wall clock times, but the measurements use the monotonic clock, so calculate the difference:
+      offset = Time.now.to_f - finished
+      status = response.code if response.is_a?(HttpResponse)
+      call = Span.new(
+        name,
+        nil,
+        Time.at(@started + offset),
+        sample[:latency],
+        { method: @request.method, url: @request.url, status: status, error: sample[:error] }
+      )
+      @tracer.record(call)
+
+      # Add the spans of the HTTP exchange. Note that the times reported by libcurl are cumulative, each one includes
+      # the previous ones. The call starts when the original request is sent, but the copy of a hedged request is sent
+      # later, so the exchange is placed counting back from the time when the response was received:
+      timings = response.timings if response.is_a?(HttpResponse)
+      if timings
+        queue = timings[:queue]
+        total = timings[:total]
+        sent = [Time.at(received + offset - total - queue), call.start].max
+        @tracer.record(Span.new('queue', call, sent, queue, {}))
+        http = Span.new('http', call, sent + queue, total, { received: sample[:received] })
+        @tracer.record(http)
+        dns = timings[:namelookup]
+        connect = timings[:connect]
+        tls = timings[:appconnect]
+        phases = [['dns', 0, dns], ['connect', dns, connect], ['tls', connect, tls]].select { |_, from, to| to > from }
+        phases << ['ttfb', timings[:pretransfer], timings[:starttransfer]]
+        phases << ['transfer', timings[:starttransfer], total]
+        phases.each do |phase, from, to|
+          @tracer.record(Span.new(phase, http, http.start + from, to - from, {}))
+        end
+      end
+
+      # Add the span of the parsing of the response:
+      @tracer.record(Span.new('parse', call, Time.at(received + offset), finished - received, {})) if received
+    end
   end
 
   #
   # This is the base class for all the services of the SDK. It contains the utility methods used by all of them.
   #
   class Service
+    #
+    # The names of the methods of the services, indexed by their parameter specifications.
+    #
+    INSTRUMENTED_NAMES = {}.compare_by_identity
+    private_constant :INSTRUMENTED_NAMES
+
+    #
+    # Registers the name of a method of the service, so that the measurements of its calls can be associated to it.
+    # This is called by the generated code for each method.
+    #
+    # @param specs [Array<Array<Symbol, Class>>] The parameter specifications of the method.
+    # @param method [Symbol] The name of the method, for example `:list`.
+    #
+    # @api private
+    #
+    def self.instrument(specs, method)
+      INSTRUMENTED_NAMES[specs] = "#{name.split('::').last}##{method}".freeze
+    end
+
+    #
+    # Returns the name of the method that has the given parameter specifications.
+    #
+    # @param specs [Array<Array<Symbol, Class>>] The parameter specifications of the method.
+    # @return [String] The name of the method, for example `VmsService#list`, or `nil` if it isn't registered.
+    #
+    # @api private
+    #
+    def self.instrumented_name(specs)
+      INSTRUMENTED_NAMES[specs]
+    end
+
     #
     # Creates a new implementation of the service.
     #
@@ -181,15 +314,20 @@ module OvirtSDK4
       # Check the remaining options:
       check_bad_opts(specs, opts)
 
-      # Create and send the request:
-      request = HttpRequest.new
-      request.method = :GET
-      request.url = absolute_path
-      request.headers = headers
-      request.query = query
-      request.timeout = timeout
-      connection.send(request)
-      result = Future.new(self, request) do |response|
+      # Create the block that creates the request. When hedging is enabled it may be called more than once, so it
+      # copies the headers and the query, as they are modified when the request is sent:
+      factory = proc do
+        request = HttpRequest.new
+        request.method = :GET
+        request.url = absolute_path
+        request.headers = headers.dup
+        request.query = query.dup
+        request.timeout = timeout
+        request
+      end
+
+      # Create the block that checks the response and converts its body into the result:
+      block = proc do |response|
         raise response if response.is_a?(Exception)
         case response.code
         when 200
@@ -198,8 +336,35 @@ module OvirtSDK4
           check_fault(response)
         end
       end
-      result = result.wait if wait
-      result
+
+      # If the caller wants to wait for the result, then send the request and wait for the response, hedging the
+      # request if enabled:
+      fetch = proc do
+        if connection.hedge?
+          connection.hedge(specs, factory) do |attempt, started|
+            Future.new(self, attempt, specs, started, &block).wait
+          end
+        else
+          request = factory.call
+          started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+          connection.send(request)
+          Future.new(self, request, specs, started, &block).wait
+        end
+      end
+
+      # If coalescing is enabled, and the caller wants to wait for the result, then send the request only if there
+      # isn't an identical one already in progress:
+      if wait && connection.coalesce?
+        key = [absolute_path, query.dup, headers.dup, timeout].freeze
+        return connection.coalesce(key, &fetch)
+      end
+      return fetch.call if wait
+
+      # Send the request:
+      request = factory.call
+      started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      connection.send(request)
+      Future.new(self, request, specs, started, &block)
     end
 
     #
@@ -238,8 +403,9 @@ module OvirtSDK4
       request.query = query
       request.body = Writer.write(object, indent: true)
       request.timeout = timeout
+      started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
       connection.send(request)
-      result = Future.new(self, request) do |response|
+      result = Future.new(self, request, specs, started) do |response|
         raise response if response.is_a?(Exception)
         case response.code
         when 200, 201, 202
@@ -288,8 +454,9 @@ module OvirtSDK4
       request.query = query
       request.body = Writer.write(object, indent: true)
       request.timeout = timeout
+      started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
       connection.send(request)
-      result = Future.new(self, request) do |response|
+      result = Future.new(self, request, specs, started) do |response|
         raise response if response.is_a?(Exception)
         case response.code
         when 200
@@ -334,8 +501,9 @@ module OvirtSDK4
       request.headers = headers
       request.query = query
       request.timeout = timeout
+      started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
       connection.send(request)
-      result = Future.new(self, request) do |response|
+      result = Future.new(self, request, specs, started) do |response|
         raise response if response.is_a?(Exception)
         check_fault(response) unless response.code == 200
       end
@@ -380,8 +548,9 @@ module OvirtSDK4
       request.query = query
       request.body = Writer.write(action, indent: true)
       request.timeout = timeout
+      started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
       connection.send(request)
-      result = Future.new(self, request) do |response|
+      result = Future.new(self, request, specs, started) do |response|
         raise response if response.is_a?(Exception)
         case response.code
         when 200, 201, 202
@@ -0,0 +1,205 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+module OvirtSDK4
+  #
+  # This is the base class for the registries that receive the statistics of the XML readers and writers. It ignores
+  # all the statistics, and it is the registry used by default. To collect the statistics assign a different registry
+  # to the readers or to the writers:
+  #
+  # [source,ruby]
+  # ----
+  # OvirtSDK4::Reader.stats = OvirtSDK4::MemoryStats.new
+  # OvirtSDK4::Writer.stats = OvirtSDK4::MemoryStats.new
+  # ----
+  #
+  # Note that the number of objects and skipped elements are only reported when the readers and writers have been
+  # generated with the `--instrument` option.
+  #
+  class Stats
+    #
+    # Counts one object read or written.
+    #
+    # @param type [Class] The type of the object, for example `Vm`.
+    #
+    def count_object(type)
+      # Nothing, custom registries should replace this.
+    end
+
+    #
+    # Counts one element that was skipped by a reader because it doesn't correspond to any attribute or link of the
+    # type.
+    #
+    # @param type [Class] The type of the object that was being read when the element was found.
+    # @param tag [String] The name of the skipped element.
+    #
+    def count_skipped(type, tag)
+      # Nothing, custom registries should replace this.
+    end
+
+    #
+    # Counts one element found by a reader inside an object, including the elements that are skipped.
+    #
+    # @param type [Class] The type of the object that was being read when the element was found.
+    # @param tag [String] The name of the element.
+    #
+    def count_element(type, tag)
+      # Nothing, custom registries should replace this.
+    end
+
+    #
+    # Records one complete read or write of a document.
+    #
+    # @param name [String] The name of the root element of the document, for example `vms`. For documents written
+    #   without an explicit root element this will be the name of the type of the object, for example `Vm`.
+    # @param seconds [Float] The number of seconds spent reading or writing the document.
+    # @param bytes [Integer] The size of the document, or `nil` if it isn't known.
+    #
+    def record(name, seconds, bytes)
+      # Nothing, custom registries should replace this.
+    end
+  end
+
+  #
+  # This registry keeps the statistics in memory.
+  #
+  class MemoryStats < Stats
+    #
+    # Creates a new empty registry.
+    #
+    def initialize
+      @mutex = Mutex.new
+      @objects = Hash.new(0)
+      @skipped = Hash.new(0)
+      @elements = Hash.new(0)
+      @documents = {}
+    end
+
+    #
+    # Counts one object read or written.
+    #
+    # @param type [Class] The type of the object.
+    #
+    def count_object(type)
+      @mutex.synchronize { @objects[type] += 1 }
+    end
+
+    #
+    # Counts one skipped element.
+    #
+    # @param type [Class] The type of the object that was being read.
+    # @param tag [String] The name of the skipped element.
+    #
+    def count_skipped(type, tag)
+      @mutex.synchronize { @skipped[[type, tag]] += 1 }
+    end
+
+    #
+    # Counts one element found inside an object.
+    #
+    # @param type [Class] The type of the object that was being read.
+    # @param tag [String] The name of the element.
+    #
+    def count_element(type, tag)
+      @mutex.synchronize { @elements[[type, tag]] += 1 }
+    end
+
+    #
+    # Records one complete read or write of a document.
+    #
+    # @param name [String] The name of the root element of the document.
+    # @param seconds [Float] The number of seconds spent.
+    # @param bytes [Integer] The size of the document, or `nil` if it isn't known.
+    #
+    def record(name, seconds, bytes)
+      @mutex.synchronize do
+        entry = @documents[name] ||= { count: 0, seconds: 0.0, bytes: 0 }
+        entry[:count] += 1
+        entry[:seconds] += seconds
+        entry[:bytes] += bytes if bytes
+      end
+    end
+
+    #
+    # Returns the number of objects read or written for each type.
+    #
+    # @return [Hash<Class, Integer>]
+    #
+    def objects
+      @mutex.synchronize { Hash[@objects] }
+    end
+
+    #
+    # Returns the number of elements skipped for each type and tag.
+    #
+    # @return [Hash<Array(Class, String), Integer>]
+    #
+    def skipped
+      @mutex.synchronize { Hash[@skipped] }
+    end
+
+    #
+    # Returns the number of elements found for each type and tag.
+    #
+    # @return [Hash<Array(Class, String), Integer>]
+    #
+    def elements
+      @mutex.synchronize { Hash[@elements] }
+    end
+
+    #
+    # Returns the number of elements found for each type and tag in the format expected by the `--tag-profile` option
+    # of the code generator, so that the generated readers check the most frequent elements first. For example:
+    #
+    # [source,ruby]
+    # ----
+    # File.write('profile.json', JSON.generate(stats.element_profile))
+    # ----
+    #
+    # @return [Hash<String, Hash<String, Integer>>] A hash where the keys are the names of the types, without the
+    #   module, and the values are hashes containing the number of times that each tag was found.
+    #
+    def element_profile
+      elements.each_with_object({}) do |((type, tag), count), result|
+        (result[type.name.split('::').last] ||= {})[tag] = count
+      end
+    end
+
+    #
+    # Returns the number of documents, the time spent and the number of bytes for each root element.
+    #
+    # @return [Hash<String, Hash>] A hash where the keys are the names of the root elements and the values are hashes
+    #   containing the `count`, `seconds` and `bytes` totals.
+    #
+    def documents
+      @mutex.synchronize do
+        @documents.each_with_object({}) { |(name, entry), result| result[name] = entry.dup }
+      end
+    end
+
+    #
+    # Discards all the statistics.
+    #
+    def reset
+      @mutex.synchronize do
+        @objects.clear
+        @skipped.clear
+        @elements.clear
+        @documents.clear
+      end
+    end
+  end
+end
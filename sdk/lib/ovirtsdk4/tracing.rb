@@ -0,0 +1,117 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+require 'thread'
+
+module OvirtSDK4
+  #
+  # A span describes a piece of work done during a call to a method of a service.
+  #
+  # @!attribute name
+  #   @return [String] The name of the span. For the call itself this is the name of the method, for example
+  #     `VmsService#list`. For the rest of the spans it is `queue`, `http`, `dns`, `connect`, `tls`, `ttfb`,
+  #     `transfer` or `parse`.
+  #
+  # @!attribute parent
+  #   @return [Span] The span that contains this one, or `nil` for the span of the call itself.
+  #
+  # @!attribute start
+  #   @return [Time] The time when the work started.
+  #
+  # @!attribute duration
+  #   @return [Float] The number of seconds that the work took.
+  #
+  # @!attribute attributes
+  #   @return [Hash] Additional details of the work, for example the HTTP method, the URL and the status code.
+  #
+  Span = Struct.new(:name, :parent, :start, :duration, :attributes)
+
+  #
+  # This is the base class for the tracers that receive the spans of the calls to the methods of the services. It
+  # ignores all the spans, so custom tracers, for example the ones that forward the spans to a distributed tracing
+  # system, only need to extend it and replace the `record` method. To use a tracer pass it to the connection using
+  # the `tracer` option:
+  #
+  # [source,ruby]
+  # ----
+  # tracer = OvirtSDK4::MemoryTracer.new
+  # connection = OvirtSDK4::Connection.new(
+  #   url: 'https://engine.example.com/ovirt-engine/api',
+  #   username: 'admin@internal',
+  #   password: '...',
+  #   tracer: tracer
+  # )
+  # ----
+  #
+  # For each call the tracer receives the span of the call itself, and then the spans contained in it:
+  #
+  # `queue`:: The time since the request was sent till it was submitted to libcurl, including the time waiting for
+  #   other requests when the `connections`, `pipeline` or `adaptive` options limit the requests in progress.
+  # `http`:: The HTTP exchange, as measured by libcurl. It contains the `dns`, `connect`, `tls`, `ttfb` and
+  #   `transfer` spans. The `dns`, `connect` and `tls` spans are only reported when they took some time, so they are
+  #   usually missing when a connection is reused.
+  # `parse`:: The time spent checking the response and converting its body into the result.
+  #
+  class Tracer
+    #
+    # Records one span. Note that this may be called simultaneously from multiple threads.
+    #
+    # @param span [Span] The span.
+    #
+    def record(span)
+      # Nothing, custom tracers should replace this.
+    end
+  end
+
+  #
+  # This tracer keeps in memory all the spans that it receives. It is intended for tests and for short debugging
+  # sessions, as the number of spans grows without limit.
+  #
+  class MemoryTracer < Tracer
+    #
+    # Creates a new empty tracer.
+    #
+    def initialize
+      @mutex = Mutex.new
+      @spans = []
+    end
+
+    #
+    # Records one span.
+    #
+    # @param span [Span] The span.
+    #
+    def record(span)
+      @mutex.synchronize { @spans << span }
+    end
+
+    #
+    # Returns the spans recorded so far, in the order they were received.
+    #
+    # @return [Array<Span>]
+    #
+    def spans
+      @mutex.synchronize { @spans.dup }
+    end
+
+    #
+    # Discards all the spans.
+    #
+    def reset
+      @mutex.synchronize { @spans.clear }
+    end
+  end
+end
@@ -146,6 +146,29 @@ module OvirtSDK4
     #
     @writers = {}
 
+    #
+    # The registry that receives the statistics of the writers.
+    #
+    @stats = Stats.new
+
+    #
+    # Returns the registry that receives the statistics of the writers.
+    #
+    # @return [Stats]
+    #
+    def self.stats
+      @stats
+    end
+
+    #
+    # Replaces the registry that receives the statistics of the writers.
+    #
+    # @param stats [Stats] The new registry. If it is `nil` the statistics will be ignored.
+    #
+    def self.stats=(stats)
+      @stats = stats || Stats.new
+    end
+
     #
     # Registers a write method.
     #
@@ -192,6 +215,7 @@ module OvirtSDK4
       end
 
       # Do the actual write, and make sure to always close the XML writer if we created it:
+      started = Process.clock_gettime(Process::CLOCK_MONOTONIC)
       begin
         if object.is_a?(Array)
           # For arrays we can't decide which tag to use, so the 'root' parameter is mandatory in this case:
@@ -213,8 +237,13 @@ module OvirtSDK4
           writer.call(object, cursor, root)
         end
 
-        # If no XML cursor was explicitly given, and we created it, then we need to return the generated XML text:
-        cursor.string if target.nil?
+        # If no XML cursor was explicitly given, and we created it, then this is a complete document, so we need to
+        # send the time and size to the statistics registry, and return the generated XML text:
+        return if target
+        text = cursor.string
+        elapsed = Process.clock_gettime(Process::CLOCK_MONOTONIC) - started
+        @stats.record(root || object.class.name.split('::').last, elapsed, text.bytesize)
+        text
       ensure
         cursor.close if !cursor.nil? && !cursor.equal?(target)
       end
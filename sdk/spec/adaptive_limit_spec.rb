@@ -0,0 +1,146 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe 'adaptive limit' do
+  before(:all) do
+    start_server
+    @behaviour = { delay: 0, download: 0, status: 200 }
+    mount_raw(path: "#{test_prefix}/vms") do |request, response|
+      next unless check_auth(request, response)
+      sleep(@behaviour[:delay])
+      response.content_type = APPLICATION_XML
+      response.status = @behaviour[:status]
+      download = @behaviour[:download]
+      if download > 0
+        # Send the headers immediately and the body after the download delay, simulating a large response:
+        response.chunked = true
+        response.body = proc do |out|
+          sleep(download)
+          out.write('<vms/>')
+        end
+      else
+        response.body = '<vms/>'
+      end
+    end
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  before(:each) do
+    @behaviour[:delay] = 0.05
+    @behaviour[:download] = 0
+    @behaviour[:status] = 200
+  end
+
+  after(:each) do
+    @client.close if @client
+  end
+
+  def create_client(opts = {})
+    @client = SDK::HttpClient.new(
+      {
+        ca_file: test_ca_file,
+        debug: test_debug,
+        log: test_log
+      }.merge(opts)
+    )
+  end
+
+  def create_request
+    request = SDK::HttpRequest.new
+    request.method = :GET
+    request.url = "#{test_url}/vms"
+    request.username = test_user
+    request.password = test_password
+    request
+  end
+
+  #
+  # Sends the given number of batches of simultaneous requests, waiting for the responses of each batch before
+  # sending the next one.
+  #
+  def send_batches(batches, size)
+    batches.times do
+      requests = Array.new(size) { create_request }
+      requests.each { |request| @client.send(request) }
+      requests.each { |request| @client.wait(request) }
+    end
+  end
+
+  it 'uses the max limit from the beginning if not enabled' do
+    create_client(connections: 4)
+    expect(@client.limit).to eql(4)
+  end
+
+  it 'starts with a limit of one request if enabled' do
+    create_client(connections: 4, adaptive: true)
+    expect(@client.limit).to eql(1)
+  end
+
+  it 'queues the requests that exceed the limit' do
+    create_client(connections: 4, adaptive: true)
+    requests = Array.new(3) { create_request }
+    requests.each { |request| @client.send(request) }
+    expect(@client.queue_size).to eql(2)
+    requests.each { |request| @client.wait(request) }
+    expect(@client.queue_size).to eql(0)
+  end
+
+  it 'increases the limit while the responses are fast' do
+    create_client(connections: 4, adaptive: true)
+    send_batches(10, 4)
+    expect(@client.limit).to be > 1
+    expect(@client.limit).to be <= 4
+  end
+
+  it 'decreases the limit when the server is unavailable' do
+    create_client(connections: 4, adaptive: true)
+    send_batches(10, 4)
+    limit = @client.limit
+    @behaviour[:status] = 503
+    send_batches(1, 4)
+    expect(@client.limit).to be < limit
+  end
+
+  it 'decreases the limit when the latency grows' do
+    create_client(connections: 4, adaptive: true)
+    send_batches(10, 4)
+    limit = @client.limit
+    @behaviour[:delay] = 0.5
+    send_batches(1, 4)
+    expect(@client.limit).to be < limit
+  end
+
+  it 'submits the queued requests when the awaited response is already available' do
+    create_client(connections: 4, adaptive: true)
+    requests = Array.new(3) { create_request }
+    requests.each { |request| @client.send(request) }
+    @client.wait(requests.first)
+    expect(@client.queue_size).to be < 2
+    requests.drop(1).each { |request| @client.wait(request) }
+  end
+
+  it 'does not decrease the limit when only the download of the body is slow' do
+    create_client(connections: 4, adaptive: true)
+    send_batches(10, 4)
+    limit = @client.limit
+    @behaviour[:download] = 0.5
+    send_batches(1, 4)
+    expect(@client.limit).to be >= limit
+  end
+end
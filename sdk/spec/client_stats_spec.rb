@@ -0,0 +1,119 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe 'client statistics' do
+  before(:all) do
+    start_server
+    mount_xml(path: 'vms', body: '<vms><vm id="123"/></vms>', delay: 0.05)
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  after(:each) do
+    @client.close if @client
+    @connection.close if @connection
+  end
+
+  def create_request
+    request = SDK::HttpRequest.new
+    request.method = :GET
+    request.url = "#{test_url}/vms"
+    request.username = test_user
+    request.password = test_password
+    request
+  end
+
+  describe SDK::HttpClient do
+    before(:each) do
+      @client = SDK::HttpClient.new(ca_file: test_ca_file, debug: test_debug, log: test_log)
+    end
+
+    it 'starts with all the counters set to zero' do
+      stats = @client.stats
+      expect(stats[:requests]).to eql(0)
+      expect(stats[:responses]).to eql(0)
+      expect(stats[:bytes_received]).to eql(0)
+      expect(stats[:in_progress]).to eql(0)
+    end
+
+    it 'counts the requests, the responses and the bytes' do
+      3.times do
+        request = create_request
+        @client.send(request)
+        @client.wait(request)
+      end
+      stats = @client.stats
+      expect(stats[:requests]).to eql(3)
+      expect(stats[:responses]).to eql(3)
+      expect(stats[:errors]).to eql(0)
+      expect(stats[:bytes_sent]).to be > 0
+      expect(stats[:bytes_received]).to be > stats[:body_received]
+      expect(stats[:body_decoded]).to be > 0
+      expect(stats[:seconds]).to be >= 0.15
+    end
+
+    it 'counts the connections that are reused' do
+      2.times do
+        request = create_request
+        @client.send(request)
+        @client.wait(request)
+      end
+      stats = @client.stats
+      expect(stats[:connections]).to eql(1)
+      expect(stats[:reused]).to eql(1)
+      expect(stats[:handshakes]).to eql(1)
+    end
+
+    it 'counts the queued requests and the requests in progress' do
+      requests = Array.new(3) { create_request }
+      requests.each { |request| @client.send(request) }
+      stats = @client.stats
+      expect(stats[:limit]).to eql(1)
+      expect(stats[:queued]).to eql(2)
+      expect(stats[:queue_size]).to eql(2)
+      expect(stats[:in_progress]).to eql(1)
+      requests.each { |request| @client.wait(request) }
+      stats = @client.stats
+      expect(stats[:queue_size]).to eql(0)
+      expect(stats[:in_progress]).to eql(0)
+      expect(stats[:max_in_progress]).to eql(1)
+    end
+
+    it 'counts the cancelled requests' do
+      request = create_request
+      @client.send(request)
+      @client.cancel(request)
+      expect(@client.stats[:cancelled]).to eql(1)
+    end
+  end
+
+  describe SDK::Connection do
+    it 'combines the statistics of all the clients of the pool' do
+      @connection = SDK::Connection.new(test_connection_options.merge(pool: 2))
+      vms_service = @connection.system_service.vms_service
+      threads = Array.new(2) { Thread.new { vms_service.list } }
+      threads.each(&:join)
+      stats = @connection.stats
+      expect(stats[:responses]).to be >= 2
+      expect(stats[:limit]).to eql([1, 1])
+      expect(stats[:max_in_progress]).to eql(1)
+      expect(stats[:coalesced]).to eql(0)
+      expect(stats[:hedges_issued]).to eql(0)
+    end
+  end
+end
@@ -0,0 +1,119 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe SDK::MemoryMetrics do
+  let(:metrics) { SDK::MemoryMetrics.new }
+
+  it 'counts the calls of each method' do
+    metrics.record('VmsService#list', latency: 0.1)
+    metrics.record('VmsService#list', latency: 0.2)
+    metrics.record('VmService#get', latency: 0.3)
+    expect(metrics['VmsService#list'][:count]).to eql(2)
+    expect(metrics['VmService#get'][:count]).to eql(1)
+  end
+
+  it 'counts the errors' do
+    metrics.record('VmsService#list', latency: 0.1, error: true)
+    metrics.record('VmsService#list', latency: 0.1, error: false)
+    expect(metrics['VmsService#list'][:errors]).to eql(1)
+  end
+
+  it 'adds the bytes sent and received' do
+    metrics.record('VmsService#add', latency: 0.1, sent: 10, received: 20)
+    metrics.record('VmsService#add', latency: 0.1, sent: 30, received: 40)
+    expect(metrics['VmsService#add'][:sent]).to eql(40)
+    expect(metrics['VmsService#add'][:received]).to eql(60)
+  end
+
+  it 'puts the latencies in the right buckets' do
+    metrics.record('VmsService#list', latency: 0.0005)
+    metrics.record('VmsService#list', latency: 0.3)
+    metrics.record('VmsService#list', latency: 100)
+    histogram = metrics['VmsService#list'][:histogram]
+    expect(histogram.first).to eql(1)
+    expect(histogram[SDK::MemoryMetrics::BUCKETS.index(0.5)]).to eql(1)
+    expect(histogram.last).to eql(1)
+  end
+
+  it 'returns nil for methods that have not been called' do
+    expect(metrics['VmsService#list']).to be_nil
+  end
+
+  it 'discards the measurements when reset' do
+    metrics.record('VmsService#list', latency: 0.1)
+    metrics.reset
+    expect(metrics.summary).to be_empty
+  end
+end
+
+describe 'service metrics' do
+  before(:all) do
+    start_server
+    mount_xml(path: 'vms', body: '<vms><vm id="123"/></vms>', delay: 0.1)
+    mount_xml(path: 'vms/123', status: 404, body: '<fault><reason>Not found</reason></fault>')
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  after(:each) do
+    @connection.close
+  end
+
+  it 'does not measure anything by default' do
+    @connection = test_connection
+    expect(@connection.metrics).to be_nil
+    @connection.system_service.vms_service.list
+  end
+
+  context 'when a sink is configured' do
+    before(:each) do
+      @metrics = SDK::MemoryMetrics.new
+      @connection = SDK::Connection.new(test_connection_options.merge(metrics: @metrics))
+    end
+
+    it 'records the calls using the name of the method' do
+      @connection.system_service.vms_service.list
+      entry = @metrics['VmsService#list']
+      expect(entry[:count]).to eql(1)
+      expect(entry[:errors]).to eql(0)
+      expect(entry[:received]).to be > 0
+    end
+
+    it 'splits the latency into wait and parse time' do
+      @connection.system_service.vms_service.list
+      entry = @metrics['VmsService#list']
+      expect(entry[:wait]).to be >= 0.1
+      expect(entry[:parse]).to be >= 0
+      expect(entry[:latency]).to be >= entry[:wait]
+    end
+
+    it 'records failed calls as errors' do
+      expect { @connection.system_service.vms_service.vm_service('123').get }.to raise_error(SDK::Error)
+      entry = @metrics['VmService#get']
+      expect(entry[:count]).to eql(1)
+      expect(entry[:errors]).to eql(1)
+    end
+
+    it 'records calls that do not wait for the result when the result is retrieved' do
+      future = @connection.system_service.vms_service.list(wait: false)
+      expect(@metrics['VmsService#list']).to be_nil
+      future.wait
+      expect(@metrics['VmsService#list'][:count]).to eql(1)
+    end
+  end
+end
@@ -43,4 +43,87 @@ describe 'multiple thread support' do
     events_thread.join
     users_thread.join
   end
+
+  context 'with a pool of clients' do
+    #
+    # Runs the given number of threads, each of them sending the given number of requests using the given connection,
+    # and returns the total elapsed time, in seconds.
+    #
+    def measure(connection, threads, requests)
+      service = connection.system_service.vms_service
+      start = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+      workers = Array.new(threads) do
+        Thread.new do
+          requests.times do
+            service.list
+          end
+        end
+      end
+      workers.each(&:join)
+      Process.clock_gettime(Process::CLOCK_MONOTONIC) - start
+    end
+
+    before(:all) do
+      mount_xml(path: 'vms', body: '<vms/>', delay: 0.1)
+    end
+
+    it 'supports multiple threads using simultaneously the same pooled connection' do
+      connection = SDK::Connection.new(test_connection_options.merge(pool: 4))
+      begin
+        measure(connection, 8, 5)
+      ensure
+        connection.close
+      end
+    end
+
+    it 'scales the request throughput with the number of threads' do
+      serial = SDK::Connection.new(test_connection_options)
+      pooled = SDK::Connection.new(test_connection_options.merge(pool: 4))
+      begin
+        serial_time = measure(serial, 4, 5)
+        pooled_time = measure(pooled, 4, 5)
+        test_log.info(
+          "Sent 20 requests from 4 threads in #{serial_time.round(3)} s with one client, and " \
+          "in #{pooled_time.round(3)} s with a pool of 4 clients"
+        )
+        expect(pooled_time).to be < serial_time / 2
+      ensure
+        serial.close
+        pooled.close
+      end
+    end
+
+    it 'shares the authentication token between the clients of the pool' do
+      connection = SDK::Connection.new(test_connection_options.merge(pool: 4))
+      begin
+        measure(connection, 4, 1)
+        expect(connection.authenticate).to eql(test_token)
+      ensure
+        connection.close
+      end
+    end
+
+    it 'sends requests using the client with less requests in progress' do
+      connection = SDK::Connection.new(test_connection_options.merge(pool: 2))
+      begin
+        service = connection.system_service.vms_service
+        first = service.list(wait: false)
+        second = service.list(wait: false)
+        expect(connection.in_flight).to eql([1, 1])
+        second.wait
+        expect(connection.in_flight).to eql([1, 0])
+        third = service.list(wait: false)
+        expect(connection.in_flight).to eql([1, 1])
+        first.wait
+        third.wait
+        expect(connection.in_flight).to eql([0, 0])
+      ensure
+        connection.close
+      end
+    end
+
+    it 'rejects a pool without clients' do
+      expect { SDK::Connection.new(test_connection_options.merge(pool: 0)) }.to raise_error(ArgumentError, /pool/)
+    end
+  end
 end
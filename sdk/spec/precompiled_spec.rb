@@ -0,0 +1,84 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe SDK::Precompiled do
+  let(:name) { 'ovirtsdk4/version' }
+  let(:binary) { SDK::Precompiled.binary_path(name) }
+
+  after(:each) do
+    File.delete(binary) if File.exist?(binary)
+  end
+
+  it 'doesn\'t use a binary that doesn\'t exist' do
+    expect(SDK::Precompiled.load_binary(name)).to be_nil
+  end
+
+  it 'doesn\'t use a binary that can\'t be loaded' do
+    File.binwrite(binary, 'junk')
+    expect(SDK::Precompiled.load_binary(name)).to be_nil
+  end
+
+  context 'when the interpreter supports instruction sequence binaries' do
+    before(:each) do
+      skip 'instruction sequence binaries not supported' unless SDK::Precompiled.supported?
+    end
+
+    it 'uses the binary created from the same source' do
+      expect(SDK::Precompiled.compile(name)).to be true
+      expect(SDK::Precompiled.load_binary(name)).not_to be_nil
+    end
+
+    it 'doesn\'t use the binary created by a different interpreter' do
+      SDK::Precompiled.compile(name)
+      allow(SDK::Precompiled).to receive(:interpreter).and_return('other')
+      expect(SDK::Precompiled.load_binary(name)).to be_nil
+    end
+
+    it 'doesn\'t calculate the digest of the source if it hasn\'t been modified' do
+      SDK::Precompiled.compile(name)
+      expect(Digest::SHA256).not_to receive(:file)
+      expect(SDK::Precompiled.load_binary(name)).not_to be_nil
+    end
+
+    context 'when the modification time of the source is different' do
+      let(:source) { SDK::Precompiled.source_path(name) }
+      let(:stat) { File.stat(source) }
+
+      before(:each) do
+        SDK::Precompiled.compile(name)
+        allow(File).to receive(:stat).and_call_original
+      end
+
+      it 'uses the binary if the digest of the source matches' do
+        allow(File).to receive(:stat).with(source).and_return(double(size: stat.size, mtime: stat.mtime + 60))
+        expect(Digest::SHA256).to receive(:file).and_call_original
+        expect(SDK::Precompiled.load_binary(name)).not_to be_nil
+      end
+
+      it 'doesn\'t use the binary if the digest of the source doesn\'t match' do
+        allow(File).to receive(:stat).with(source).and_return(double(size: stat.size, mtime: stat.mtime + 60))
+        allow(Digest::SHA256).to receive(:file).and_return(Digest::SHA256.new.update('other'))
+        expect(SDK::Precompiled.load_binary(name)).to be_nil
+      end
+
+      it 'doesn\'t use the binary if the size of the source is different' do
+        allow(File).to receive(:stat).with(source).and_return(double(size: stat.size + 1, mtime: stat.mtime))
+        expect(Digest::SHA256).not_to receive(:file)
+        expect(SDK::Precompiled.load_binary(name)).to be_nil
+      end
+    end
+  end
+end
@@ -0,0 +1,99 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+require 'stringio'
+
+describe 'recording and replay' do
+  before(:all) do
+    start_server
+    mount_xml(path: 'vms', body: '<vms><vm id="123"/></vms>')
+    mount_xml(path: 'vms/123', body: '<vm id="123"/>')
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  def record(bodies = false)
+    io = StringIO.new
+    recorder = SDK::Recorder.new(io, bodies: bodies)
+    connection = SDK::Connection.new(test_connection_options.merge(recorder: recorder))
+    begin
+      yield connection
+    ensure
+      connection.close
+      recorder.close
+    end
+    io.string.lines.map { |line| JSON.parse(line) }
+  end
+
+  it 'is disabled by default' do
+    connection = test_connection
+    expect(connection.recorder).to be_nil
+    connection.close
+  end
+
+  it 'records the requests and the responses' do
+    entries = record do |connection|
+      connection.system_service.vms_service.list(search: 'name=myvm')
+      connection.system_service.vms_service.vm_service('123').get
+    end
+    expect(entries.size).to eql(2)
+    expect(entries[0]['method']).to eql('GET')
+    expect(entries[0]['path']).to eql('vms')
+    expect(entries[0]['query']).to eql('search' => 'name=myvm')
+    expect(entries[0]['status']).to eql(200)
+    expect(entries[0]['size']).to be > 0
+    expect(entries[0]['latency']).to be >= 0
+    expect(entries[0]).not_to have_key('response')
+    expect(entries[1]['path']).to eql('vms/123')
+    expect(entries[1]['t']).to be >= entries[0]['t']
+  end
+
+  it 'records the bodies of the responses if requested' do
+    entries = record(true) do |connection|
+      connection.system_service.vms_service.vm_service('123').get
+    end
+    expect(entries[0]['response']).to eql('<vm id="123"/>')
+  end
+
+  it 'replays the recorded requests' do
+    entries = record do |connection|
+      3.times { connection.system_service.vms_service.list }
+    end
+    connection = test_connection
+    begin
+      summary = SDK::Replayer.new(connection, entries, speed: nil, threads: 2).run
+    ensure
+      connection.close
+    end
+    expect(summary[:count]).to eql(3)
+    expect(summary[:errors]).to eql(0)
+    expect(summary[:latency]).to include(:p50, :p90, :p99)
+    expect(summary[:recorded]).to include(:p50, :p90, :p99)
+  end
+
+  it 'counts the replayed requests whose status is different' do
+    entries = [{ 't' => 0, 'method' => 'GET', 'path' => 'vms', 'status' => 404 }]
+    connection = test_connection
+    begin
+      summary = SDK::Replayer.new(connection, entries, speed: nil).run
+    ensure
+      connection.close
+    end
+    expect(summary[:errors]).to eql(1)
+  end
+end
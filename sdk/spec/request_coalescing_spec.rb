@@ -0,0 +1,105 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe 'request coalescing' do
+  before(:all) do
+    start_server
+    @counts = Hash.new(0)
+    @counts_mutex = Mutex.new
+    mount_raw(path: "#{test_prefix}/vms") do |request, response|
+      next unless check_auth(request, response)
+      @counts_mutex.synchronize { @counts[:vms] += 1 }
+      sleep(0.5)
+      response.content_type = APPLICATION_XML
+      response.body = '<vms><vm id="123"/></vms>'
+      response.status = 200
+    end
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  before(:each) do
+    @counts_mutex.synchronize { @counts.clear }
+  end
+
+  #
+  # Lists the virtual machines simultaneously from the given number of threads, and returns the results.
+  #
+  def list_simultaneously(connection, threads, opts = {})
+    service = connection.system_service.vms_service
+    workers = Array.new(threads) do
+      Thread.new do
+        service.list(opts.dup)
+      end
+    end
+    workers.map(&:value)
+  end
+
+  context 'when coalescing is enabled' do
+    before(:each) do
+      @connection = SDK::Connection.new(test_connection_options.merge(coalesce: true, pool: 4))
+    end
+
+    after(:each) do
+      @connection.close
+    end
+
+    it 'sends only one request for identical simultaneous requests' do
+      results = list_simultaneously(@connection, 4)
+      expect(@counts[:vms]).to eql(1)
+      expect(@connection.coalesced_requests).to eql(3)
+      results.each do |vms|
+        expect(vms.first.id).to eql('123')
+      end
+    end
+
+    it 'sends different requests when the query parameters are different' do
+      service = @connection.system_service.vms_service
+      workers = [
+        Thread.new { service.list(search: 'name=a') },
+        Thread.new { service.list(search: 'name=b') }
+      ]
+      workers.each(&:join)
+      expect(@counts[:vms]).to eql(2)
+      expect(@connection.coalesced_requests).to eql(0)
+    end
+
+    it 'sends requests again once the previous one has completed' do
+      service = @connection.system_service.vms_service
+      service.list
+      service.list
+      expect(@counts[:vms]).to eql(2)
+    end
+  end
+
+  context 'when coalescing is disabled' do
+    before(:each) do
+      @connection = SDK::Connection.new(test_connection_options.merge(pool: 4))
+    end
+
+    after(:each) do
+      @connection.close
+    end
+
+    it 'sends all the requests' do
+      list_simultaneously(@connection, 4)
+      expect(@counts[:vms]).to eql(4)
+      expect(@connection.coalesced_requests).to eql(0)
+    end
+  end
+end
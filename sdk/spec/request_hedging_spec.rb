@@ -0,0 +1,114 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe 'request hedging' do
+  before(:all) do
+    start_server
+    @delays = Queue.new
+    mount_raw(path: "#{test_prefix}/vms") do |request, response|
+      next unless check_auth(request, response)
+      sleep(@delays.empty? ? 0.01 : @delays.pop)
+      response.content_type = APPLICATION_XML
+      response.body = '<vms><vm id="123"/></vms>'
+      response.status = 200
+    end
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  after(:each) do
+    @connection.close if @connection
+  end
+
+  def list_with_delay(delay)
+    @delays << delay
+    started = Time.now
+    @connection.system_service.vms_service.list
+    Time.now - started
+  end
+
+  context 'when hedging is enabled' do
+    before(:each) do
+      @connection = SDK::Connection.new(test_connection_options.merge(hedge: 0.9, pool: 2))
+    end
+
+    it 'does not hedge till enough latencies have been recorded' do
+      list_with_delay(0.5)
+      expect(@connection.hedges_issued).to eql(0)
+    end
+
+    it 'sends a copy of a slow request and uses the first response' do
+      25.times { list_with_delay(0.01) }
+      elapsed = list_with_delay(3.0)
+      expect(elapsed).to be < 2.0
+      expect(@connection.hedges_issued).to eql(1)
+      expect(@connection.hedges_won).to eql(1)
+    end
+
+    it 'returns the result of the request' do
+      25.times { list_with_delay(0.01) }
+      vms = @connection.system_service.vms_service.list
+      expect(vms.map(&:id)).to eql(['123'])
+    end
+  end
+
+  context 'when hedging is enabled and metrics are collected' do
+    before(:each) do
+      @metrics = SDK::MemoryMetrics.new
+      @connection = SDK::Connection.new(test_connection_options.merge(hedge: 0.9, pool: 2, metrics: @metrics))
+    end
+
+    it 'records only one call and no errors for a hedged request' do
+      25.times { list_with_delay(0.01) }
+      @metrics.reset
+      list_with_delay(3.0)
+      expect(@connection.hedges_issued).to eql(1)
+      entry = @metrics['VmsService#list']
+      expect(entry[:count]).to eql(1)
+      expect(entry[:errors]).to eql(0)
+    end
+
+    it 'measures the latency of a hedged request from the time the original request was sent' do
+      25.times { list_with_delay(0.1) }
+      @metrics.reset
+      list_with_delay(3.0)
+      expect(@connection.hedges_won).to eql(1)
+      entry = @metrics['VmsService#list']
+      expect(entry[:latency]).to be >= 0.1
+    end
+  end
+
+  context 'when hedging is disabled' do
+    it 'is disabled by default' do
+      @connection = test_connection
+      expect(@connection.hedge?).to be false
+    end
+
+    it 'rejects a pool with only one client' do
+      expect do
+        SDK::Connection.new(test_connection_options.merge(hedge: 0.9))
+      end.to raise_error(ArgumentError, /pool/)
+    end
+
+    it 'rejects an invalid percentile' do
+      expect do
+        SDK::Connection.new(test_connection_options.merge(hedge: 1.5, pool: 2))
+      end.to raise_error(ArgumentError, /percentile/)
+    end
+  end
+end
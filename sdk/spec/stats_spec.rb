@@ -0,0 +1,103 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe SDK::MemoryStats do
+  let(:stats) { SDK::MemoryStats.new }
+
+  it 'counts the objects of each type' do
+    stats.count_object(SDK::Vm)
+    stats.count_object(SDK::Vm)
+    stats.count_object(SDK::Disk)
+    expect(stats.objects).to eql(SDK::Vm => 2, SDK::Disk => 1)
+  end
+
+  it 'counts the skipped elements of each type and tag' do
+    stats.count_skipped(SDK::Vm, 'junk')
+    expect(stats.skipped).to eql([SDK::Vm, 'junk'] => 1)
+  end
+
+  it 'adds the time and the bytes of the documents' do
+    stats.record('vms', 0.5, 100)
+    stats.record('vms', 0.25, nil)
+    expect(stats.documents).to eql('vms' => { count: 2, seconds: 0.75, bytes: 100 })
+  end
+
+  it 'counts the elements of each type and tag' do
+    stats.count_element(SDK::Vm, 'name')
+    stats.count_element(SDK::Vm, 'name')
+    stats.count_element(SDK::Disk, 'name')
+    expect(stats.elements).to eql([SDK::Vm, 'name'] => 2, [SDK::Disk, 'name'] => 1)
+  end
+
+  it 'returns the element profile indexed by type name and tag' do
+    stats.count_element(SDK::Vm, 'name')
+    stats.count_element(SDK::Vm, 'link')
+    stats.count_element(SDK::Vm, 'link')
+    expect(stats.element_profile).to eql('Vm' => { 'name' => 1, 'link' => 2 })
+  end
+
+  it 'discards the statistics when reset' do
+    stats.count_object(SDK::Vm)
+    stats.count_element(SDK::Vm, 'name')
+    stats.record('vms', 0.5, 100)
+    stats.reset
+    expect(stats.objects).to be_empty
+    expect(stats.elements).to be_empty
+    expect(stats.documents).to be_empty
+  end
+end
+
+describe 'reader and writer statistics' do
+  before(:each) do
+    @stats = SDK::MemoryStats.new
+    SDK::Reader.stats = @stats
+    SDK::Writer.stats = @stats
+  end
+
+  after(:each) do
+    SDK::Reader.stats = nil
+    SDK::Writer.stats = nil
+  end
+
+  it 'uses a registry that ignores the statistics by default' do
+    SDK::Reader.stats = nil
+    expect(SDK::Reader.stats).to be_a(SDK::Stats)
+    expect(SDK::Reader.stats).not_to be_a(SDK::MemoryStats)
+  end
+
+  it 'records the documents read' do
+    xml = '<vms><vm id="123"/><vm id="456"/></vms>'
+    SDK::Reader.read(xml)
+    entry = @stats.documents['vms']
+    expect(entry[:count]).to eql(1)
+    expect(entry[:bytes]).to eql(xml.bytesize)
+    expect(entry[:seconds]).to be >= 0
+  end
+
+  it 'records the documents written' do
+    xml = SDK::Writer.write([SDK::Vm.new(id: '123')], root: 'vms')
+    entry = @stats.documents['vms']
+    expect(entry[:count]).to eql(1)
+    expect(entry[:bytes]).to eql(xml.bytesize)
+  end
+
+  it 'does not record the documents written to an explicit target' do
+    writer = SDK::XmlWriter.new(nil, false)
+    SDK::Writer.write(SDK::Vm.new(id: '123'), target: writer)
+    writer.close
+    expect(@stats.documents).to be_empty
+  end
+end
@@ -0,0 +1,183 @@
+#
+# Copyright (c) 2017 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe SDK::MemoryTracer do
+  let(:tracer) { SDK::MemoryTracer.new }
+
+  it 'keeps the spans in the order they were received' do
+    first = SDK::Span.new('VmsService#list', nil, Time.now, 0.1, {})
+    second = SDK::Span.new('parse', first, Time.now, 0.01, {})
+    tracer.record(first)
+    tracer.record(second)
+    expect(tracer.spans).to eql([first, second])
+  end
+
+  it 'discards the spans when reset' do
+    tracer.record(SDK::Span.new('VmsService#list', nil, Time.now, 0.1, {}))
+    tracer.reset
+    expect(tracer.spans).to be_empty
+  end
+end
+
+describe 'service tracing' do
+  before(:all) do
+    start_server
+    mount_xml(path: 'vms', body: '<vms><vm id="123"/></vms>', delay: 0.1)
+    mount_xml(path: 'vms/123', status: 404, body: '<fault><reason>Not found</reason></fault>')
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  after(:each) do
+    @connection.close
+  end
+
+  it 'does not trace anything by default' do
+    @connection = test_connection
+    expect(@connection.tracer).to be_nil
+    @connection.system_service.vms_service.list
+  end
+
+  context 'when a tracer is configured' do
+    before(:each) do
+      @tracer = SDK::MemoryTracer.new
+      @connection = SDK::Connection.new(test_connection_options.merge(tracer: @tracer))
+    end
+
+    it 'records a span for the call using the name of the method' do
+      @connection.system_service.vms_service.list
+      call = @tracer.spans.first
+      expect(call.name).to eql('VmsService#list')
+      expect(call.parent).to be_nil
+      expect(call.duration).to be >= 0.1
+      expect(call.attributes[:status]).to eql(200)
+      expect(call.attributes[:error]).to be false
+    end
+
+    it 'records the queue, http and parse spans inside the call' do
+      @connection.system_service.vms_service.list
+      call, *children = @tracer.spans
+      names = children.select { |span| span.parent.equal?(call) }.map(&:name)
+      expect(names).to eql(%w[queue http parse])
+    end
+
+    it 'splits the http exchange using the timings of libcurl' do
+      @connection.system_service.vms_service.list
+      http = @tracer.spans.find { |span| span.name == 'http' }
+      phases = @tracer.spans.select { |span| span.parent.equal?(http) }
+      expect(phases.map(&:name)).to include('ttfb', 'transfer')
+      expect(phases.find { |span| span.name == 'ttfb' }.duration).to be >= 0.1
+      phases.each do |phase|
+        expect(phase.start).to be >= http.start
+        expect(phase.duration).to be <= http.duration
+      end
+    end
+
+    it 'starts the span of the call before the request is sent' do
+      before = Time.now
+      @connection.system_service.vms_service.list
+      after = Time.now
+      call = @tracer.spans.first
+      expect(call.start).to be >= before
+      expect(call.start + call.duration).to be <= after
+      queue = @tracer.spans.find { |span| span.name == 'queue' }
+      expect(queue.start).to be >= call.start
+    end
+
+    it 'records failed calls as errors' do
+      expect { @connection.system_service.vms_service.vm_service('123').get }.to raise_error(SDK::Error)
+      call = @tracer.spans.first
+      expect(call.name).to eql('VmService#get')
+      expect(call.attributes[:status]).to eql(404)
+      expect(call.attributes[:error]).to be true
+    end
+  end
+end
+
+describe 'tracing of hedged and coalesced requests' do
+  before(:all) do
+    start_server
+    @delays = Queue.new
+    mount_raw(path: "#{test_prefix}/vms") do |request, response|
+      next unless check_auth(request, response)
+      sleep(@delays.empty? ? 0.01 : @delays.pop)
+      response.content_type = APPLICATION_XML
+      response.body = '<vms><vm id="123"/></vms>'
+      response.status = 200
+    end
+  end
+
+  after(:all) do
+    stop_server
+  end
+
+  after(:each) do
+    @connection.close
+  end
+
+  #
+  # Returns the spans of the calls, without the spans of the parts of the calls.
+  #
+  def calls
+    @tracer.spans.select { |span| span.parent.nil? }
+  end
+
+  it 'does not record spans for the cancelled copies of hedged requests' do
+    @tracer = SDK::MemoryTracer.new
+    @connection = SDK::Connection.new(test_connection_options.merge(hedge: 0.9, pool: 2, tracer: @tracer))
+    service = @connection.system_service.vms_service
+    25.times { service.list }
+    @tracer.reset
+    @delays << 3.0
+    service.list
+    expect(@connection.hedges_issued).to eql(1)
+    expect(calls.size).to eql(1)
+    expect(calls.first.attributes[:error]).to be false
+  end
+
+  it 'starts the span of a hedged call when the original request is sent' do
+    @tracer = SDK::MemoryTracer.new
+    @connection = SDK::Connection.new(test_connection_options.merge(hedge: 0.9, pool: 2, tracer: @tracer))
+    service = @connection.system_service.vms_service
+    25.times do
+      @delays << 0.1
+      service.list
+    end
+    @tracer.reset
+    @delays << 3.0
+    service.list
+    expect(@connection.hedges_won).to eql(1)
+    call = calls.first
+    expect(call.duration).to be >= 0.1
+    http = @tracer.spans.find { |span| span.name == 'http' }
+    expect(http.start).to be >= call.start + 0.1
+    expect(http.start + http.duration).to be <= call.start + call.duration
+  end
+
+  it 'records only the span of the request that is sent when requests are coalesced' do
+    @tracer = SDK::MemoryTracer.new
+    @connection = SDK::Connection.new(test_connection_options.merge(coalesce: true, pool: 4, tracer: @tracer))
+    service = @connection.system_service.vms_service
+    @delays << 0.5
+    workers = Array.new(4) { Thread.new { service.list } }
+    workers.each(&:join)
+    expect(@connection.coalesced_requests).to eql(3)
+    expect(calls.size).to eql(1)
+    expect(calls.first.attributes[:error]).to be false
+  end
+end
@@ -56,6 +56,36 @@ describe SDK::VmWriter do
       end
     end
 
+    context 'when inherited and declared elements are set' do
+      it 'writes all the elements sorted by name' do
+        vm = SDK::Vm.new(
+          status: SDK::VmStatus::UP,
+          stateless: false,
+          origin: 'ovirt',
+          name: 'myvm',
+          memory: 1024,
+          fqdn: 'myvm.example.com',
+          description: 'mydesc',
+          comment: 'mycomment'
+        )
+        writer = SDK::XmlWriter.new
+        SDK::VmWriter.write_one(vm, writer)
+        expect(writer.string).to eql(
+          '<vm>' \
+          '<comment>mycomment</comment>' \
+          '<description>mydesc</description>' \
+          '<fqdn>myvm.example.com</fqdn>' \
+          '<memory>1024</memory>' \
+          '<name>myvm</name>' \
+          '<origin>ovirt</origin>' \
+          '<stateless>false</stateless>' \
+          '<status>up</status>' \
+          '</vm>'
+        )
+        writer.close
+      end
+    end
+
     context 'when boolean attribute is "true"' do
       it 'writes the expected XML' do
         vm = SDK::Vm.new(delete_protected: true)